@@ -0,0 +1,663 @@
+package org.agmip.translators.dssat;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * The columnar holder of daily weather records. The date is stored as epoch
+ * day and each variable is stored in a float array, with the number of
+ * decimals of the original text, so the value can be rebuilt as the same
+ * string. The text which could not be rebuilt from number is kept as it is.
+ *
+ * The series is also a list of daily records; each record is a map view of one
+ * day, so the existing code which handles the daily data as map still works.
+ * The series is only used while reading the weather files, the daily data is
+ * handed out as the list of HashMap by toRecords.
+ *
+ * @author Meng Zhang
+ * @version 1.0
+ */
+class DailyWeatherSeries extends AbstractList<Map<String, String>> implements RandomAccess {
+
+    public static final String DATE_KEY = "w_date";
+    private static final int NO_DATE = DssatDateCodec.NO_DATE;
+    private static final byte MISSING = -1;
+    private static final byte RAW = -2;
+    private static final int MAX_SCALE = 6;
+    private static final double[] POW10 = {1, 10, 100, 1000, 10000, 100000, 1000000};
+    private int size;
+    private int[] dates;
+    private HashMap<Integer, String> rawDates = new HashMap<Integer, String>();
+    private LinkedHashMap<String, Column> columns = new LinkedHashMap<String, Column>();
+
+    /**
+     * The storage of one daily variable
+     */
+    private class Column {
+
+        private float[] values;
+        private byte[] scales;
+        private HashMap<Integer, String> raws = new HashMap<Integer, String>();
+
+        private Column() {
+            values = new float[dates.length];
+            scales = new byte[dates.length];
+            Arrays.fill(scales, MISSING);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (values.length < capacity) {
+                int oldCapacity = values.length;
+                values = Arrays.copyOf(values, capacity);
+                scales = Arrays.copyOf(scales, capacity);
+                Arrays.fill(scales, oldCapacity, capacity, MISSING);
+            }
+        }
+
+        private String get(int i) {
+            byte scale = scales[i];
+            if (scale == MISSING) {
+                return null;
+            } else if (scale == RAW) {
+                return raws.get(i);
+            } else {
+                return formatNum(values[i], scale);
+            }
+        }
+
+        private void set(int i, String val) {
+            if (scales[i] == RAW) {
+                raws.remove(i);
+            }
+            if (val == null) {
+                scales[i] = MISSING;
+                return;
+            }
+            int scale = getScale(val);
+            if (scale >= 0) {
+                try {
+                    float f = Float.parseFloat(val);
+                    if (formatNum(f, scale).equals(val)) {
+                        values[i] = f;
+                        scales[i] = (byte) scale;
+                        return;
+                    }
+                } catch (NumberFormatException e) {
+                }
+            }
+            scales[i] = RAW;
+            raws.put(i, val);
+        }
+
+        private void move(int from, int to, int length) {
+            shiftRaws(raws, from, to, length);
+            System.arraycopy(values, from, values, to, length);
+            System.arraycopy(scales, from, scales, to, length);
+        }
+
+        private void clear(int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (scales[i] == RAW) {
+                    raws.remove(i);
+                }
+            }
+            Arrays.fill(scales, from, to, MISSING);
+        }
+    }
+
+    /**
+     * Create an empty daily weather series
+     */
+    public DailyWeatherSeries() {
+        dates = new int[366];
+    }
+
+    /**
+     * Get the number of days in the series
+     *
+     * @return the number of days
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copy the days into a list of daily records
+     *
+     * @return the daily records
+     */
+    public ArrayList<HashMap> toRecords() {
+        ArrayList<HashMap> ret = new ArrayList<HashMap>(size);
+        for (int i = 0; i < size; i++) {
+            ret.add(new HashMap<String, String>(new DailyRecord(i)));
+        }
+        return ret;
+    }
+
+    /**
+     * Get the map view of the given day
+     *
+     * @param index the index of day
+     * @return the daily record
+     */
+    @Override
+    public Map<String, String> get(int index) {
+        checkIndex(index, size);
+        return new DailyRecord(index);
+    }
+
+    /**
+     * Replace the record of the given day with the data in the given map
+     *
+     * @param index the index of day
+     * @param record the daily record
+     * @return the previous record, which is a copy of the replaced data
+     */
+    @Override
+    public Map<String, String> set(int index, Map<String, String> record) {
+        checkIndex(index, size);
+        HashMap<String, String> copy = new HashMap<String, String>(record);
+        HashMap<String, String> old = new HashMap<String, String>(new DailyRecord(index));
+        clearDay(index);
+        putAll(index, copy);
+        return old;
+    }
+
+    /**
+     * Insert the given daily record at the given position
+     *
+     * @param index the position
+     * @param record the daily record
+     */
+    @Override
+    public void add(int index, Map<String, String> record) {
+        checkIndex(index, size + 1);
+        HashMap<String, String> copy = new HashMap<String, String>(record);
+        makeRoom(index, 1);
+        putAll(index, copy);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Map<String, String>> c) {
+        return addAll(size, c);
+    }
+
+    /**
+     * Insert all the given daily records at the given position; the columns
+     * are copied directly when the records come from another series
+     *
+     * @param index the position
+     * @param c the daily records
+     * @return true if the series is changed
+     */
+    @Override
+    public boolean addAll(int index, Collection<? extends Map<String, String>> c) {
+        checkIndex(index, size + 1);
+        if (c.isEmpty()) {
+            return false;
+        }
+        if (c instanceof DailyWeatherSeries && c != this) {
+            DailyWeatherSeries other = (DailyWeatherSeries) c;
+            makeRoom(index, other.size);
+            copyDays(other, 0, index, other.size);
+        } else {
+            // Take a copy first, since the records might be the views of this series
+            ArrayList<HashMap<String, String>> records = new ArrayList<HashMap<String, String>>();
+            for (Map<String, String> record : c) {
+                records.add(new HashMap<String, String>(record));
+            }
+            makeRoom(index, records.size());
+            for (int i = 0; i < records.size(); i++) {
+                putAll(index + i, records.get(i));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Append the days in the given range of another series to the end; the
+     * columns are copied directly
+     *
+     * @param other the source series
+     * @param fromIndex the index of the first day to copy (inclusive)
+     * @param toIndex the index of the last day to copy (exclusive)
+     */
+    public void addRange(DailyWeatherSeries other, int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > other.size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + other.size);
+        }
+        if (other == this) {
+            throw new IllegalArgumentException("Could not append the days of the series itself");
+        }
+        int index = size;
+        makeRoom(index, toIndex - fromIndex);
+        copyDays(other, fromIndex, index, toIndex - fromIndex);
+    }
+
+    /**
+     * Copy the days of another series into the blank days of this series
+     */
+    private void copyDays(DailyWeatherSeries other, int from, int to, int num) {
+        System.arraycopy(other.dates, from, dates, to, num);
+        copyRaws(other.rawDates, rawDates, from, to, num);
+        for (Map.Entry<String, Column> entry : other.columns.entrySet()) {
+            Column src = entry.getValue();
+            Column dest = columns.get(entry.getKey());
+            if (dest == null) {
+                dest = new Column();
+                columns.put(entry.getKey(), dest);
+            }
+            System.arraycopy(src.values, from, dest.values, to, num);
+            System.arraycopy(src.scales, from, dest.scales, to, num);
+            copyRaws(src.raws, dest.raws, from, to, num);
+        }
+    }
+
+    /**
+     * Open a gap of blank days at the given position
+     */
+    private void makeRoom(int index, int num) {
+        ensureCapacity(size + num);
+        moveDays(index, index + num, size - index);
+        size += num;
+        clearDays(index, index + num);
+        modCount++;
+    }
+
+    /**
+     * Remove the record of the given day
+     *
+     * @param index the index of day
+     * @return the removed record, which is a copy of the original data
+     */
+    @Override
+    public Map<String, String> remove(int index) {
+        checkIndex(index, size);
+        HashMap<String, String> old = new HashMap<String, String>(new DailyRecord(index));
+        removeRange(index, index + 1);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        removeRange(0, size);
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) {
+            return;
+        }
+        clearDays(fromIndex, toIndex);
+        moveDays(toIndex, fromIndex, size - toIndex);
+        clearDays(size - (toIndex - fromIndex), size);
+        size -= toIndex - fromIndex;
+        modCount++;
+    }
+
+    /**
+     * Get the date of the given day as epoch day
+     *
+     * @param index the index of day
+     * @return the epoch day, Integer.MIN_VALUE if the date is not available
+     */
+    public int getEpochDay(int index) {
+        checkIndex(index, size);
+        return dates[index];
+    }
+
+    /**
+     * Get the names of the daily variables stored in the series
+     *
+     * @return the set of variable names
+     */
+    public Set<String> getVariables() {
+        return columns.keySet();
+    }
+
+    /**
+     * Get the value of the given variable on the given day
+     *
+     * @param index the index of day
+     * @param key the variable name
+     * @return the value string, null if missing
+     */
+    public String getValue(int index, String key) {
+        checkIndex(index, size);
+        if (DATE_KEY.equals(key)) {
+            return getDate(index);
+        }
+        Column col = columns.get(key);
+        return col == null ? null : col.get(index);
+    }
+
+    private String getDate(int i) {
+        if (dates[i] == NO_DATE) {
+            return rawDates.get(i);
+        } else {
+            return formatDate(dates[i]);
+        }
+    }
+
+    private void setDate(int i, String val) {
+        rawDates.remove(i);
+        int day = parseDate(val);
+        if (day != NO_DATE && formatDate(day).equals(val)) {
+            dates[i] = day;
+        } else {
+            dates[i] = NO_DATE;
+            if (val != null) {
+                rawDates.put(i, val);
+            }
+        }
+    }
+
+    private void putAll(int i, Map<String, String> record) {
+        for (Map.Entry<String, String> entry : record.entrySet()) {
+            put(i, entry.getKey(), entry.getValue());
+        }
+    }
+
+    private String put(int i, String key, String val) {
+        if (DATE_KEY.equals(key)) {
+            String old = getDate(i);
+            setDate(i, val);
+            return old;
+        }
+        Column col = columns.get(key);
+        if (col == null) {
+            if (val == null) {
+                return null;
+            }
+            col = new Column();
+            columns.put(key, col);
+        }
+        String old = col.get(i);
+        col.set(i, val);
+        return old;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (dates.length < capacity) {
+            int newCapacity = Math.max(capacity, dates.length + (dates.length >> 1));
+            int oldCapacity = dates.length;
+            dates = Arrays.copyOf(dates, newCapacity);
+            Arrays.fill(dates, oldCapacity, newCapacity, NO_DATE);
+        }
+        for (Column col : columns.values()) {
+            col.ensureCapacity(dates.length);
+        }
+    }
+
+    private void moveDays(int from, int to, int length) {
+        if (length <= 0) {
+            return;
+        }
+        shiftRaws(rawDates, from, to, length);
+        System.arraycopy(dates, from, dates, to, length);
+        for (Column col : columns.values()) {
+            col.move(from, to, length);
+        }
+    }
+
+    private void clearDay(int i) {
+        clearDays(i, i + 1);
+    }
+
+    private void clearDays(int from, int to) {
+        for (int i = from; i < to; i++) {
+            rawDates.remove(i);
+        }
+        Arrays.fill(dates, from, to, NO_DATE);
+        for (Column col : columns.values()) {
+            col.clear(from, to);
+        }
+    }
+
+    /**
+     * Move the index of the kept text along with the moved days
+     */
+    private static void shiftRaws(HashMap<Integer, String> raws, int from, int to, int length) {
+        if (raws.isEmpty()) {
+            return;
+        }
+        HashMap<Integer, String> moved = new HashMap<Integer, String>();
+        Iterator<Map.Entry<Integer, String>> it = raws.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, String> entry = it.next();
+            int i = entry.getKey();
+            if (i >= from && i < from + length) {
+                moved.put(i - from + to, entry.getValue());
+                it.remove();
+            } else if (i >= to && i < to + length) {
+                // Overwritten by the moved days
+                it.remove();
+            }
+        }
+        raws.putAll(moved);
+    }
+
+    /**
+     * Copy the kept text in the given range to the new position
+     */
+    private static void copyRaws(HashMap<Integer, String> src, HashMap<Integer, String> dest, int from, int to, int length) {
+        for (Map.Entry<Integer, String> entry : src.entrySet()) {
+            int i = entry.getKey();
+            if (i >= from && i < from + length) {
+                dest.put(i - from + to, entry.getValue());
+            }
+        }
+    }
+
+    private static void checkIndex(int index, int limit) {
+        if (index < 0 || index >= limit) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + limit);
+        }
+    }
+
+    /**
+     * Get the number of decimals of a plain number text
+     *
+     * @param val the number text
+     * @return the number of decimals, 0 for integer, -1 if not a plain number
+     */
+    private static int getScale(String val) {
+        int len = val.length();
+        int start = 0;
+        if (len > 0 && val.charAt(0) == '-') {
+            start = 1;
+        }
+        int dot = -1;
+        for (int i = start; i < len; i++) {
+            char c = val.charAt(i);
+            if (c == '.' && dot < 0) {
+                dot = i;
+            } else if (c < '0' || c > '9') {
+                return -1;
+            }
+        }
+        if (dot < 0) {
+            return len > start ? 0 : -1;
+        } else if (dot == start || dot == len - 1 || len - dot - 1 > MAX_SCALE) {
+            return -1;
+        } else {
+            return len - dot - 1;
+        }
+    }
+
+    /**
+     * Format the number with the given number of decimals
+     *
+     * @param f the number
+     * @param scale the number of decimals
+     * @return the number text
+     */
+    private static String formatNum(float f, int scale) {
+        long unscaled = Math.round(f * POW10[scale]);
+        boolean negative = unscaled < 0 || (unscaled == 0 && f < 0);
+        String digits = Long.toString(Math.abs(unscaled));
+        StringBuilder sb = new StringBuilder(digits.length() + 3);
+        if (negative) {
+            sb.append('-');
+        }
+        if (scale == 0) {
+            sb.append(digits);
+        } else {
+            for (int i = digits.length(); i <= scale; i++) {
+                sb.append('0');
+            }
+            sb.append(digits);
+            sb.insert(sb.length() - scale, '.');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Translate date string with format of "yyyymmdd" to epoch day
+     *
+     * @param val date string
+     * @return the epoch day, Integer.MIN_VALUE if it is not a valid date
+     */
+    private static int parseDate(String val) {
+        return DssatDateCodec.parseStrictYyyymmdd(val);
+    }
+
+    /**
+     * Translate epoch day to date string with format of "yyyymmdd"
+     *
+     * @param epochDay the epoch day
+     * @return date string
+     */
+    private static String formatDate(int epochDay) {
+        return DssatDateCodec.formatYyyymmdd(epochDay);
+    }
+
+    /**
+     * The map view of one daily record
+     */
+    private class DailyRecord extends AbstractMap<String, String> {
+
+        private final int index;
+        private final int expectedModCount;
+
+        private DailyRecord(int index) {
+            this.index = index;
+            this.expectedModCount = modCount;
+        }
+
+        private void checkModCount() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        @Override
+        public String get(Object key) {
+            checkModCount();
+            return key instanceof String ? getValue(index, (String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public String put(String key, String value) {
+            checkModCount();
+            return DailyWeatherSeries.this.put(index, key, value);
+        }
+
+        @Override
+        public String remove(Object key) {
+            checkModCount();
+            if (key instanceof String) {
+                return DailyWeatherSeries.this.put(index, (String) key, null);
+            }
+            return null;
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    int cnt = getDate(index) == null ? 0 : 1;
+                    for (Column col : columns.values()) {
+                        if (col.scales[index] != MISSING) {
+                            cnt++;
+                        }
+                    }
+                    return cnt;
+                }
+            };
+        }
+
+        /**
+         * Iterate the available variables of the day, the date is always the
+         * first one
+         */
+        private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+
+            private final ArrayList<String> keys = new ArrayList<String>();
+            private int cursor = 0;
+            private String lastKey;
+
+            private EntryIterator() {
+                checkModCount();
+                if (getDate(index) != null) {
+                    keys.add(DATE_KEY);
+                }
+                for (Map.Entry<String, Column> entry : columns.entrySet()) {
+                    if (entry.getValue().scales[index] != MISSING) {
+                        keys.add(entry.getKey());
+                    }
+                }
+            }
+
+            public boolean hasNext() {
+                return cursor < keys.size();
+            }
+
+            public Map.Entry<String, String> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                lastKey = keys.get(cursor++);
+                return new AbstractMap.SimpleEntry<String, String>(lastKey, getValue(index, lastKey)) {
+                    @Override
+                    public String setValue(String value) {
+                        super.setValue(value);
+                        return DailyRecord.this.put(getKey(), value);
+                    }
+                };
+            }
+
+            public void remove() {
+                if (lastKey == null) {
+                    throw new IllegalStateException();
+                }
+                DailyRecord.this.remove(lastKey);
+                lastKey = null;
+            }
+        }
+    }
+}
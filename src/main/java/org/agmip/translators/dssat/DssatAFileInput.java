@@ -1,7 +1,6 @@
 package org.agmip.translators.dssat;
 
 import java.io.BufferedReader;
-import java.io.CharArrayReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -18,6 +17,10 @@ public class DssatAFileInput extends DssatCommonInput {
     public String obvFileKey = "summary";  // P.S. the key name might change
     public String obvDataKey = "data";     // P.S. the key name might change
 
+    private static final FixedWidthLayout META_LAYOUT = new FixedWidthLayout()
+            .add("null", 10)  // P.S. Since exname in top line is not reliable, read from file name
+            .addRest("local_name");
+
     /**
      * Constructor with no parameters Set jsonKey as "observed"
      *
@@ -83,7 +86,9 @@ public class DssatAFileInput extends DssatCommonInput {
         Object buf;
         LinkedHashMap formats = new LinkedHashMap();
         ArrayList titles = new ArrayList();
+        FixedWidthLayout layout = new FixedWidthLayout();
         ArrayList obvData;
+        RecordMerger obvDataMerger;
         DssatObservedData obvDataList = DssatObservedData.INSTANCE;    // Varibale list definition
         String pdate;
 
@@ -101,14 +106,11 @@ public class DssatAFileInput extends DssatCommonInput {
 //            String exname = fileName.replaceAll("\\.", "").replaceAll("A$", "");
             String exname = fileName.replaceAll("\\.\\w\\wA$", "");
             String crid = fileName.replaceAll("\\w+\\.", "").replaceAll("A$", "");
-            if (buf instanceof char[]) {
-                brA = new BufferedReader(new CharArrayReader((char[]) buf));
-            } else {
-                brA = (BufferedReader) buf;
-            }
+            brA = getBufferReader(buf);
 
             file = new HashMap();
             obvData = new ArrayList();
+            obvDataMerger = new RecordMerger(obvData, "trno_a");
 
             while ((line = brA.readLine()) != null) {
 
@@ -121,25 +123,16 @@ public class DssatAFileInput extends DssatCommonInput {
                     // Read meta info
                     if (flg[0].equals("meta") && flg[1].equals("")) {
 
-                        // Set variables' formats
                         line = line.replaceAll(".*:", "").trim();
-                        formats.clear();
-                        formats.put("null", 10);  // P.S. Since exname in top line is not reliable, read from file name
-                        formats.put("local_name", line.length());
                         // Read line and save into return holder
-                        file.putAll(readLine(line, formats));
+                        file.putAll(readLine(line, META_LAYOUT));
                         file.put("exname", exname);
                         file.put("crid", DssatCRIDHelper.get3BitCrid(crid));
 
                     } // Read data info 
                     else {
-                        // Set variables' formats
-                        formats.clear();
-                        for (Object title : titles) {
-                            formats.put(title, 6);
-                        }
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, layout);
                         pdate = getPdate(brMap, (String) tmp.get("trno_a"), fileName.replaceAll("A$", "X"));
                         for (Object title : titles) {
                             if (obvDataList.isDateType(title)) {
@@ -150,7 +143,7 @@ public class DssatAFileInput extends DssatCommonInput {
 //                            }
                             }
                         }
-                        addToArray(obvData, tmp, "trno_a");
+                        obvDataMerger.merge(tmp);
                     }
 
                 } // Read Observed title
@@ -169,6 +162,13 @@ public class DssatAFileInput extends DssatCommonInput {
                         }
                     }
 
+                    // Set variables' formats
+                    formats.clear();
+                    for (Object title : titles) {
+                        formats.put(title, 6);
+                    }
+                    layout = new FixedWidthLayout(formats);
+
                 } else {
                 }
             }
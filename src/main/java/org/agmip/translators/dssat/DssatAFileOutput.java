@@ -2,7 +2,6 @@ package org.agmip.translators.dssat;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -44,6 +43,9 @@ public class DssatAFileOutput extends DssatCommonOutput {
 
         try {
 
+            // Share the file names with the other writers of the directory if the writer is not in a job
+            useDirectorySession(arg0);
+
             // Set default value for missing data
             setDefVal();
 
@@ -69,7 +71,7 @@ public class DssatAFileOutput extends DssatCommonOutput {
             }
             arg0 = revisePath(arg0);
             outputFile = new File(arg0 + fileName);
-            bwA = new BufferedWriter(new FileWriter(outputFile));
+            bwA = openWriter(outputFile, false);
 
             // Output Observation File
             // Titel Section
@@ -131,21 +133,21 @@ public class DssatAFileOutput extends DssatCommonOutput {
                 sbData.append("@TRNO ");
                 int limit = Math.min(titleOutputId.length, (i + 1) * 40);
                 for (int j = i * 40; j < limit; j++) {
-                    sbData.append(String.format("%1$6s", titleOutputId[j].toString().toUpperCase()));
+                    appendLeftPad(sbData, titleOutputId[j].toString().toUpperCase(), 6);
                 }
                 sbData.append("\r\n");
 
                 // Write data line
                 for (HashMap<String, String> record : records) {
-                    sbData.append(String.format(" %1$5s", getValueOr(record, "trno", "1")));
+                    appendLeftPad(sbData.append(' '), getValueOr(record, "trno", "1"), 5);
                     for (int k = i * 40; k < limit; k++) {
 
                         if (obvDataList.isDapDateType(titleOutputId[k], titleOutput.get(titleOutputId[k]))) {
-                            sbData.append(String.format("%1$6s", cutYear(formatDateStr(pdate, getObjectOr(record, titleOutput.get(titleOutputId[k]).toString(), defValI)))));
+                            appendLeftPad(sbData, cutYear(formatDateStr(pdate, getObjectOr(record, titleOutput.get(titleOutputId[k]).toString(), defValI))), 6);
                         } else if (obvDataList.isDateType(titleOutputId[k])) {
-                            sbData.append(String.format("%1$6s", cutYear(formatDateStr(getObjectOr(record, titleOutput.get(titleOutputId[k]).toString(), defValI)))));
+                            appendLeftPad(sbData, cutYear(formatDateStr(getObjectOr(record, titleOutput.get(titleOutputId[k]).toString(), defValI))), 6);
                         } else {
-                            sbData.append(" ").append(formatNumStr(5, record, titleOutput.get(titleOutputId[k]), defValI));
+                            appendNumStr(sbData.append(' '), 0, 5, record, titleOutput.get(titleOutputId[k]), defValI);
                         }
                     }
                     sbData.append("\r\n");
@@ -2,7 +2,6 @@ package org.agmip.translators.dssat;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -62,6 +61,9 @@ public class DssatBatchFileOutput extends DssatCommonOutput implements DssatBtac
 
         try {
 
+            // Share the file names with the other writers of the directory if the writer is not in a job
+            useDirectorySession(arg0);
+
             // Set default value for missing data
             setDefVal();
 
@@ -81,7 +83,7 @@ public class DssatBatchFileOutput extends DssatCommonOutput implements DssatBtac
             // Initial BufferedWriter
             arg0 = revisePath(arg0);
             outputFile = new File(arg0 + "DSSBatch.v" + dssatVerStr);
-            bwB = new BufferedWriter(new FileWriter(outputFile));
+            bwB = openWriter(outputFile, false);
 
             // Output Batch File
             // Titel Section
@@ -151,6 +153,9 @@ public class DssatBatchFileOutput extends DssatCommonOutput implements DssatBtac
 
         try {
 
+            // Share the file names with the other writers of the directory if the writer is not in a job
+            useDirectorySession(arg0);
+
             // Set default value for missing data
             setDefVal();
 
@@ -165,7 +170,7 @@ public class DssatBatchFileOutput extends DssatCommonOutput implements DssatBtac
             // Initial BufferedWriter
             arg0 = revisePath(arg0);
             outputFile = new File(arg0 + "DSSBatch.v" + dssatVerStr);
-            bwB = new BufferedWriter(new FileWriter(outputFile));
+            bwB = openWriter(outputFile, false);
 
             // Output Batch File
             // Titel Section
@@ -1,15 +1,15 @@
 package org.agmip.translators.dssat;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 import org.agmip.acmo.util.AcmoUtil;
 import org.agmip.functions.DataCombinationHelper;
-import org.agmip.util.JSONAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,6 +20,8 @@ import org.slf4j.LoggerFactory;
 public class DssatCmdApp {
 
     private static boolean isCompressed;
+    private static boolean isGzipped;
+    private static boolean isStreaming;
     private static boolean isToModel;
     private static ArrayList<String> inputPaths;
     private static String outputPath;
@@ -35,31 +37,53 @@ public class DssatCmdApp {
         if (isToModel) {
             LOG.info("Translate {} to DSSAT...", inputPaths);
             DssatControllerOutput translator = new DssatControllerOutput();
-            HashMap data = readJson();
-            translator.writeFile(outputPath, data);
+            HashMap data = null;
             if (isCompressed) {
-                translator.createZip(new File(outputPath + File.separator + "DSSAT_Input.zip"));
+                // The files are written into the zip directly
+                new File(outputPath).mkdirs();
+                translator.setZipOutput(new File(outputPath + File.separator + "DSSAT_Input.zip"));
+            }
+            if (isStreaming) {
+                // The experiments are released after translated, so ACMO is not created
+                translator.writeFileFromJson(outputPath, inputPaths);
+            } else {
+                data = readJson();
+                translator.writeFile(outputPath, data);
+            }
+            if (isCompressed) {
+                translator.createZip();
+            }
+            if (data != null) {
+                writeAcmo(data);
             }
-            writeAcmo(data);
         } else {
             LOG.info("Translate {} to JSON...", inputPaths.get(0));
             DssatControllerInput translator = new DssatControllerInput();
             Map result = translator.readFile(inputPaths.get(0));
-            BufferedOutputStream bo;
             outputPath += File.separator;
-            File f = new File(outputPath + new File(outputPath).getName().replaceAll("\\.\\w+$", ".json"));
-            bo = new BufferedOutputStream(new FileOutputStream(f));
+            String fileName = new File(outputPath).getName().replaceAll("\\.\\w+$", ".json");
+            OutputStream os;
+            if (isGzipped) {
+                os = new GZIPOutputStream(new FileOutputStream(new File(outputPath + fileName + ".gz")), 64 * 1024);
+            } else {
+                os = new FileOutputStream(new File(outputPath + fileName));
+            }
 
-            // Output json for reading
-            bo.write(JSONAdapter.toJSON(result).getBytes());
-            bo.flush();
-            bo.close();
+            // Output json for reading, the text is written while walking the result
+            JsonStreamWriter writer = new JsonStreamWriter(os);
+            try {
+                writer.write(result);
+            } finally {
+                writer.close();
+            }
         }
         LOG.info("Job done!");
     }
 
     private static void init() {
         isCompressed = false;
+        isGzipped = false;
+        isStreaming = false;
         isToModel = false;
         inputPaths = new ArrayList();
         outputPath = getOutputPath("");
@@ -70,6 +94,10 @@ public class DssatCmdApp {
         for (String arg : args) {
             if (arg.equalsIgnoreCase("-zip")) {
                 isCompressed = true;
+            } else if (arg.equalsIgnoreCase("-gz")) {
+                isGzipped = true;
+            } else if (arg.equalsIgnoreCase("-stream")) {
+                isStreaming = true;
             } else if (arg.toUpperCase().endsWith(".JSON")) {
                 isToModel = true;
                 inputPaths.add(arg);
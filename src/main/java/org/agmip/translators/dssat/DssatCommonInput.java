@@ -11,12 +11,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 import org.agmip.ace.LookupCodes;
 import org.agmip.common.Functions;
 import org.agmip.core.types.TranslatorInput;
@@ -40,6 +40,15 @@ public abstract class DssatCommonInput implements TranslatorInput {
     protected String jsonKey = "unknown";
     private static final Logger LOG = LoggerFactory.getLogger(DssatCommonInput.class);
 
+    // The layouts used for reading planting date from XFile
+    private static final FixedWidthLayout PDATE_TREATMENT_LAYOUT = new FixedWidthLayout()
+            .add("trno", 2)
+            .add("", 44)
+            .add("pl", 3);
+    private static final FixedWidthLayout PDATE_PLANTING_LAYOUT = new FixedWidthLayout()
+            .add("pl", 2)
+            .add("pdate", 6);
+
     /**
      * DSSAT Data Output method for Controller using
      *
@@ -60,10 +69,11 @@ public abstract class DssatCommonInput implements TranslatorInput {
 
         HashMap ret = new HashMap();
         String filePath = arg0;
+        HashMap bufs = null;
 
         try {
             // read file by file
-            HashMap bufs = getBufferReader(filePath);
+            bufs = getBufferReader(filePath);
             ret = readFile(bufs);
 
         } catch (FileNotFoundException fe) {
@@ -71,6 +81,10 @@ public abstract class DssatCommonInput implements TranslatorInput {
             return ret;
         } catch (Exception e) {
             LOG.error(getStackTrace(e));
+        } finally {
+            if (bufs != null) {
+                closeBufferReader(bufs);
+            }
         }
 
         return ret;
@@ -164,16 +178,30 @@ public abstract class DssatCommonInput implements TranslatorInput {
      */
     protected void translateDateStrForDOY(HashMap m, String id, String pdate, String smMgnFlg) {
 
-        if (m.get(id) != null && !smMgnFlg.equalsIgnoreCase("D")) {
-            m.put(id, translateDateStrForDOY((String) m.get(id), pdate));
+        m.put(id, translateDateStrForDOY((String) m.get(id), id, pdate, smMgnFlg));
+    }
+
+    /**
+     * Translate data str from "yyddd" or "doy" to "yyyymmdd", or from the days
+     * after planting when the simulation control flag is "D"
+     *
+     * @param val the date value
+     * @param id the key name of date field
+     * @param pdate the related planting date
+     * @param smMgnFlg the simulation control flag
+     * @return result date string with format of "yyyymmdd"
+     */
+    protected String translateDateStrForDOY(String val, String id, String pdate, String smMgnFlg) {
+
+        if (val != null && !smMgnFlg.equalsIgnoreCase("D")) {
+            return translateDateStrForDOY(val, pdate);
         } else {
-            String val = (String) m.get(id);
-            String ret = Functions.dateOffset(pdate, val);
+            String ret = DssatDateCodec.offsetDate(pdate, val);
             if (ret == null) {
                 LOG.warn("Invalid DAP value [{}] for {}", val, id);
                 ret = val;
             }
-            m.put(id, ret);
+            return ret;
         }
     }
 
@@ -189,7 +217,12 @@ public abstract class DssatCommonInput implements TranslatorInput {
         if (str != null && str.length() <= 3) {
             if (!pdate.equals("") && pdate.length() >= 2) {
                 try {
-                    str = String.format("%1$2s%2$03d", pdate.substring(0, 2), Integer.parseInt(str));
+                    int doy = Integer.parseInt(str);
+                    if (doy >= 0 && doy < 1000) {
+                        str = pdate.substring(0, 2) + (char) ('0' + doy / 100) + (char) ('0' + doy / 10 % 10) + (char) ('0' + doy % 10);
+                    } else {
+                        str = String.format("%1$2s%2$03d", pdate.substring(0, 2), doy);
+                    }
                 } catch (NumberFormatException e) {
                     return "";
                 }
@@ -208,31 +241,13 @@ public abstract class DssatCommonInput implements TranslatorInput {
      */
     protected String translateDateStr(String startDate, String strDays) {
 
-        // Initial Calendar object
-        Calendar cal = Calendar.getInstance();
-        int days;
-        int year;
-        if (startDate == null || startDate.length() > 5 || startDate.length() < 4) {
-            //throw new Exception("");
-            return ""; //defValD; // P.S. use blank string instead of -99
-        }
         try {
-            startDate = String.format("%05d", Integer.parseInt(startDate));
-            days = Double.valueOf(strDays).intValue();
-            // Set date with input value
-            year = Integer.parseInt(startDate.substring(0, 2));
-            year += year <= 15 ? 2000 : 1900; // P.S. 2015 is the cross year for the current version 
-            cal.set(Calendar.YEAR, year);
-            cal.set(Calendar.DAY_OF_YEAR, Integer.parseInt(startDate.substring(2)));
-            cal.add(Calendar.DATE, days);
-            // translatet to yyddd format
-            return String.format("%1$04d%2$02d%3$02d", cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DAY_OF_MONTH));
-        } catch (Exception e) {
+            String ret = DssatDateCodec.yydddToYyyymmdd(startDate, DssatDateCodec.parseDays(strDays));
+            return ret == null ? "" : ret; // P.S. use blank string instead of -99
+        } catch (NumberFormatException e) {
             // if tranlate failed, then use default value for date
-            // sbError.append("! Waring: There is a invalid date [").append(startDate).append("]");
             return ""; //formatDateStr(defValD); // P.S. use blank string instead of -99
         }
-
     }
 
     /**
@@ -261,26 +276,35 @@ public abstract class DssatCommonInput implements TranslatorInput {
      */
     protected HashMap readLine(String line, LinkedHashMap<String, Integer> formats, String invalidValue) {
 
+        return readLine(line, new FixedWidthLayout(formats), invalidValue);
+    }
+
+    /**
+     * Divide the data in the line into a map (Default invalid value is null,
+     * which means not to be sore in the json)
+     *
+     * @param line The string of line read from data file
+     * @param layout The compiled layout of the data line
+     * @return the map contains divided data with keys from original string
+     */
+    protected HashMap readLine(String line, FixedWidthLayout layout) {
+
+        return readLine(line, layout, null);
+    }
+
+    /**
+     * Divide the data in the line into a map
+     *
+     * @param line The string of line read from data file
+     * @param layout The compiled layout of the data line
+     * @param invalidValue The text will replace the original reading when its
+     * value is invalid
+     * @return the map contains divided data with keys from original string
+     */
+    protected HashMap readLine(String line, FixedWidthLayout layout, String invalidValue) {
+
         HashMap ret = new HashMap();
-        int length;
-        String tmp;
-
-        for (String key : formats.keySet()) {
-            // To avoid to be over limit of string lenght
-            length = Math.min(formats.get(key), line.length());
-            if (!key.equals("") && !key.startsWith("null")) {
-                tmp = line.substring(0, length).trim();
-                // if the value is in valid keep blank string in it
-                if (checkValidValue(tmp)) {
-                    ret.put(key, tmp);
-                } else {
-                    if (invalidValue != null) {
-                        ret.put(key, invalidValue);   // P.S. "" means missing or invalid value
-                    }
-                }
-            }
-            line = line.substring(length);
-        }
+        layout.decode(line, ret, invalidValue);
 
         return ret;
     }
@@ -318,69 +342,64 @@ public abstract class DssatCommonInput implements TranslatorInput {
         // If input File is ZIP file
         if (filePath.toUpperCase().endsWith(".ZIP")) {
 
-            // Get experiment name
-            ZipEntry entry;
+            // Index the entries from the central directory, the content will
+            // only be decoded when a reader ask for it
+            ZipFile zipFile = new ZipFile(filePath);
             ArrayList<String> exnames = new ArrayList();
-            String exname;
-            in = new ZipInputStream(new FileInputStream(filePath));
-            while ((entry = ((ZipInputStream) in).getNextEntry()) != null) {
+            ArrayList<String> fileNames = new ArrayList();
+            ArrayList<ZipEntry> entries = new ArrayList();
+            Enumeration<? extends ZipEntry> e = zipFile.entries();
+            while (e.hasMoreElements()) {
+                ZipEntry entry = e.nextElement();
                 if (!entry.isDirectory()) {
                     String fileName = getFileNameFromZipEntry(entry);
+                    // Get experiment name
                     if (fileName.matches(".+\\.\\w{2}[Xx]")) {
-                        exname = fileName.replaceAll("[Xx]$", "");
-                        exnames.add(exname);
-                        //                        break;
+                        exnames.add(fileName.replaceAll("[Xx]$", ""));
                     }
+                    fileNames.add(fileName);
+                    entries.add(entry);
                 }
             }
 
-            // Read Files
-            in = new ZipInputStream(new FileInputStream(filePath));
-
-            while ((entry = ((ZipInputStream) in).getNextEntry()) != null) {
-                if (!entry.isDirectory()) {
-                    String fileName = getFileNameFromZipEntry(entry);
-                    int idx;
-                    if ((idx = fileName.lastIndexOf("/")) > -1
-                            || (idx = fileName.lastIndexOf(File.separator)) > -1 ) {
-                        fileName = fileName.substring(idx + 1);
-                    }
-                    
-
-                    if (exnames.contains(fileName.replaceAll("[Xx]$", ""))) {
-                        //                        result.put("X", getBuf(in, (int) entry.getSize()));
-                        mapX.put(fileName.toUpperCase(), getBuf(in, entry));
-                    } else if (fileName.toUpperCase().endsWith(".WTH")) {
-                        mapW.put(fileName.toUpperCase(), getBuf(in, entry));
-                    } else if (fileName.toUpperCase().endsWith(".SOL")) {
-                        mapS.put(fileName.toUpperCase(), getBuf(in, entry));
-                    } else if (exnames.contains(fileName.replaceAll("[Aa]$", ""))) {
-                        //                        result.put("A", getBuf(in, (int) entry.getSize()));
-                        mapA.put(fileName.toUpperCase(), getBuf(in, entry));
-                    } else if (exnames.contains(fileName.replaceAll("[Tt]$", ""))) {
-                        //                        result.put("T", getBuf(in, (int) entry.getSize()));
-                        mapT.put(fileName.toUpperCase(), getBuf(in, entry));
-                    } else if (fileName.toUpperCase().endsWith(".OUT")) {
-                        result.put(fileName.toUpperCase(), getBuf(in, entry));
-                    } else if (fileName.toUpperCase().endsWith(".CUL")) {
-                        mapC.put(fileName.toUpperCase(), getBuf(in, entry));
-                    } else if (fileName.toUpperCase().endsWith(".JSON")) {
-                        result.put(fileName.toUpperCase(), getBuf(in, entry));
-                    }
+            // Classify the entries
+            for (int i = 0; i < entries.size(); i++) {
+                String fileName = fileNames.get(i);
+                ZipEntryBuf buf = new ZipEntryBuf(zipFile, entries.get(i));
+
+                if (exnames.contains(fileName.replaceAll("[Xx]$", ""))) {
+                    mapX.put(fileName.toUpperCase(), buf);
+                } else if (fileName.toUpperCase().endsWith(".WTH")) {
+                    mapW.put(fileName.toUpperCase(), buf);
+                } else if (fileName.toUpperCase().endsWith(".SOL")) {
+                    mapS.put(fileName.toUpperCase(), buf);
+                } else if (exnames.contains(fileName.replaceAll("[Aa]$", ""))) {
+                    mapA.put(fileName.toUpperCase(), buf);
+                } else if (exnames.contains(fileName.replaceAll("[Tt]$", ""))) {
+                    mapT.put(fileName.toUpperCase(), buf);
+                } else if (fileName.toUpperCase().endsWith(".OUT")) {
+                    result.put(fileName.toUpperCase(), buf);
+                } else if (fileName.toUpperCase().endsWith(".CUL")) {
+                    mapC.put(fileName.toUpperCase(), buf);
+                } else if (fileName.toUpperCase().endsWith(".JSON")) {
+                    result.put(fileName.toUpperCase(), buf);
                 }
             }
-            in.close();
+            result.put("ZF", zipFile);
         } // If input File is not ZIP file
         else {
             in = new FileInputStream(filePath);
             File f = new File(filePath);
             if (filePath.matches(".+\\.\\w{2}[Xx]")) {
-                mapX.put(f.getName().toUpperCase(), new BufferedReader(new InputStreamReader(in)));
+                // P.S. XFile is also read for planting date, keep the content for multiple reading
+                mapX.put(f.getName().toUpperCase(), getBuf(in));
                 //                result.put("X", new BufferedReader(new InputStreamReader(in)));
             } else if (filePath.toUpperCase().endsWith(".WTH")) {
                 mapW.put(f.getName().toUpperCase(), new BufferedReader(new InputStreamReader(in)));
             } else if (filePath.toUpperCase().endsWith(".SOL")) {
-                mapS.put(f.getName().toUpperCase(), new BufferedReader(new InputStreamReader(in)));
+                // P.S. Soil file is opened when reading, the referred profiles could be read by index
+                in.close();
+                mapS.put(f.getName().toUpperCase(), f);
             } else if (filePath.matches(".+\\.\\w{2}[Aa]")) {
                 mapA.put(f.getName().toUpperCase(), new BufferedReader(new InputStreamReader(in)));
                 //                result.put("A", new BufferedReader(new InputStreamReader(in)));
@@ -442,11 +461,13 @@ public abstract class DssatCommonInput implements TranslatorInput {
             }
             String name = file.getName().toUpperCase();
             if (name.matches(".+\\.\\w{2}[Xx]")) {
-                mapX.put(name, new BufferedReader(new FileReader(file)));
+                // P.S. XFile is also read for planting date, keep the content for multiple reading
+                mapX.put(name, getBuf(new FileInputStream(file)));
             } else if (name.endsWith(".WTH")) {
                 mapW.put(name, new BufferedReader(new FileReader(file)));
             } else if (name.endsWith(".SOL")) {
-                mapS.put(name, new BufferedReader(new FileReader(file)));
+                // P.S. Soil file is opened when reading, the referred profiles could be read by index
+                mapS.put(name, file);
             } else if (name.matches(".+\\.\\w{2}[Aa]")) {
                 mapA.put(name, new BufferedReader(new FileReader(file)));
             } else if (name.matches(".+\\.\\w{2}[Tt]")) {
@@ -472,32 +493,100 @@ public abstract class DssatCommonInput implements TranslatorInput {
     }
 
     /**
-     * Get BufferReader object from Zip entry
+     * Release the zip file which is held by the buffer holder
      *
-     * @param in The input stream of zip file
-     * @param entry The current entry of zip input stream
+     * @param brMap The holder for BufferReader objects for all files
+     */
+    protected static void closeBufferReader(HashMap brMap) {
+        Object zipFile = brMap.get("ZF");
+        if (zipFile instanceof ZipFile) {
+            try {
+                ((ZipFile) zipFile).close();
+            } catch (IOException e) {
+                LOG.warn(Functions.getStackTrace(e));
+            }
+        }
+    }
+
+    /**
+     * Get BufferReader object from the buffer holder of one file
+     *
+     * @param buf The char array, the zip entry, the file or the BufferReader
+     * @return result The BufferReader for the file
+     * @throws IOException
+     */
+    protected static BufferedReader getBufferReader(Object buf) throws IOException {
+        if (buf == null) {
+            return null;
+        } else if (buf instanceof File) {
+            return new BufferedReader(new FileReader((File) buf));
+        } else if (buf instanceof ZipEntryBuf) {
+            return new BufferedReader(new CharArrayReader(((ZipEntryBuf) buf).getBuf()));
+        } else if (buf instanceof char[]) {
+            return new BufferedReader(new CharArrayReader((char[]) buf));
+        } else {
+            return (BufferedReader) buf;
+        }
+    }
+
+    /**
+     * Get char array from the buffer holder of one file
+     *
+     * @param buf The char array or the zip entry
+     * @return result The char array for the file, null if not available
+     * @throws IOException
+     */
+    protected static char[] getBuf(Object buf) throws IOException {
+        if (buf instanceof ZipEntryBuf) {
+            return ((ZipEntryBuf) buf).getBuf();
+        } else if (buf instanceof char[]) {
+            return (char[]) buf;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Get char array from Zip entry
+     *
+     * @param in The input stream of zip entry
      * @return result The char array for current entry
      * @throws IOException
      */
-    private static char[] getBuf(InputStream in, ZipEntry entry) throws IOException {
+    private static char[] getBuf(InputStream in) throws IOException {
         BufferedReader br = new BufferedReader(new InputStreamReader(in));
-        char[] buf;
-        long size = entry.getSize();
+        char[] b = new char[8192];
+        CharArrayWriter cw = new CharArrayWriter();
+        int chunk;
+        while ((chunk = br.read(b)) > 0) {
+            cw.write(b, 0, chunk);
+        }
+        br.close();
 
-        if (size > 0 && size <= Integer.MAX_VALUE) {
-            buf = new char[(int) size];
-            br.read(buf);
-        } else {
-            char[] b = new char[1024];
-            CharArrayWriter cw = new CharArrayWriter();
-            int chunk;
-            while ((chunk = br.read(b)) > 0) {
-                cw.write(b, 0, chunk);
-            }
-            buf = cw.toCharArray();
+        return cw.toCharArray();
+    }
+
+    /**
+     * The handler of one entry in the zip package, the content is decoded on
+     * the first request and kept for the following reading
+     */
+    protected static class ZipEntryBuf {
+
+        private final ZipFile zipFile;
+        private final ZipEntry entry;
+        private char[] buf;
+
+        public ZipEntryBuf(ZipFile zipFile, ZipEntry entry) {
+            this.zipFile = zipFile;
+            this.entry = entry;
         }
 
-        return buf;
+        public synchronized char[] getBuf() throws IOException {
+            if (buf == null) {
+                buf = DssatCommonInput.getBuf(zipFile.getInputStream(entry));
+            }
+            return buf;
+        }
     }
 
     /**
@@ -626,49 +715,16 @@ public abstract class DssatCommonInput implements TranslatorInput {
     }
 
     /**
-     * Add the new item into array by having same key value
+     * Add the new item into array by having same key value; for adding
+     * multiple items into same array, use RecordMerger directly to keep the
+     * index
      *
      * @param arr the target array
      * @param item the input item which will be added into array
      * @param key the primary key item's name
      */
     protected void addToArray(ArrayList arr, HashMap item, Object key) {
-        HashMap elem;
-        boolean unmatchFlg = true;
-
-        // Added logging (cv)
-        LOG.debug("Array: {}", arr.toString());
-        LOG.debug("Item: {}", item.toString());
-        LOG.debug("Key: {}", key);
-
-
-        for (Object sub : arr) {
-            elem = (HashMap) sub;
-            if (!key.getClass().isArray()) {
-                if (elem.get(key).equals(item.get(key))) {
-                    elem.putAll(item);
-                    unmatchFlg = false;
-                    break;
-                }
-            } else {
-                Object[] keys = (Object[]) key;
-                boolean equalFlg = true;
-                for (Object key1 : keys) {
-                    if (!elem.get(key1).equals(item.get(key1))) {
-                        equalFlg = false;
-                        break;
-                    }
-                }
-                if (equalFlg) {
-                    elem.putAll(item);
-                    unmatchFlg = false;
-                    break;
-                }
-            }
-        }
-        if (unmatchFlg) {
-            arr.add(item);
-        }
+        new RecordMerger(arr, key).merge(item);
     }
 
     /**
@@ -681,94 +737,99 @@ public abstract class DssatCommonInput implements TranslatorInput {
      */
     protected String getPdate(HashMap m, String trno, String fileName) {
 
+        HashMap<String, String> pdates = getPdateIndex(m, fileName);
+        if (pdates.containsKey(trno)) {
+            return pdates.get(trno);
+        } else {
+            return "";
+        }
+    }
+
+    /**
+     * Get the index of planting date by treatment number for the XFile, the
+     * index is built at the first time and kept in the files content holder,
+     * so it is shared by all the observed data readers
+     *
+     * @param m the files content holder
+     * @param fileName the XFile name
+     * @return the map of planting date (yyddd) by treatment number
+     */
+    protected static HashMap<String, String> getPdateIndex(HashMap m, String fileName) {
+
+        HashMap<String, HashMap<String, String>> pdateIndex = (HashMap) m.get("PDATE");
+        if (pdateIndex == null) {
+            pdateIndex = new HashMap();
+            m.put("PDATE", pdateIndex);
+        }
+        HashMap<String, String> pdates = pdateIndex.get(fileName);
+        if (pdates == null) {
+            pdates = createPdateIndex((HashMap) m.get("X"), fileName);
+            pdateIndex.put(fileName, pdates);
+        }
+        return pdates;
+    }
+
+    /**
+     * Read the planting date of each treatment from XFile
+     *
+     * @param mapX the XFile content holder
+     * @param fileName the XFile name
+     * @return the map of planting date (yyddd) by treatment number
+     */
+    private static HashMap<String, String> createPdateIndex(HashMap mapX, String fileName) {
+
+        HashMap<String, String> pdates = new HashMap();
+        HashMap<String, String> plByTrno = new HashMap();
+        HashMap<String, String> pdateByPl = new HashMap();
         BufferedReader br;
         Object buf;
         String line;
-        LinkedHashMap formats = new LinkedHashMap();
-        String pl = null;
         String[] flgP;
         DssatXFileInput xfile = new DssatXFileInput();
 
-//        buf = (char[]) m.get("X");
-        HashMap mapX = (HashMap) m.get("X");
-
-        buf = mapX.get(fileName);
+        buf = mapX == null ? null : mapX.get(fileName);
         if (buf == null) {
-            return "";
-        } else if (buf instanceof char[]) {
-            br = new BufferedReader(new CharArrayReader((char[]) buf));
-        } else {
-            br = (BufferedReader) buf;
+            return pdates;
         }
 
-//        if (buf == null) {
-//            return "";
-//        } else {
-//            br = new BufferedReader(new CharArrayReader(buf));
-//        }
-
         try {
+            br = getBufferReader(buf);
             while ((line = br.readLine()) != null) {
 
                 // Get content type of line
                 xfile.judgeContentType(line);
                 flgP = xfile.flg;
 
-                // Read TREATMENTS Section
-                if (flgP[0].startsWith("treatments")) {
-
-                    if (pl != null) {
-                        continue;
-                    }
-
-                    // Read TREATMENTS data
-                    if (flgP[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("trno", 2);
-                        formats.put("", 44);
-                        formats.put("pl", 3);
-                        // Read line and get related planting info number
-                        HashMap tmp = readLine(line, formats);
-                        if (tmp.get("trno").equals(trno)) {
-                            pl = (String) tmp.get("pl");
-                        }
-                    } else {
-                    }
-
-
-                } // Read CULTIVARS Section
-                else if (flgP[0].startsWith("planting")) {
-
-                    if (pl == null) {
-                        return "";
+                // Read TREATMENTS data, only the first record of treatment is used
+                if (flgP[0].startsWith("treatments") && flgP[2].equals("data")) {
+                    HashMap tmp = xfile.readLine(line, PDATE_TREATMENT_LAYOUT);
+                    String trno = (String) tmp.get("trno");
+                    String pl = (String) tmp.get("pl");
+                    if (trno != null && pl != null && !plByTrno.containsKey(trno)) {
+                        plByTrno.put(trno, pl);
                     }
-
-                    // Read PLANTING data
-                    if (flgP[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("pl", 2);
-                        formats.put("pdate", 6);
-                        // Read line and save into defValD
-                        HashMap tmp = readLine(line, formats);
-                        if (tmp.get("pl").equals(pl)) {
-                            return (String) tmp.get("pdate");
-                        }
-
-                    } else {
+                } // Read PLANTING data, only the first record of planting level is used
+                else if (flgP[0].startsWith("planting") && flgP[2].equals("data")) {
+                    HashMap tmp = xfile.readLine(line, PDATE_PLANTING_LAYOUT);
+                    String pl = (String) tmp.get("pl");
+                    if (pl != null && !pdateByPl.containsKey(pl)) {
+                        pdateByPl.put(pl, (String) tmp.get("pdate"));
                     }
-
-                } else {
                 }
             }
-
             br.close();
         } catch (IOException ex) {
-            LOG.error(getStackTrace(ex));
+            LOG.error(Functions.getStackTrace(ex));
         }
 
-        return "";
+        for (String trno : plByTrno.keySet()) {
+            String pl = plByTrno.get(trno);
+            if (pdateByPl.containsKey(pl)) {
+                pdates.put(trno, pdateByPl.get(pl));
+            }
+        }
+
+        return pdates;
     }
 
     public static void setDataVersionInfo(HashMap m) {
@@ -841,9 +902,82 @@ public abstract class DssatCommonInput implements TranslatorInput {
         return ret;
     }
 
+    /**
+     * Build the hash index of the section data by given key, the position of
+     * the first record is used when the key value is duplicated
+     *
+     * @param secArr Section data array
+     * @param key index variable name
+     * @return the map of the record position by index variable value
+     */
+    public static HashMap<String, Integer> getSectionDataIndex(ArrayList secArr, Object key) {
+
+        HashMap<String, Integer> ret = new HashMap<String, Integer>();
+        for (int i = 0; i < secArr.size(); i++) {
+            Object id = ((HashMap) secArr.get(i)).get(key);
+            if (id != null && !ret.containsKey(id.toString())) {
+                ret.put(id.toString(), i);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Get the section data by given index value and key through the hash
+     * index, without getting a copy of original data. The result is the same
+     * with getSectionDataWithNocopy, including the 4-bit INSI alias of the
+     * weather station id.
+     *
+     * @param secArr Section data array
+     * @param index the hash index built by getSectionDataIndex
+     * @param key index variable name
+     * @param value index variable value
+     * @return the section data with given index value and key
+     */
+    public static HashMap getSectionDataWithIndex(ArrayList secArr, HashMap<String, Integer> index, Object key, String value) {
+
+        if (secArr.isEmpty() || value == null) {
+            return null;
+        }
+        Integer pos = index.get(value);
+        if (key.equals("wst_id") && isWstIdWithYear(value)) {
+            Integer aliasPos = index.get(value.substring(0, 4));
+            if (aliasPos != null && (pos == null || aliasPos < pos)) {
+                pos = aliasPos;
+            }
+        }
+
+        return pos == null ? null : (HashMap) secArr.get(pos);
+    }
+
+    /**
+     * Check if the weather station id is following the pattern of 4-bit INSI
+     * plus 4-bit year and duration (same as "\\w{4}\\d{4}$")
+     *
+     * @param wstId weather station id
+     * @return true for the id with year and duration
+     */
+    static boolean isWstIdWithYear(String wstId) {
+        if (wstId.length() != 8) {
+            return false;
+        }
+        for (int i = 0; i < 8; i++) {
+            char c = wstId.charAt(i);
+            boolean isDigit = c >= '0' && c <= '9';
+            if (i >= 4 && !isDigit) {
+                return false;
+            } else if (!isDigit && !(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Combine two layer data array into a new array by matching the pointed id,
-     * and only combine the pointed variables
+     * and only combine the pointed variables. The layers of to array which are
+     * not changed are shared with the result instead of copied.
      *
      * @param toArr the array which the data will be combined to
      * @param fromArr the array which the data will be combined from
@@ -856,93 +990,138 @@ public abstract class DssatCommonInput implements TranslatorInput {
     public static ArrayList<HashMap> combinLayers(ArrayList<HashMap> toArr, ArrayList<HashMap> fromArr, String toKey, String fromKey, String[] copyKeys) {
 
         ArrayList<HashMap> ret = new ArrayList<HashMap>();
-        ArrayList<String> fromKeyArr = getLayerNumArray(fromArr, fromKey);
-        ArrayList<String> toKeyArr = getLayerNumArray(toArr, toKey);
+        // The layers which are still shared with the to array
+        ArrayList<Boolean> sharedFlgs = new ArrayList<Boolean>();
+        // The depths are only compared when both arrays have layers
+        boolean isCompared = !toArr.isEmpty() && !fromArr.isEmpty();
+        double[] fromDepths = isCompared ? getLayerDepths(fromArr, fromKey) : null;
+        double[] toDepths = isCompared ? getLayerDepths(toArr, toKey) : null;
+        int toSize = toArr.size();
+        // The position of the first layer with same depth string, as the one used for the depth
+        int[] toPos = new int[toSize];
+        HashMap<String, Integer> toIdx = getSectionDataIndex(toArr, toKey);
+        for (int k = 0; k < toPos.length; k++) {
+            Integer pos = toIdx.get(toArr.get(k).get(toKey));
+            toPos[k] = pos == null ? k : pos;
+        }
 
         int cnt = 0;
-        for (int j = 0; j < fromKeyArr.size(); j++) {
-            HashMap toTmp = new HashMap();
-            HashMap fromTmp = (HashMap) fromArr.get(j);
-            String fromKeyVal = fromKeyArr.get(j);
-            String toKeyVal;
+        for (int j = 0; j < fromArr.size(); j++) {
+            HashMap toTmp;
+            HashMap fromTmp = fromArr.get(j);
+            String fromKeyVal = (String) fromTmp.get(fromKey);
 
-            if (toKeyArr.isEmpty()) {
+            if (toSize == 0) {
+                toTmp = new HashMap();
                 ret.add(toTmp);
+                sharedFlgs.add(false);
                 copyItems(toTmp, fromTmp, copyKeys);
-            } else if (toKeyArr.size() <= cnt) {
-                toTmp = CopyList(getSectionData(toArr, toKey, toKeyArr.get(toKeyArr.size() - 1)));
+            } else if (toSize <= cnt) {
+                // The copy keys are put on a shallow copy of the layer
+                toTmp = new HashMap(toArr.get(toPos[toSize - 1]));
                 toTmp.put(toKey, fromKeyVal);
                 ret.add(toTmp);
+                sharedFlgs.add(false);
                 copyItems(toTmp, fromTmp, copyKeys);
             }
-            
-            for (;cnt < toKeyArr.size(); cnt++) {
-                toKeyVal = toKeyArr.get(cnt);
-                if (Double.parseDouble(toKeyVal) == Double.parseDouble(fromKeyVal)) {
-                    toTmp = (HashMap) getSectionData(toArr, toKey, toKeyVal);
-                    ret.add(toTmp);
+
+            for (; cnt < toSize; cnt++) {
+                toTmp = new HashMap(toArr.get(toPos[cnt]));
+                ret.add(toTmp);
+                sharedFlgs.add(false);
+                if (toDepths[cnt] == fromDepths[j]) {
                     copyItems(toTmp, fromTmp, copyKeys);
                     cnt++;
                     break;
-                } else if (Double.parseDouble(toKeyVal) > Double.parseDouble(fromKeyVal)) {
-                    toTmp = CopyList((HashMap) getSectionData(toArr, toKey, toKeyVal));
+                } else if (toDepths[cnt] > fromDepths[j]) {
                     toTmp.put(toKey, fromKeyVal);
-                    ret.add(toTmp);
                     copyItems(toTmp, fromTmp, copyKeys);
                     cnt++;
                     break;
                 } else {
-                    toTmp = (HashMap) getSectionData(toArr, toKey, toKeyVal);
-                    ret.add(toTmp);
                     copyItems(toTmp, fromTmp, copyKeys);
                 }
             }
         }
 
-        for (int j = cnt; j < toKeyArr.size(); j++) {
-            ret.add((HashMap) getSectionData(toArr, toKey, toKeyArr.get(j)));
+        // The rest layers are not changed, so they are shared until being filled below
+        for (int j = cnt; j < toSize; j++) {
+            HashMap toTmp = toArr.get(toPos[j]);
+            if (isPlainLayer(toTmp)) {
+                ret.add(toTmp);
+                sharedFlgs.add(true);
+            } else {
+                ret.add(CopyList(toTmp));
+                sharedFlgs.add(false);
+            }
         }
 
         // Auto-fill the copy data in the missing layer with nearby layer data
         String copyItem;
         for (String copyKey : copyKeys) {
             copyItem = null;
+            // The value of the deepest layer, which is used when no value is found below the layer
+            String deepestItem = null;
+            boolean isDeepestFound = false;
             for (int j = ret.size() - 1; j > 0; j--) {
                 if (ret.get(j).containsKey(copyKey)) {
                     copyItem = (String) ret.get(j).get(copyKey);
                 } else {
                     if (copyItem == null) {
-                        for (int k = ret.size() - 1; k > 0; k--) {
-                            if (ret.get(k).get(copyKey) != null) {
-                                copyItem = (String) ret.get(k).get(copyKey);
-                                break;
+                        if (!isDeepestFound) {
+                            for (int k = ret.size() - 1; k > 0; k--) {
+                                if (ret.get(k).get(copyKey) != null) {
+                                    deepestItem = (String) ret.get(k).get(copyKey);
+                                    break;
+                                }
                             }
+                            isDeepestFound = true;
                         }
+                        copyItem = deepestItem;
                     }
                     if (copyItem != null) {
+                        if (sharedFlgs.get(j)) {
+                            ret.set(j, new HashMap(ret.get(j)));
+                            sharedFlgs.set(j, false);
+                        }
                         ret.get(j).put(copyKey, copyItem);
                     }
                 }
             }
         }
 
-
         return ret;
     }
 
     /**
-     * Get the array of key variables from original array
+     * Check if the layer only contains string values, which makes it same as
+     * its copy
+     *
+     * @param layer the layer data
+     * @return true if the layer could be shared instead of copied
+     */
+    private static boolean isPlainLayer(HashMap layer) {
+        for (Object val : layer.values()) {
+            if (!(val instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the depth values of the layers
      *
      * @param arr the input array
-     * @param key the key name
+     * @param key the key name of depth
      *
-     * @return the array of key variable value
+     * @return the array of depth value
      */
-    private static ArrayList<String> getLayerNumArray(ArrayList<HashMap> arr, String key) {
+    private static double[] getLayerDepths(ArrayList<HashMap> arr, String key) {
 
-        ArrayList<String> ret = new ArrayList();
-        for (HashMap data : arr) {
-            ret.add((String) (data.get(key)));
+        double[] ret = new double[arr.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = Double.parseDouble((String) arr.get(i).get(key));
         }
         return ret;
     }
@@ -1,8 +1,10 @@
 package org.agmip.translators.dssat;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -33,10 +35,12 @@ public abstract class DssatCommonOutput implements TranslatorOutput {
     // construct the error message in the output
     protected StringBuilder sbError;
     protected File outputFile;
-    protected static HashMap<String, String> exToFileMap = new HashMap();
-    protected static HashSet<String> fileNameSet = new HashSet();
-    protected static DssatWthFileHelper wthHelper = new DssatWthFileHelper();
-    protected static DssatSoilFileHelper soilHelper = new DssatSoilFileHelper();
+    // the file names allocated in current translation job, or shared by the standalone writers of the output directory
+    protected NamingSession naming = NamingSession.getDirectorySession("");
+    private boolean isJobSession;
+    // the zip output which replaces the files on disk, null for writing files
+    protected DssatZipSink zipSink;
+    private DssatZipSink.EntrySlot zipSlot;
 
     /**
      * Translate data str from "yyyymmdd" to "yyddd"
@@ -48,19 +52,9 @@ public abstract class DssatCommonOutput implements TranslatorOutput {
      */
     protected String formatDateStr2(String str) {
 
-        // Initial Calendar object
-        Calendar cal = Calendar.getInstance();
-        str = str.replaceAll("/", "");
-        try {
-            // Set date with input value
-            cal.set(Integer.parseInt(str.substring(0, 4)), Integer.parseInt(str.substring(4, 6)) - 1, Integer.parseInt(str.substring(6)));
-            // translatet to yyddd format
-            return String.format("%1$02d%2$03d", cal.get(Calendar.YEAR) % 100, cal.get(Calendar.DAY_OF_YEAR));
-        } catch (Exception e) {
-            // if tranlate failed, then use default value for date
-            //sbError.append("! Waring: There is a invalid date [").append(str).append("]\r\n");
-            return formatDateStr2(defValD);
-        }
+        String ret = DssatDateCodec.yyyymmddToYyddd(str, 0);
+        // if tranlate failed, then use default value for date
+        return ret == null ? defValD : ret;
     }
 
     /**
@@ -72,26 +66,154 @@ public abstract class DssatCommonOutput implements TranslatorOutput {
      * @param defVal the default return value when error happens
      * @return formated string of number
      */
-    protected String formatNumStr(int bits, HashMap m, Object key, String defVal) {
+    protected String formatNumStr(int bits, Map m, Object key, String defVal) {
+
+        String str = getObjectOr(m, key, defVal);
+        if (isBlank(str)) {
+            return padLeft(defVal, bits);
+        } else if (str.length() <= bits) {
+            return padLeft(str, bits);
+        } else {
+            return roundNumStr(bits, str, key, defVal);
+        }
+    }
+
+    /**
+     * Append the formated number with maximum length and type to the buffer,
+     * which gives the same text as String.format("%[width]s",
+     * formatNumStr(bits, m, key, defVal)) without the intermediate strings
+     *
+     * @param sb the buffer of output text
+     * @param width the minimum width of the text, right aligned
+     * @param bits Maximum length of the number
+     * @param m the experiment data holder
+     * @param key the key of field in the map
+     * @param defVal the default return value when error happens
+     * @return the buffer
+     */
+    protected StringBuilder appendNumStr(StringBuilder sb, int width, int bits, Map m, Object key, String defVal) {
 
-        String ret = "";
         String str = getObjectOr(m, key, defVal);
-        String[] inputStr = str.split("\\.");
-        if (str.trim().equals("")) {
-            return String.format("%" + bits + "s", defVal);
+        if (isBlank(str)) {
+            return appendLeftPad(sb, defVal, Math.max(bits, width));
         } else if (str.length() <= bits) {
-            ret = String.format("%1$" + bits + "s", str);
-        } else if (inputStr[0].length() > bits) {
+            return appendLeftPad(sb, str, Math.max(bits, width));
+        } else {
+            return appendLeftPad(sb, roundNumStr(bits, str, key, defVal), width);
+        }
+    }
+
+    /**
+     * Round the number which is longer than the maximum length
+     *
+     * @param bits Maximum length of the output string
+     * @param str the number string
+     * @param key the key of field in the map
+     * @param defVal the default return value when error happens
+     * @return the rounded number
+     */
+    private String roundNumStr(int bits, String str, Object key, String defVal) {
+
+        int dotIdx = str.indexOf('.');
+        int intLength = dotIdx < 0 ? str.length() : dotIdx;
+        if (intLength > bits) {
             //throw new Exception();
-            sbError.append("! Waring: There is a variable [").append(key).append("] with oversized number [").append(ret).append("] (Limitation is ").append(bits).append(" bits)\r\n");
-            return String.format("%" + bits + "s", defVal);
+            appendOversizedWarning(bits, key);
+            return padLeft(defVal, bits);
         } else {
-            int decimalLength = bits - inputStr[0].length() - 1;
+            int decimalLength = bits - intLength - 1;
             decimalLength = decimalLength < 0 ? 0 : decimalLength;
-            ret = org.agmip.common.Functions.round(str, decimalLength);
+            return org.agmip.common.Functions.round(str, decimalLength);
         }
+    }
 
-        return ret;
+    /**
+     * Check the number with maximum length, and add the same warning as
+     * formatNumStr if the number is oversized, without formatting it
+     *
+     * @param bits Maximum length of the number
+     * @param m the experiment data holder
+     * @param key the key of field in the map
+     */
+    protected void checkNumStr(int bits, Map m, Object key) {
+
+        String str = getObjectOr(m, key, "");
+        if (str.length() > bits && !isBlank(str)) {
+            int dotIdx = str.indexOf('.');
+            if ((dotIdx < 0 ? str.length() : dotIdx) > bits) {
+                appendOversizedWarning(bits, key);
+            }
+        }
+    }
+
+    private void appendOversizedWarning(int bits, Object key) {
+        sbError.append("! Waring: There is a variable [").append(key).append("] with oversized number [] (Limitation is ").append(bits).append(" bits)\r\n");
+    }
+
+    /**
+     * Check if the string only contains white spaces
+     *
+     * @param str the input string
+     * @return true if the string is blank
+     */
+    private static boolean isBlank(String str) {
+        for (int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add blanks on the left side of the string to the given width, same as
+     * String.format("%[width]s", str)
+     *
+     * @param str the input string
+     * @param width the minimum width
+     * @return the right aligned string
+     */
+    protected static String padLeft(String str, int width) {
+        str = String.valueOf(str);
+        if (str.length() >= width) {
+            return str;
+        }
+        return appendLeftPad(new StringBuilder(width), str, width).toString();
+    }
+
+    /**
+     * Append the string to the buffer with blanks on the left side to the given
+     * width, same as append(String.format("%[width]s", str))
+     *
+     * @param sb the buffer of output text
+     * @param str the input string
+     * @param width the minimum width
+     * @return the buffer
+     */
+    protected static StringBuilder appendLeftPad(StringBuilder sb, String str, int width) {
+        str = String.valueOf(str);
+        for (int i = str.length(); i < width; i++) {
+            sb.append(' ');
+        }
+        return sb.append(str);
+    }
+
+    /**
+     * Append the string to the buffer with blanks on the right side to the
+     * given width, same as append(String.format("%-[width]s", str))
+     *
+     * @param sb the buffer of output text
+     * @param str the input string
+     * @param width the minimum width
+     * @return the buffer
+     */
+    protected static StringBuilder appendRightPad(StringBuilder sb, String str, int width) {
+        str = String.valueOf(str);
+        sb.append(str);
+        for (int i = str.length(); i < width; i++) {
+            sb.append(' ');
+        }
+        return sb;
     }
 
     /**
@@ -103,7 +225,7 @@ public abstract class DssatCommonOutput implements TranslatorOutput {
      * @param defVal the default return value when error happens
      * @return formated string of number
      */
-    protected String formatStr(int bits, HashMap m, Object key, String defVal) {
+    protected String formatStr(int bits, Map m, Object key, String defVal) {
 
         String ret = getObjectOr(m, key, defVal).trim();
         return formatStr(bits, ret, key);
@@ -151,23 +273,16 @@ public abstract class DssatCommonOutput implements TranslatorOutput {
      */
     protected static String formatDateStr(String startDate, String strDays) {
 
-        // Initial Calendar object
-        Calendar cal = Calendar.getInstance();
-        int days;
-        startDate = startDate.replaceAll("/", "");
         try {
-            days = Double.valueOf(strDays).intValue();
-            // Set date with input value
-            cal.set(Integer.parseInt(startDate.substring(0, 4)), Integer.parseInt(startDate.substring(4, 6)) - 1, Integer.parseInt(startDate.substring(6)));
-            cal.add(Calendar.DATE, days);
-            // translatet to yyddd format
-            return String.format("%1$02d%2$03d", cal.get(Calendar.YEAR) % 100, cal.get(Calendar.DAY_OF_YEAR));
-        } catch (Exception e) {
-            // if tranlate failed, then use default value for date
-            // sbError.append("! Waring: There is a invalid date [").append(startDate).append("]\r\n");
-            return "-99"; //formatDateStr(defValD);
+            String ret = DssatDateCodec.yyyymmddToYyddd(startDate, DssatDateCodec.parseDays(strDays));
+            if (ret != null) {
+                return ret;
+            }
+        } catch (NumberFormatException e) {
         }
-
+        // if tranlate failed, then use default value for date
+        // sbError.append("! Waring: There is a invalid date [").append(startDate).append("]\r\n");
+        return "-99"; //formatDateStr(defValD);
     }
 
     /**
@@ -230,7 +345,7 @@ public abstract class DssatCommonOutput implements TranslatorOutput {
      * @param fileType the last letter from file extend name
      * @return file name
      */
-    protected synchronized String getFileName(Map result, String fileType) {
+    protected String getFileName(Map result, String fileType) {
         String exname = getExName(result);
         String crid;
         if (getValueOr(result, "seasonal_dome_applied", "N").equals("Y")) {
@@ -244,52 +359,7 @@ public abstract class DssatCommonOutput implements TranslatorOutput {
             }
         }
 
-        String ret;
-        if (exToFileMap.containsKey(exname + "_" + crid)) {
-            return exToFileMap.get(exname + "_" + crid) + fileType;
-        } else {
-            ret = exname;
-            if (ret.equals("")) {
-                ret = "TEMP0001";
-            } else {
-                try {
-                    if (ret.endsWith(crid)) {
-                        ret = ret.substring(0, ret.length() - crid.length());
-                    }
-                    // If the exname is too long
-                    if (ret.length() > 8) {
-                        ret = ret.substring(0, 8);
-                    }
-                    // If the exname do not follow the Dssat rule
-                    if (!ret.matches("[\\w ]{1,6}\\d{2}$")) {
-                        if (ret.length() > 6) {
-                            ret = ret.substring(0, 6);
-                        }
-                        ret += "01";
-                    }
-                } catch (Exception e) {
-                    ret = "TEMP0001";
-                }
-            }
-
-            // Find a non-repeated file name
-            int count;
-            while (fileNameSet.contains(ret + "." + crid)) {
-                try {
-                    count = Integer.parseInt(ret.substring(ret.length() - 2, ret.length()));
-                    count++;
-                } catch (Exception e) {
-                    count = 1;
-                }
-                ret = ret.replaceAll("\\w{2}$", String.format("%02d", count));
-            }
-        }
-
-        
-        exToFileMap.put(exname + "_" + crid, ret + "." + crid);
-        fileNameSet.add(ret + "." + crid);
-
-        return ret + "." + crid + fileType;
+        return naming.getExFileName(exname, crid) + fileType;
     }
 
     /**
@@ -324,6 +394,66 @@ public abstract class DssatCommonOutput implements TranslatorOutput {
         return outputFile;
     }
 
+    /**
+     * Share the file names with the other writers of the same translation job
+     *
+     * @param naming the file names allocated in the job
+     */
+    public void setNamingSession(NamingSession naming) {
+        this.naming = naming;
+        this.isJobSession = naming != null;
+    }
+
+    /**
+     * Share the file names with the other standalone writers of the same
+     * output directory, unless the writer has the session of a translation
+     * job
+     *
+     * @param arg0 file output path
+     */
+    protected void useDirectorySession(String arg0) {
+        if (!isJobSession) {
+            naming = NamingSession.getDirectorySession(arg0);
+        }
+    }
+
+    /**
+     * Write the output into the zip entries instead of the files on disk, the
+     * place of the output in the zip is reserved by the order of calling
+     *
+     * @param zipSink the zip output of the translation job
+     */
+    void setZipSink(DssatZipSink zipSink) {
+        this.zipSink = zipSink;
+        this.zipSlot = zipSink == null ? null : zipSink.reserve();
+    }
+
+    /**
+     * Release the place in the zip if the output is not written into it
+     */
+    void releaseZipSlot() {
+        if (zipSink != null) {
+            zipSink.release(zipSlot);
+        }
+    }
+
+    /**
+     * Open the writer for the output file, or for its zip entry if the zip
+     * output is set
+     *
+     * @param file the output file
+     * @param append true if the content should be appended to the file
+     * @return the writer
+     * @throws IOException
+     */
+    protected BufferedWriter openWriter(File file, boolean append) throws IOException {
+        if (zipSink != null) {
+            return zipSink.openEntry(zipSlot, file.getName(), append);
+        } else {
+            return new BufferedWriter(new FileWriter(file, append));
+        }
+    }
+
     /**
      * decompress the data in a map object
      *
@@ -405,7 +535,7 @@ public abstract class DssatCommonOutput implements TranslatorOutput {
      * @param data experiment data holder or weather data holder
      * @return the weather file name
      */
-    protected synchronized String getWthFileName(Map data) {
+    protected String getWthFileName(Map data) {
 
 //        String agmipFileHack = getValueOr(wthFile, "wst_name", "");
 //        if (agmipFileHack.length() == 8) {
@@ -413,7 +543,7 @@ public abstract class DssatCommonOutput implements TranslatorOutput {
 //        }
         String ret = getObjectOr(data, "wst_id", "");
         if (ret.equals("") || ret.length() > 8) {
-            ret = wthHelper.createWthFileName(getObjectOr(data, "weather", data));
+            ret = naming.getWthHelper().createWthFileName(getObjectOr(data, "weather", data));
             if (ret.equals("")) {
                 ret = "AGMP";
             }
@@ -428,8 +558,8 @@ public abstract class DssatCommonOutput implements TranslatorOutput {
      * @param data experiment data holder or weather data holder
      * @return the weather file name
      */
-    protected synchronized String getSoilID(HashMap data) {
-        return soilHelper.getSoilID(data);
+    protected String getSoilID(HashMap data) {
+        return naming.getSoilHelper().getSoilID(data);
 //        String ret = getObjectOr(data, "soil_id", "");
 //        ret = ret.trim();
 //        if (ret.equals("")) {
@@ -492,6 +622,18 @@ public abstract class DssatCommonOutput implements TranslatorOutput {
             return super.get(index);
         }
 
+        /**
+         * Mark the registered header as used by the current record, so it
+         * will not be applied as the new item
+         *
+         * @param index the index of the header
+         */
+        public void markUsed(int index) {
+            if (curItems != null) {
+                curItems.remove(super.get(index));
+            }
+        }
+
         public void seCurItems(Set set) {
             curItems = new HashSet();
             curItems.addAll(set);
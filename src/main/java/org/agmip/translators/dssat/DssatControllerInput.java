@@ -5,7 +5,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import org.agmip.common.Functions;
 import org.agmip.core.types.TranslatorInput;
 import static org.agmip.translators.dssat.DssatCommonInput.*;
@@ -26,6 +29,36 @@ public class DssatControllerInput implements TranslatorInput {
     private final DssatTFileInput obvTReader = new DssatTFileInput();
     private final DssatCulFileInput culReader = new DssatCulFileInput();
     private static final Logger LOG = LoggerFactory.getLogger(DssatControllerInput.class);
+    private String wthStartDate;
+    private String wthEndDate;
+    private boolean isWthWindowByTreatments = false;
+
+    /**
+     * Only keep the weather days within the given date window, which should be
+     * called before readFile. It is used for the long historical or climate
+     * scenario weather files while only a few seasons are simulated.
+     *
+     * @param startDate the first date with format of "yyyymmdd", null for no
+     * limit
+     * @param endDate the last date with format of "yyyymmdd", null for no
+     * limit
+     */
+    public void setWeatherWindow(String startDate, String endDate) {
+        this.wthStartDate = startDate;
+        this.wthEndDate = endDate;
+    }
+
+    /**
+     * Only keep the weather days which could be used by the treatments, from
+     * the earliest start date of simulation or event to the years of
+     * simulation after the latest date. It is ignored when the window is given
+     * by setWeatherWindow.
+     *
+     * @param isByTreatments true for deriving the window from the treatments
+     */
+    public void setWeatherWindowByTreatments(boolean isByTreatments) {
+        this.isWthWindowByTreatments = isByTreatments;
+    }
 
     /**
      * All DSSAT Data input method, used for single file or zip package
@@ -45,7 +78,11 @@ public class DssatControllerInput implements TranslatorInput {
             LOG.error(Functions.getStackTrace(e));
             return new HashMap();
         }
-        return read(brMap);
+        try {
+            return read(brMap);
+        } finally {
+            closeBufferReader(brMap);
+        }
     }
     
     /**
@@ -119,6 +156,93 @@ public class DssatControllerInput implements TranslatorInput {
         return read(brMap);
     }
     
+    /**
+     * Collect the IDs of soil, weather station and cultivar referred by the
+     * treatments, so that only the related data will be read from the files
+     *
+     * @param metaData the meta data from XFile
+     * @param mgnArr the management data of the treatments
+     * @param soilIds the holder for soil IDs
+     * @param wthIds the holder for weather station IDs
+     * @param culIds the holder for cultivar IDs
+     * @return the meta data block of each treatment, which is reused for
+     * combining the data
+     */
+    private ArrayList<HashMap> collectReferredIds(HashMap metaData, ArrayList<HashMap> mgnArr, HashSet<String> soilIds, HashSet<String> wthIds, HashSet<String> culIds) {
+
+        ArrayList<HashMap> ret = new ArrayList<HashMap>();
+        for (int i = 0; i < mgnArr.size(); i++) {
+            HashMap expData = mgnReader.setupMetaData(metaData, i);
+            ret.add(expData);
+            soilIds.add(getValueOr(expData, "soil_id", "0"));
+            String wthId = getValueOr(expData, "wst_id", "0");
+            wthIds.add(wthId);
+            // The file for 4-bit INSI could also be used for the station with year
+            if (isWstIdWithYear(wthId)) {
+                wthIds.add(wthId.substring(0, 4));
+            }
+            ArrayList<HashMap> eventArr = getObjectOr(mgnArr.get(i), "events", new ArrayList());
+            for (HashMap event : eventArr) {
+                if (getObjectOr(event, "event", "").equals("planting") && event.get("cul_id") != null) {
+                    culIds.add(event.get("cul_id").toString());
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Get the date window of weather data used by the treatments, which is
+     * from the earliest start date of simulation or event, to the number of
+     * simulation years after the latest date
+     *
+     * @param mgnArr the management data of the treatments
+     * @return the first and last date with format of "yyyymmdd", null if any
+     * treatment has no date
+     */
+    private String[] getTreatmentWindow(ArrayList<HashMap> mgnArr) {
+
+        int start = Integer.MAX_VALUE;
+        int end = Integer.MIN_VALUE;
+        for (HashMap mgnData : mgnArr) {
+            int first = DssatDateCodec.parseStrictYyyymmdd(getValueOr(mgnData, "sdat", ""));
+            int last = first;
+            ArrayList<HashMap> eventArr = getObjectOr(mgnData, "events", new ArrayList());
+            for (HashMap event : eventArr) {
+                int day = DssatDateCodec.parseStrictYyyymmdd(getValueOr(event, "date", ""));
+                if (day == DssatDateCodec.NO_DATE) {
+                    continue;
+                }
+                if (first == DssatDateCodec.NO_DATE || day < first) {
+                    first = day;
+                }
+                if (day > last) {
+                    last = day;
+                }
+            }
+            if (first == DssatDateCodec.NO_DATE) {
+                return null;
+            }
+            // The number of years for simulation, 1 by default
+            int years = 1;
+            HashMap smTmp = getObjectOr(mgnData, "dssat_simulation_control", new HashMap());
+            ArrayList<HashMap> smArr = getObjectOr(smTmp, mgnReader.eventKey, new ArrayList());
+            for (HashMap smData : smArr) {
+                HashMap smGeneral = getObjectOr(smData, "general", new HashMap());
+                try {
+                    years = Math.max(years, Integer.parseInt(getValueOr(smGeneral, "nyers", "1").trim()));
+                } catch (NumberFormatException e) {
+                }
+            }
+            start = Math.min(start, first);
+            end = Math.max(end, last + 366 * years);
+        }
+        if (start > end) {
+            return null;
+        }
+        return new String[]{DssatDateCodec.formatYyyymmdd(start), DssatDateCodec.formatYyyymmdd(end)};
+    }
+
     private HashMap read(HashMap brMap) {
 
         HashMap ret = new HashMap();
@@ -130,6 +254,7 @@ public class DssatControllerInput implements TranslatorInput {
         HashMap soilData;
         HashMap soilTmpMap = new HashMap();
         HashMap<String, String> soilAnalysisMap = new HashMap();
+        HashMap<String, String> soilProfileMap = new HashMap();
         String soilId;
         ArrayList<HashMap> wthArr;
         HashMap wthData;
@@ -143,6 +268,7 @@ public class DssatControllerInput implements TranslatorInput {
         ArrayList<HashMap> obvTArr;
         ArrayList<HashMap> culArr;
         HashMap culData;
+        ArrayList<HashMap> trMetaArr = new ArrayList<HashMap>();
 
         try {
 
@@ -152,11 +278,31 @@ public class DssatControllerInput implements TranslatorInput {
             // Try to read XFile (treatment; management)
             mgnArr = mgnReader.readTreatments(brMap, metaData);
 
+            // Collect the soil, weather and cultivar IDs referred by treatments
+            HashSet<String> soilIds = null;
+            HashSet<String> wthIds = null;
+            HashSet<String> culIds = null;
+            if (!mgnArr.isEmpty()) {
+                soilIds = new HashSet<String>();
+                wthIds = new HashSet<String>();
+                culIds = new HashSet<String>();
+                trMetaArr = collectReferredIds(metaData, mgnArr, soilIds, wthIds, culIds);
+            }
+
             // Try to read soil File
-            soilArr = soilReader.readSoilSites(brMap, metaData);
+            soilArr = soilReader.readSoilSites(brMap, metaData, soilIds);
+
+            // Get the date window for weather data
+            String[] wthWindow = {wthStartDate, wthEndDate};
+            if (wthStartDate == null && wthEndDate == null && isWthWindowByTreatments && !mgnArr.isEmpty()) {
+                wthWindow = getTreatmentWindow(mgnArr);
+                if (wthWindow == null) {
+                    wthWindow = new String[2];
+                }
+            }
 
             // Try to read weather File
-            wthArr = wthReader.readDailyData(brMap, metaData);
+            wthArr = wthReader.readDailyData(brMap, metaData, wthIds, wthWindow[0], wthWindow[1]);
 
             // Try to read Observed AFile (summary data)
             obvAFiles = obvAReader.readObvData(brMap);
@@ -165,7 +311,7 @@ public class DssatControllerInput implements TranslatorInput {
             obvTFiles = obvTReader.readObvData(brMap);
 
             // Try to read cultivar File
-            culArr = culReader.readCultivarData(brMap, metaData);
+            culArr = culReader.readCultivarData(brMap, metaData, culIds);
 
         } catch (FileNotFoundException fe) {
             LOG.warn(Functions.getStackTrace(fe));
@@ -175,16 +321,23 @@ public class DssatControllerInput implements TranslatorInput {
             return ret;
         }
 
+        // Build the indexes for joining the data into each treatment
+        HashMap<String, Integer> wthIdx = getSectionDataIndex(wthArr, "wst_id");
+        HashMap<String, Integer> soilIdx = getSectionDataIndex(soilArr, "soil_id");
+        HashMap<String, Integer> culIdx = getSectionDataIndex(culArr, "cul_id");
+        HashMap<String, HashMap<String, Integer>> obvAIdxMap = new HashMap();
+        HashMap<String, HashMap<String, Integer>> obvTIdxMap = new HashMap();
+
         // Combine the each part of data
         for (int i = 0; i < mgnArr.size(); i++) {
 
-            // Set meta data block for this treatment
-            expData = mgnReader.setupMetaData(metaData, i);
+            // Set meta data block for this treatment, which is set up when collecting the IDs
+            expData = trMetaArr.get(i);
 
             // Set soil data for this treatment
             wthId = getValueOr(expData, "wst_id", "0");
             if (!wthId.equals("0")) {
-                wthData = getSectionDataWithNocopy(wthArr, "wst_id", wthId);
+                wthData = getSectionDataWithIndex(wthArr, wthIdx, "wst_id", wthId);
                 if (wthData != null && !wthData.isEmpty()) {
 //                    expData.put(wthReader.jsonKey, wthData);
                     wthTmpMap.put(wthId, wthData);
@@ -194,7 +347,7 @@ public class DssatControllerInput implements TranslatorInput {
             // Set weather data for this treatment
             soilId = getValueOr(expData, "soil_id", "0");
             if (!soilId.equals("0") && !soilTmpMap.containsKey(soilId)) {
-                soilData = getSectionDataWithNocopy(soilArr, "soil_id", soilId);
+                soilData = getSectionDataWithIndex(soilArr, soilIdx, "soil_id", soilId);
                 // if there is soil analysis data, create new soil block by using soil analysis info
                 if (expData.get("soil_analysis") != null) {
                     HashMap saTmp = (HashMap) expData.remove("soil_analysis");
@@ -203,7 +356,8 @@ public class DssatControllerInput implements TranslatorInput {
                         if (soilData == null) {
                             soilData = new HashMap();
                         } else {
-                            soilData = CopyList(soilData);
+                            // The layers are rebuilt by combinLayers, so the site block is copied only
+                            soilData = new HashMap(soilData);
                         }
 
                         // Update soil site data
@@ -211,16 +365,26 @@ public class DssatControllerInput implements TranslatorInput {
                         copyItem(soilData, saTmp, "smhb");
                         copyItem(soilData, saTmp, "smpx");
                         copyItem(soilData, saTmp, "smke");
-                        soilId += "_" + (i + 1);
-                        soilData.put("soil_id", soilId);
-                        expData.put("soil_id", soilId);
-                        soilAnalysisMap.put(saHash, soilId);
 
                         // Update soil layer data
                         ArrayList<HashMap> soilLyrs = getObjectOr(soilData, soilReader.layerKey, new ArrayList());
                         ArrayList<HashMap> saLyrs = getObjectOr(saTmp, mgnReader.icEventKey, new ArrayList());
                         String[] copyKeys = {"sllb", "slbdm", "sloc", "slni", "slphw", "slphb", "slpx", "slke", "slsc"};
                         soilData.put(soilReader.layerKey, combinLayers(soilLyrs, saLyrs, "sllb", "sllb", copyKeys));
+
+                        // Reuse the derived soil with same content, which may come from different soil analysis
+                        String profileKey = getContentKey(soilData);
+                        String derivedId = soilProfileMap.get(profileKey);
+                        if (derivedId == null) {
+                            soilId += "_" + (i + 1);
+                            soilProfileMap.put(profileKey, soilId);
+                            soilData.put("soil_id", soilId);
+                        } else {
+                            soilId = derivedId;
+                            soilData = null;
+                        }
+                        expData.put("soil_id", soilId);
+                        soilAnalysisMap.put(saHash, soilId);
                     } else {
                         expData.put("soil_id", soilAnalysisMap.get(saHash));
                         soilData = null;
@@ -241,10 +405,15 @@ public class DssatControllerInput implements TranslatorInput {
             // observed data (summary)
             obvAFile = getObjectOr(obvAFiles, exname, new HashMap());
             obvAArr = getObjectOr(obvAFile, obvAReader.obvDataKey, new ArrayList<HashMap>());
+            HashMap<String, Integer> obvAIdx = obvAIdxMap.get(exname);
+            if (obvAIdx == null) {
+                obvAIdx = getSectionDataIndex(obvAArr, "trno_a");
+                obvAIdxMap.put(exname, obvAIdx);
+            }
             HashMap obv = new HashMap();
             expData.put(obvAReader.jsonKey, obv);
             if (!getValueOr(expData, "trno", "0").equals("0")) {
-                HashMap tmp = getSectionDataWithNocopy(obvAArr, "trno_a", expData.get("trno").toString());
+                HashMap tmp = getSectionDataWithIndex(obvAArr, obvAIdx, "trno_a", expData.get("trno").toString());
                 if (tmp != null) {
                     obv.putAll(tmp);
                 }
@@ -253,8 +422,13 @@ public class DssatControllerInput implements TranslatorInput {
             // observed data (time-series)
             obvTFile = getObjectOr(obvTFiles, exname, new HashMap());
             obvTArr = getObjectOr(obvTFile, obvTReader.obvDataKey, new ArrayList<HashMap>());
+            HashMap<String, Integer> obvTIdx = obvTIdxMap.get(exname);
+            if (obvTIdx == null) {
+                obvTIdx = getSectionDataIndex(obvTArr, "trno_t");
+                obvTIdxMap.put(exname, obvTIdx);
+            }
             if (!getValueOr(expData, "trno", "0").equals("0")) {
-                HashMap tmp = getSectionDataWithNocopy(obvTArr, "trno_t", expData.get("trno").toString());
+                HashMap tmp = getSectionDataWithIndex(obvTArr, obvTIdx, "trno_t", expData.get("trno").toString());
                 if (tmp != null) {
                     obv.put("timeSeries", tmp.get(obvTReader.obvDataKey));
                 }
@@ -275,7 +449,7 @@ public class DssatControllerInput implements TranslatorInput {
                 ArrayList<HashMap> culTmpArr = new ArrayList<HashMap>();
                 for (int j = 0; j < eventArr.size(); j++) {
                     if (getObjectOr(eventArr.get(j), "event", "").equals("planting")) {
-                        culData = getSectionDataWithNocopy(culArr, "cul_id", (String) eventArr.get(j).get("cul_id"));
+                        culData = getSectionDataWithIndex(culArr, culIdx, "cul_id", (String) eventArr.get(j).get("cul_id"));
                         if (culData != null) {
                             culTmpArr.add(culData);
                         }
@@ -314,4 +488,44 @@ public class DssatControllerInput implements TranslatorInput {
 
         return ret;
     }
+
+    /**
+     * Get the key of the content of data, which is built once as a canonical
+     * string with the map entries sorted by key, so the data with same content
+     * gets the same key
+     *
+     * @param data the data holder
+     * @return the key of content
+     */
+    private static String getContentKey(Object data) {
+        StringBuilder sb = new StringBuilder();
+        appendContentKey(sb, data);
+        return sb.toString();
+    }
+
+    private static void appendContentKey(StringBuilder sb, Object data) {
+        if (data instanceof Map) {
+            TreeMap<String, Object> sorted = new TreeMap<String, Object>();
+            for (Object e : ((Map) data).entrySet()) {
+                Map.Entry entry = (Map.Entry) e;
+                sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            sb.append('{');
+            for (Map.Entry<String, Object> entry : sorted.entrySet()) {
+                appendContentKey(sb, entry.getKey());
+                appendContentKey(sb, entry.getValue());
+            }
+            sb.append('}');
+        } else if (data instanceof List) {
+            sb.append('[');
+            for (Object item : (List) data) {
+                appendContentKey(sb, item);
+            }
+            sb.append(']');
+        } else {
+            // The length prefix keeps the text values apart
+            String text = String.valueOf(data);
+            sb.append(text.length()).append(':').append(text);
+        }
+    }
 }
@@ -1,25 +1,23 @@
 package org.agmip.translators.dssat;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import org.agmip.translators.dssat.DssatBatchFileOutput.DssatVersion;
 import static org.agmip.translators.dssat.DssatCommonInput.getSectionDataWithNocopy;
 import static org.agmip.translators.dssat.DssatCommonOutput.revisePath;
@@ -35,19 +33,34 @@ import org.slf4j.LoggerFactory;
 public class DssatControllerOutput extends DssatCommonOutput {
 
     private final HashMap<String, File> files = new HashMap();
-    private final HashMap<String, Future<File>> futFiles = new HashMap();
+    private final DssatTranslateScheduler scheduler = new DssatTranslateScheduler();
 //    private HashMap<String, Future<File>> soilFiles = new HashMap();
 //    private HashMap<String, Future<File>> wthFiles = new HashMap();
     private final HashMap<String, Map> soilData = new HashMap();
     private final HashMap<String, Map> wthData = new HashMap();
-    private ExecutorService executor = Executors.newFixedThreadPool(64);
+    // The holders for streaming mode
+    // The number of values (not bytes) of soil and weather data kept in memory for each index
+    private static final long STREAM_VALUE_LIMIT = 4 * 1024 * 1024;
+    private SpillableRecordIndex soilIdx;
+    private SpillableRecordIndex wthIdx;
+    private ArrayList<String> expGroupKeys;
+    private HashMap<String, Integer> expGroupSizes;
+    private HashMap<String, ArrayList<HashMap>> expGroupData;
+    private LinkedHashMap<String, HashMap> batchData;
+    private LinkedHashMap<String, DssatSoilOutput> soilGroups;
+    private LinkedList<List<String>> inFlight;
+    private int inFlightLimit;
+    // The zip output set by setZipOutput, the file is null when only the stream is given
+    private boolean isZipOutput;
+    private File zipOutputFile;
+    private int expCount;
     private static final Logger LOG = LoggerFactory.getLogger(DssatControllerOutput.class);
-//    private ArrayList<File> 
 
     public DssatControllerOutput() {
-        soilHelper = new DssatSoilFileHelper();
-        wthHelper = new DssatWthFileHelper();
+        // The file names are allocated per translation job
+        setNamingSession(new NamingSession());
     }
+//    private ArrayList<File> 
 
     /**
      * ALL DSSAT Data Output method
@@ -78,42 +91,9 @@ public class DssatControllerOutput extends DssatCommonOutput {
         }
 
         // Write files
-        String soil_id;
-        String wth_id;
         expArr = combineExps(expArr);
         for (HashMap expData : expArr) {
-            ArrayList<HashMap> rootArr = getObjectOr(expData, "dssat_root", new ArrayList());
-            if (rootArr.isEmpty()) {
-                soil_id = getObjectOr(expData, "soil_id", "");
-                wth_id = getObjectOr(expData, "wst_id", "");
-                expData.put("soil", getSectionDataWithNocopy(soilArr, "soil_id", soil_id));
-                expData.put("weather", getSectionDataWithNocopy(wthArr, "wst_id", wth_id));
-                recordSWData(expData, new DssatSoilOutput());
-                recordSWData(expData, new DssatWeatherOutput());
-            } else {
-                ArrayList<HashMap> soilArrTmp = new ArrayList();
-                ArrayList<HashMap> wthArrTmp = new ArrayList();
-                for (HashMap rootData : rootArr) {
-                    soil_id = getObjectOr(rootData, "soil_id", "");
-                    wth_id = getObjectOr(rootData, "wst_id", "");
-                    HashMap soilTmp = new HashMap();
-                    HashMap wthTmp = new HashMap();
-                    soilTmp.put("soil", getSectionDataWithNocopy(soilArr, "soil_id", soil_id));
-                    soilTmp.put("soil_id", soil_id);
-                    soilTmp.put("exname", rootData.get("exname"));
-                    soilTmp.put("id", rootData.get("id"));
-                    wthTmp.put("weather", getSectionDataWithNocopy(wthArr, "wst_id", wth_id));
-                    wthTmp.put("wst_id", wth_id);
-                    recordSWData(soilTmp, new DssatSoilOutput());
-                    recordSWData(wthTmp, new DssatWeatherOutput());
-                    soilArrTmp.add((HashMap) soilTmp.get("soil"));
-                    wthArrTmp.add(wthTmp);
-                    rootData.put("wst_id", getObjectOr(wthTmp, "wst_id", wth_id));
-                    rootData.put("soil_id", getObjectOr(soilTmp, "soil_id", wth_id));
-                }
-                expData.put("soil", soilArrTmp);
-                expData.put("weather", wthArrTmp);
-            }
+            resolveSWData(arg0, expData, soilArr, wthArr);
             String exname = getValueOr(expData, "exname", "N/A");
             //            DssatCommonOutput[] outputs = {
 //                new DssatXFileOutput(),
@@ -129,10 +109,10 @@ public class DssatControllerOutput extends DssatCommonOutput {
         // If experiment data is included
         if (!expArr.isEmpty()) {
             // Write all batch files
-            futFiles.put("DSSBatch.v45", executor.submit(new DssatTranslateRunner(new DssatBatchFileOutput(DssatVersion.DSSAT45), expArr, arg0)));
-            futFiles.put("DSSBatch.v46", executor.submit(new DssatTranslateRunner(new DssatBatchFileOutput(DssatVersion.DSSAT46), expArr, arg0)));
-            futFiles.put("Run45.bat", executor.submit(new DssatTranslateRunner(new DssatRunFileOutput(DssatVersion.DSSAT45), expArr, arg0)));
-            futFiles.put("Run46.bat", executor.submit(new DssatTranslateRunner(new DssatRunFileOutput(DssatVersion.DSSAT46), expArr, arg0)));
+            writeSingleExp(arg0, expArr, new DssatBatchFileOutput(DssatVersion.DSSAT45), "DSSBatch.v45");
+            writeSingleExp(arg0, expArr, new DssatBatchFileOutput(DssatVersion.DSSAT46), "DSSBatch.v46");
+            writeSingleExp(arg0, expArr, new DssatRunFileOutput(DssatVersion.DSSAT45), "Run45.bat");
+            writeSingleExp(arg0, expArr, new DssatRunFileOutput(DssatVersion.DSSAT46), "Run46.bat");
         } // If only weather or soil data is included
         else {
             for (HashMap sData : soilArr) {
@@ -157,6 +137,43 @@ public class DssatControllerOutput extends DssatCommonOutput {
         //createZip();
     }
 
+    /**
+     * Set the deadline of the translation, the output files which are not
+     * finished on time will be canceled
+     *
+     * @param timeout the maximum time to wait from now, 0 for no deadline
+     * @param unit the time unit of timeout
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        scheduler.setTimeout(timeout, unit);
+    }
+
+    /**
+     * Write the output files into the given stream as one zip instead of
+     * writing them on disk. Should be called before writeFile, and the zip is
+     * finished by createZip.
+     *
+     * @param os the output stream for the zip
+     */
+    public void setZipOutput(OutputStream os) {
+        zipSink = new DssatZipSink(os);
+        isZipOutput = true;
+        zipOutputFile = null;
+    }
+
+    /**
+     * Write the output files into the given zip file directly instead of
+     * writing them on disk. Should be called before writeFile, and the zip is
+     * finished by createZip.
+     *
+     * @param zipFile the output zip file
+     * @throws FileNotFoundException
+     */
+    public void setZipOutput(File zipFile) throws FileNotFoundException {
+        setZipOutput(new FileOutputStream(zipFile));
+        zipOutputFile = zipFile;
+    }
+
     /**
      * ALL DSSAT Data Output method
      *
@@ -167,17 +184,11 @@ public class DssatControllerOutput extends DssatCommonOutput {
     @Override
     public void writeFile(String arg0, Map result) {
 
-        long estTime = 0;
-
         try {
             if (getObjectOr(result, "experiments", new ArrayList()).isEmpty()
                     && getObjectOr(result, "soils", new ArrayList()).isEmpty()
                     && getObjectOr(result, "weathers", new ArrayList()).isEmpty()) {
 
-                // Calculate estimated time consume
-                HashMap wth = getObjectOr(result, "weather", new HashMap());
-                estTime += getObjectOr(wth, "dailyWeather", new ArrayList()).size();
-
                 // Write files
                 recordSWData(result, new DssatSoilOutput());
                 recordSWData(result, new DssatWeatherOutput());
@@ -199,69 +210,446 @@ public class DssatControllerOutput extends DssatCommonOutput {
                 //createZip();
 
             } else {
-                // Calculate estimated time consume
-                for (HashMap wth : (ArrayList<HashMap>) getObjectOr(result, "weathers", new ArrayList<HashMap>())) {
-                    estTime += getObjectOr(wth, "dailyWeather", new ArrayList()).size();
-                }
                 writeMultipleExp(arg0, result);
             }
 
-            if (estTime > 0) {
-                estTime *= 10;
+            // Wait for all the output files
+            scheduler.awaitAll();
+            files.putAll(scheduler.getFiles());
+
+        } catch (FileNotFoundException e) {
+            LOG.error(getStackTrace(e));
+        } catch (IOException e) {
+            LOG.error(getStackTrace(e));
+        }
+    }
+
+    /**
+     * ALL DSSAT Data Output method in streaming mode, which reads the
+     * experiments from the JSON files one at a time and releases each of them
+     * after its files are written. The soil and weather data are indexed by
+     * their id in the first pass, and the experiments are translated in the
+     * second pass, so the peak memory depends on the few experiments in flight
+     * (twice the number of threads, each of them could be a group of
+     * experiments with same exname) instead of the whole data.
+     *
+     * @param arg0 file output path
+     * @param jsonPaths the paths of JSON files, each of them should have the
+     * experiments, soils and weathers array at its top level
+     */
+    public void writeFileFromJson(String arg0, List<String> jsonPaths) {
+
+        arg0 = revisePath(arg0);
+        soilIdx = new SpillableRecordIndex("soil_id", STREAM_VALUE_LIMIT);
+        wthIdx = new SpillableRecordIndex("wst_id", STREAM_VALUE_LIMIT);
+        expGroupKeys = new ArrayList();
+        expGroupSizes = new HashMap();
+        expGroupData = new HashMap();
+        batchData = new LinkedHashMap();
+        soilGroups = new LinkedHashMap();
+        inFlight = new LinkedList();
+        // Keep the thread pool busy while only a few experiments are held in memory
+        inFlightLimit = DssatTranslateScheduler.getPoolSize() * 2;
+
+        try {
+            // First pass: index soil and weather data, and group the experiments
+            for (String path : jsonPaths) {
+                readJsonStream(path, arg0, true);
+            }
+
+            // Setup output file
+            Calendar cal = Calendar.getInstance();
+            if (!expGroupKeys.isEmpty() && soilIdx.isEmpty() && wthIdx.isEmpty()) {
+                outputFile = new File(arg0 + "AGMIP_DSSAT_EXPERIMENTS_" + cal.getTimeInMillis() + ".zip");
+            } else if (expGroupKeys.isEmpty() && !soilIdx.isEmpty() && wthIdx.isEmpty()) {
+                outputFile = new File(arg0 + "AGMIP_DSSAT_SOILS_" + cal.getTimeInMillis() + ".zip");
+            } else if (expGroupKeys.isEmpty() && soilIdx.isEmpty() && !wthIdx.isEmpty()) {
+                outputFile = new File(arg0 + "AGMIP_DSSAT_WEATHERS_" + cal.getTimeInMillis() + ".zip");
             } else {
-                estTime = 10000;
-            }
-
-            executor.shutdown();
-            long timer = System.currentTimeMillis();
-            HashSet<String> keys = new HashSet(futFiles.keySet());
-            int counter = 0;
-            while (!executor.isTerminated()) {
-                if (System.currentTimeMillis() - timer > estTime) {
-                    counter++;
-                    timer = System.currentTimeMillis();
-                    if (keys.isEmpty()) {
-                        LOG.info("The executor should be terminated");
-                        executor.shutdownNow();
-                    } else if (counter > 3) {
-                        LOG.info("The executor is going to be force terminated");
-                        executor.shutdownNow();
-                    }
-                    String[] arr = keys.toArray(new String[0]);
-                    for (String key : arr) {
-                        Future futFile = futFiles.get(key);
-                        if (futFile.isCancelled() || futFile.isDone()) {
-                            keys.remove(key);
-                        } else {
-                            LOG.info("DSSAT translation for {} is still under processing...", key);
-                        }
-                    }
+                outputFile = new File(arg0 + "AGMIP_DSSAT_" + cal.getTimeInMillis() + ".zip");
+            }
+
+            if (!expGroupKeys.isEmpty()) {
+                // Second pass: translate the experiments one by one
+                expCount = 0;
+                for (String path : jsonPaths) {
+                    readJsonStream(path, arg0, false);
+                }
+
+                // Write all batch files
+                ArrayList<HashMap> expArr = new ArrayList(batchData.values());
+                writeSingleExp(arg0, expArr, new DssatBatchFileOutput(DssatVersion.DSSAT45), "DSSBatch.v45");
+                writeSingleExp(arg0, expArr, new DssatBatchFileOutput(DssatVersion.DSSAT46), "DSSBatch.v46");
+                writeSingleExp(arg0, expArr, new DssatRunFileOutput(DssatVersion.DSSAT45), "Run45.bat");
+                writeSingleExp(arg0, expArr, new DssatRunFileOutput(DssatVersion.DSSAT46), "Run46.bat");
+            } else {
+                // If only weather or soil data is included
+                for (String soil_id : soilIdx.getIds()) {
+                    HashMap tmp = new HashMap();
+                    tmp.put("soil", soilIdx.get(soil_id));
+                    tmp.put("soil_id", soil_id);
+                    writeStreamSoilData(arg0, tmp);
                 }
+                for (String wst_id : wthIdx.getIds()) {
+                    HashMap tmp = new HashMap();
+                    tmp.put("weather", wthIdx.get(wst_id));
+                    tmp.put("wst_id", wst_id);
+                    writeStreamWthFile(arg0, tmp);
+                }
+            }
+
+            // Write soil files
+            writeStreamSoilFiles();
+            scheduler.awaitAll();
+            files.putAll(scheduler.getFiles());
+
+        } catch (IOException e) {
+            LOG.error(getStackTrace(e));
+        } finally {
+            try {
+                soilIdx.close();
+                wthIdx.close();
+            } catch (IOException e) {
+                LOG.error(getStackTrace(e));
             }
-            executor = null;
-            LOG.debug("Consume {} s", (System.currentTimeMillis() - timer) / 1000.0);
+            soilIdx = null;
+            wthIdx = null;
+            expGroupData = null;
+            batchData = null;
+            soilGroups = null;
+            inFlight = null;
+        }
+    }
+
+    /**
+     * Walk through the experiments, soils and weathers array in the JSON file
+     *
+     * @param path the path of JSON file
+     * @param arg0 file output path
+     * @param isFirstPass true for indexing, false for translating experiments
+     * @throws IOException
+     */
+    private void readJsonStream(String path, String arg0, boolean isFirstPass) throws IOException {
 
-            // Get output result files into output array
-            for (String key : futFiles.keySet()) {
-                try {
-                    File f = futFiles.get(key).get();
-                    if (f != null) {
-                        files.put(f.getPath(), f);
+        JsonStreamReader reader = new JsonStreamReader(new FileInputStream(path));
+        try {
+            reader.beginObject();
+            String name;
+            while ((name = reader.nextName()) != null) {
+                boolean isExp = name.equals("experiments");
+                boolean isSoil = isFirstPass && name.equals("soils");
+                boolean isWth = isFirstPass && name.equals("weathers");
+                if (!isExp && !isSoil && !isWth || reader.peek() != '[') {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (!isFirstPass && reader.peek() != '{') {
+                        reader.skipValue();
+                        continue;
+                    }
+                    Object data = reader.readValue();
+                    if (!(data instanceof HashMap)) {
+                        continue;
                     }
-                } catch (InterruptedException ex) {
-                    LOG.error(getStackTrace(ex));
-                } catch (ExecutionException ex) {
-                    if (!ex.getMessage().contains("NoOutputFileException")) {
-                        LOG.error(getStackTrace(ex));
+                    if (isSoil) {
+                        soilIdx.add((HashMap) data);
+                    } else if (isWth) {
+                        wthIdx.add((HashMap) data);
+                    } else if (isFirstPass) {
+                        groupStreamExp((HashMap) data);
+                    } else {
+                        writeStreamExp(arg0, (HashMap) data);
                     }
                 }
             }
+        } finally {
+            reader.close();
+        }
+    }
 
-        } catch (FileNotFoundException e) {
-            LOG.error(getStackTrace(e));
-        } catch (IOException e) {
-            LOG.error(getStackTrace(e));
+    /**
+     * Record the group of experiment, the experiments with same exname will be
+     * combined into one, same as combineExps
+     *
+     * @param expData the experiment data
+     */
+    private void groupStreamExp(HashMap expData) {
+        String exname = getValueOr(expData, "exname", "");
+        String key;
+        if (exname.equals("")) {
+            key = "Experiment_" + expGroupKeys.size();
+        } else {
+            key = getFileName(expData, "");
+        }
+        expGroupKeys.add(key);
+        Integer size = expGroupSizes.get(key);
+        expGroupSizes.put(key, size == null ? 1 : size + 1);
+        if (!batchData.containsKey(key)) {
+            batchData.put(key, null);
+        }
+    }
+
+    /**
+     * Translate the experiment when all the experiments in its group are read
+     *
+     * @param arg0 file output path
+     * @param expData the experiment data
+     * @throws IOException
+     */
+    private void writeStreamExp(String arg0, HashMap expData) throws IOException {
+
+        String key = expGroupKeys.get(expCount++);
+        int size = expGroupSizes.get(key);
+        if (size > 1) {
+            ArrayList<HashMap> group = expGroupData.get(key);
+            if (group == null) {
+                group = new ArrayList();
+                expGroupData.put(key, group);
+            }
+            group.add(expData);
+            if (group.size() < size) {
+                return;
+            }
+            expGroupData.remove(key);
+            expData = combineExps(group).get(0);
         }
+
+        // Resolve soil and weather data
+        resolveSWData(arg0, expData, null, null);
+
+        // Write the files of experiment, which is released when they are finished
+        String exname = getValueOr(expData, "exname", "N/A");
+        writeSingleExp(arg0, expData, new DssatXFileOutput(), exname + "_X");
+        writeSingleExp(arg0, expData, new DssatAFileOutput(), exname + "_A");
+        writeSingleExp(arg0, expData, new DssatTFileOutput(), exname + "_T");
+        writeSingleExp(arg0, expData, new DssatCulFileOutput(), exname + "_Cul");
+        batchData.put(key, getBatchData(expData));
+        addInFlight(Arrays.asList(exname + "_X", exname + "_A", exname + "_T", exname + "_Cul"));
+    }
+
+    /**
+     * Resolve the soil and weather data used by the experiment, the soil and
+     * weather IDs in the experiment (or in each of its roots) are updated with
+     * the ones used for output
+     *
+     * @param arg0 file output path
+     * @param expData the experiment data
+     * @param soilArr the soil data array, null for looking up the streaming
+     * index
+     * @param wthArr the weather data array, null for looking up the streaming
+     * index
+     * @throws IOException
+     */
+    private void resolveSWData(String arg0, HashMap expData, ArrayList<HashMap> soilArr, ArrayList<HashMap> wthArr) throws IOException {
+        ArrayList<HashMap> rootArr = getObjectOr(expData, "dssat_root", new ArrayList());
+        if (rootArr.isEmpty()) {
+            HashMap soilTmp = resolveSoilData(arg0, expData, soilArr);
+            HashMap wthTmp = resolveWthData(arg0, expData, wthArr);
+            expData.put("soil", soilTmp.get("soil"));
+            expData.put("soil_id", soilTmp.get("soil_id"));
+            expData.put("weather", wthTmp.get("weather"));
+            expData.put("wst_id", wthTmp.get("wst_id"));
+        } else {
+            ArrayList<HashMap> soilArrTmp = new ArrayList();
+            ArrayList<HashMap> wthArrTmp = new ArrayList();
+            for (HashMap rootData : rootArr) {
+                HashMap soilTmp = resolveSoilData(arg0, rootData, soilArr);
+                HashMap wthTmp = resolveWthData(arg0, rootData, wthArr);
+                soilArrTmp.add((HashMap) soilTmp.get("soil"));
+                wthArrTmp.add(wthTmp);
+                rootData.put("wst_id", wthTmp.get("wst_id"));
+                rootData.put("soil_id", soilTmp.get("soil_id"));
+            }
+            expData.put("soil", soilArrTmp);
+            expData.put("weather", wthArrTmp);
+        }
+    }
+
+    /**
+     * Look up and record the soil data for the experiment (or its root), in
+     * streaming mode the soil site is added to its soil file at once
+     *
+     * @param arg0 file output path
+     * @param data the experiment data or the root of combined experiment
+     * @param soilArr the soil data array, null for looking up the streaming
+     * index
+     * @return the holder of soil data with the soil ID used for output
+     * @throws IOException
+     */
+    private HashMap resolveSoilData(String arg0, HashMap data, ArrayList<HashMap> soilArr) throws IOException {
+        String soil_id = getObjectOr(data, "soil_id", "");
+        HashMap soilTmp = new HashMap();
+        if (soilArr == null) {
+            soilTmp.put("soil", soilIdx.get(soil_id));
+        } else {
+            soilTmp.put("soil", getSectionDataWithNocopy(soilArr, "soil_id", soil_id));
+        }
+        soilTmp.put("soil_id", soil_id);
+        soilTmp.put("exname", data.get("exname"));
+        soilTmp.put("id", data.get("id"));
+        if (soilArr == null) {
+            writeStreamSoilData(arg0, soilTmp);
+        } else {
+            recordSWData(soilTmp, new DssatSoilOutput());
+        }
+        return soilTmp;
+    }
+
+    /**
+     * Look up and record the weather data for the experiment (or its root),
+     * in streaming mode the weather file is written at once
+     *
+     * @param arg0 file output path
+     * @param data the experiment data or the root of combined experiment
+     * @param wthArr the weather data array, null for looking up the streaming
+     * index
+     * @return the holder of weather data with the weather ID used for output
+     * @throws IOException
+     */
+    private HashMap resolveWthData(String arg0, HashMap data, ArrayList<HashMap> wthArr) throws IOException {
+        String wth_id = getObjectOr(data, "wst_id", "");
+        HashMap wthTmp = new HashMap();
+        wthTmp.put("wst_id", wth_id);
+        if (wthArr == null) {
+            wthTmp.put("weather", wthIdx.get(wth_id));
+            writeStreamWthFile(arg0, wthTmp);
+        } else {
+            wthTmp.put("weather", getSectionDataWithNocopy(wthArr, "wst_id", wth_id));
+            recordSWData(wthTmp, new DssatWeatherOutput());
+        }
+        return wthTmp;
+    }
+
+    /**
+     * Write the weather file if it has not been written yet
+     *
+     * @param arg0 file output path
+     * @param wthTmp the holder of weather data
+     */
+    private void writeStreamWthFile(String arg0, HashMap wthTmp) {
+        recordSWData(wthTmp, new DssatWeatherOutput());
+        String wst_id = getValueOr(wthTmp, "wst_id", "N/A");
+        if (wthData.get(wst_id) == wthTmp) {
+            writeSingleExp(arg0, wthTmp, new DssatWeatherOutput(), wst_id + "_wth");
+            addInFlight(Arrays.asList(wst_id + "_wth"));
+            // Only keep the id for checking the repeated weather
+            HashMap idHolder = new HashMap();
+            idHolder.put("wst_id", wst_id);
+            wthData.put(wst_id, idHolder);
+        }
+    }
+
+    /**
+     * Add the soil site to its soil file if it has not been added yet
+     *
+     * @param arg0 file output path
+     * @param soilTmp the holder of soil data
+     * @throws IOException
+     */
+    private void writeStreamSoilData(String arg0, HashMap soilTmp) throws IOException {
+        recordSWData(soilTmp, new DssatSoilOutput());
+        String soil_id = getValueOr(soilTmp, "soil_id", "");
+        if (soilData.get(soil_id) == soilTmp) {
+            Map soil = getObjectOr(soilTmp, "soil", new HashMap());
+            if (!soil.isEmpty()) {
+                String key = soil_id.length() < 2 ? "" : soil_id.substring(0, 2);
+                DssatSoilOutput output = soilGroups.get(key);
+                if (output == null) {
+                    output = new DssatSoilOutput();
+                    output.setNamingSession(naming);
+                    soilGroups.put(key, output);
+                }
+                output.appendSite(arg0, soilTmp);
+            }
+            // Only keep the id for checking the repeated soil
+            HashMap idHolder = new HashMap();
+            idHolder.put("soil_id", soil_id);
+            soilData.put(soil_id, idHolder);
+        }
+    }
+
+    /**
+     * Output the soil files with the sites added in streaming mode
+     *
+     * @throws IOException
+     */
+    private void writeStreamSoilFiles() throws IOException {
+        for (DssatSoilOutput output : soilGroups.values()) {
+            output.setZipSink(zipSink);
+            try {
+                output.finishSites();
+            } finally {
+                output.releaseZipSlot();
+            }
+            File file = output.getOutputFile();
+            if (file != null) {
+                files.put(file.getPath(), file);
+            }
+        }
+    }
+
+    /**
+     * Track the submitted files of one experiment (or weather), and wait for
+     * the earliest ones when there are too many in flight, so the data held by
+     * their writers are released
+     *
+     * @param keys the identifiers of the submitted files
+     */
+    private void addInFlight(List<String> keys) {
+        inFlight.add(keys);
+        while (inFlight.size() > inFlightLimit) {
+            scheduler.await(inFlight.removeFirst());
+        }
+    }
+
+    /**
+     * Get the data used by batch file from the experiment, which only includes
+     * the text values, the sequence and planting events
+     *
+     * @param expData the experiment data
+     * @return the data for batch file
+     */
+    private HashMap getBatchData(HashMap expData) {
+        HashMap ret = new HashMap();
+        for (Object e : expData.entrySet()) {
+            Entry entry = (Entry) e;
+            if (entry.getValue() instanceof String) {
+                ret.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (expData.containsKey("dssat_sequence")) {
+            ret.put("dssat_sequence", expData.get("dssat_sequence"));
+        }
+        ArrayList<HashMap> events = getObjectOr(getObjectOr(expData, "management", new HashMap()), "events", new ArrayList());
+        ArrayList<HashMap> plEvents = new ArrayList();
+        for (HashMap event : events) {
+            if ("planting".equals(event.get("event"))) {
+                HashMap tmp = new HashMap();
+                tmp.put("event", "planting");
+                tmp.put("crid", event.get("crid"));
+                plEvents.add(tmp);
+            }
+        }
+        HashMap mgnData = new HashMap();
+        mgnData.put("events", plEvents);
+        ret.put("management", mgnData);
+        return ret;
+    }
+
+    /**
+     * Write files and add file objects in the array
+     *
+     * @param arg0 file output path
+     * @param results array of data holder object
+     * @param output DSSAT batch translator object
+     * @param file Generated DSSAT file identifier
+     */
+    private void writeSingleExp(String arg0, ArrayList<HashMap> results, DssatCommonOutput output, String file) {
+        output.setNamingSession(naming);
+        output.setZipSink(zipSink);
+        scheduler.submit(file, new DssatTranslateRunner(output, results, arg0));
     }
 
     /**
@@ -273,7 +661,13 @@ public class DssatControllerOutput extends DssatCommonOutput {
      * @param file Generated DSSAT file identifier
      */
     private void writeSingleExp(String arg0, Map result, DssatCommonOutput output, String file) {
-        futFiles.put(file, executor.submit(new DssatTranslateRunner(output, result, arg0)));
+        output.setNamingSession(naming);
+        output.setZipSink(zipSink);
+        if (output instanceof DssatXFileOutput) {
+            // Allocate the file name by the order of submitting
+            getFileName(result, "");
+        }
+        scheduler.submit(file, new DssatTranslateRunner(output, result, arg0));
     }
 
     /**
@@ -291,7 +685,7 @@ public class DssatControllerOutput extends DssatCommonOutput {
                 if (soilTmp.isEmpty()) {
                     id = getObjectOr(expData, "soil_id", "");
                 } else {
-                    id = soilHelper.getSoilID(soilTmp);
+                    id = naming.getSoilHelper().getSoilID(soilTmp);
                 }
 //                id = id.substring(0, 2);
                 swData = soilData;
@@ -303,7 +697,7 @@ public class DssatControllerOutput extends DssatCommonOutput {
                 if (wthTmp.isEmpty()) {
                     id = getObjectOr(expData, "wst_id", "");
                 } else {
-                    id = wthHelper.createWthFileName(wthTmp);
+                    id = naming.getWthHelper().createWthFileName(wthTmp);
                 }
                 swData = wthData;
                 expData.put("wst_id", id);
@@ -382,15 +776,35 @@ public class DssatControllerOutput extends DssatCommonOutput {
      * @throws IOException
      */
     public void createZip(boolean isDelete) throws FileNotFoundException, IOException {
-        createZip(outputFile, isDelete);
+        createZip(getOutputZipFile(), isDelete);
     }
-    
+
+    /**
+     * Compress the files in the given zip file. When the zip output is set by
+     * setZipOutput, the files have been written into it, so the given file
+     * should be the same one.
+     *
+     * @param outputFile the output zip file
+     * @param isDelete Flag for if deleted the files after compression
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
     public void createZip(File outputFile, boolean isDelete) throws FileNotFoundException, IOException {
 
-        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(outputFile));
-        ZipEntry entry;
-        BufferedInputStream bis;
-        byte[] data = new byte[1024];
+        // The files have been written into the zip output directly
+        if (isZipOutput) {
+            if (outputFile == null ? zipOutputFile != null : !outputFile.equals(zipOutputFile)) {
+                throw new IllegalArgumentException("The files are written into the zip output set before, not " + outputFile);
+            }
+            if (zipSink == null) {
+                return;
+            }
+            LOG.info("Finish zipping all the files...");
+            zipSink.close();
+            zipSink = null;
+            LOG.info("End zipping");
+            return;
+        }
 
         LOG.info("Start zipping all the files...");
 
@@ -400,28 +814,30 @@ public class DssatControllerOutput extends DssatCommonOutput {
             return;
         }
 
+        // The entries are deflated concurrently and written by the order of name
+        TreeMap<String, File> entries = new TreeMap();
         for (File file : files.values()) {
             if (file == null) {
                 continue;
             }
 
             if (outputFile.getParent() != null) {
-                entry = new ZipEntry(file.getPath().substring(outputFile.getParent().length() + 1));
+                entries.put(file.getPath().substring(outputFile.getParent().length() + 1), file);
             } else {
-                entry = new ZipEntry(file.getPath());
+                entries.put(file.getPath(), file);
             }
-            out.putNextEntry(entry);
-            bis = new BufferedInputStream(new FileInputStream(file));
-
-            int count;
-            while ((count = bis.read(data)) != -1) {
-                out.write(data, 0, count);
+        }
+        DssatZipWriter out = new DssatZipWriter(new FileOutputStream(outputFile));
+        try {
+            for (Map.Entry<String, File> entry : entries.entrySet()) {
+                out.add(DssatZipWriter.deflate(entry.getKey(), entry.getValue()));
             }
-            bis.close();
+        } finally {
+            out.close();
+        }
+        for (File file : entries.values()) {
             file.delete();
         }
-
-        out.close();
         LOG.info("End zipping");
     }
 
@@ -454,9 +870,14 @@ public class DssatControllerOutput extends DssatCommonOutput {
 //    }
     /**
      * Get output zip file
-     * @return output zip file
+     * @return output zip file, which is the one set by setZipOutput if the
+     * files are written into the zip directly (null if only the stream is
+     * given)
      */
     public File getOutputZipFile() {
+        if (isZipOutput) {
+            return zipOutputFile;
+        }
         return outputFile;
     }
 
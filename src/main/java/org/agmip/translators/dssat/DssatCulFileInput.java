@@ -1,11 +1,10 @@
 package org.agmip.translators.dssat;
 
 import java.io.BufferedReader;
-import java.io.CharArrayReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.Set;
 
 /**
  * DSSAT Cultivar Data I/O API Class
@@ -17,6 +16,9 @@ public class DssatCulFileInput extends DssatCommonInput {
 
     public String dataKey = "data";  // P.S. the key name might change
 
+    private static final FixedWidthLayout CULTIVAR_LAYOUT = new FixedWidthLayout()
+            .add("cul_id", 6);
+
     /**
      * Constructor with no parameters Set jsonKey as "dssat_cultivar_info"
      *
@@ -60,6 +62,20 @@ public class DssatCulFileInput extends DssatCommonInput {
      * @throws java.io.IOException
      */
     protected ArrayList<HashMap> readCultivarData(HashMap brMap, HashMap ret) throws IOException {
+        return readCultivarData(brMap, ret, null);
+    }
+
+    /**
+     * DSSAT Cultivar Data input method for Controller using, only the referred
+     * cultivars are read
+     *
+     * @param brMap The holder for BufferReader objects for all files
+     * @param ret
+     * @param culIds the referred cultivar IDs, null for reading all
+     * @return result data holder object
+     * @throws java.io.IOException
+     */
+    protected ArrayList<HashMap> readCultivarData(HashMap brMap, HashMap ret, Set<String> culIds) throws IOException {
 
         ArrayList<HashMap> culArr = new ArrayList<HashMap>();
         HashMap culData = new HashMap();
@@ -67,7 +83,6 @@ public class DssatCulFileInput extends DssatCommonInput {
         BufferedReader brC;
         Object buf;
         HashMap mapC;
-        LinkedHashMap formats = new LinkedHashMap();
 
         mapC = (HashMap) brMap.get("C");
 
@@ -81,11 +96,7 @@ public class DssatCulFileInput extends DssatCommonInput {
         for (Object key : mapC.keySet()) {
 
             buf = mapC.get(key);
-            if (buf instanceof char[]) {
-                brC = new BufferedReader(new CharArrayReader((char[]) buf));
-            } else {
-                brC = (BufferedReader) buf;
-            }
+            brC = getBufferReader(buf);
 
             while ((line = brC.readLine()) != null) {
 
@@ -101,12 +112,12 @@ public class DssatCulFileInput extends DssatCommonInput {
                     culData.put("cul_titles", line);
                 }// Cultivar data
                 else if (flg[2].equals("data")) {
-                    // Set variables' formats
                     line = line.replaceAll(".*:", "").trim();
-                    formats.clear();
-                    formats.put("cul_id", 6);
                     // Read line and save into return holder
-                    HashMap tmp = readLine(line, formats);
+                    HashMap tmp = readLine(line, CULTIVAR_LAYOUT);
+                    if (culIds != null && !culIds.contains(tmp.get("cul_id"))) {
+                        continue;
+                    }
                     tmp.putAll(culData);
                     tmp.put("cul_info", line);
                     culArr.add(tmp);
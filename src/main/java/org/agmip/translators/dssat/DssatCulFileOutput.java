@@ -2,7 +2,6 @@ package org.agmip.translators.dssat;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -38,6 +37,9 @@ public class DssatCulFileOutput extends DssatCommonOutput {
 
         try {
 
+            // Share the file names with the other writers of the directory if the writer is not in a job
+            useDirectorySession(arg0);
+
             // Set default value for missing data
             setDefVal();
 
@@ -62,7 +64,7 @@ public class DssatCulFileOutput extends DssatCommonOutput {
             }
             arg0 = revisePath(arg0);
             outputFile = new File(arg0 + fileName);
-            bwC = new BufferedWriter(new FileWriter(outputFile, outputFile.exists()));
+            bwC = openWriter(outputFile, true);
 
             // Output Cultivar File
             String lastHeaderInfo = "";
@@ -0,0 +1,366 @@
+package org.agmip.translators.dssat;
+
+/**
+ * The shared date codec for DSSAT date strings. The date is handled as epoch
+ * day (number of days since 1970-01-01, proleptic Gregorian calendar), so the
+ * conversion between "yyddd" and "yyyymmdd" and the offset of days are done
+ * by integer arithmetic, without Calendar or regular expression.
+ *
+ * The parsing is as lenient as the Calendar based version, which means the
+ * overflowed day of year, month or day will be rolled into the next period.
+ *
+ * @author Meng Zhang
+ * @version 1.0
+ */
+class DssatDateCodec {
+
+    /**
+     * The return value for the date which could not be parsed
+     */
+    public static final int NO_DATE = Integer.MIN_VALUE;
+    // P.S. 2015 is the cross year for the current version
+    private static final int CROSS_YEAR = 15;
+    private static final int NO_NUM = Integer.MIN_VALUE;
+    // The day of year before the first day of each month
+    private static final int[] MONTH_START = {0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334, 365};
+    private static final int[] MONTH_START_LEAP = {0, 31, 60, 91, 121, 152, 182, 213, 244, 274, 305, 335, 366};
+    // The month for each day of year (0 based)
+    private static final byte[] DOY_MONTH = buildDoyMonth(MONTH_START);
+    private static final byte[] DOY_MONTH_LEAP = buildDoyMonth(MONTH_START_LEAP);
+
+    private DssatDateCodec() {
+    }
+
+    private static byte[] buildDoyMonth(int[] monthStart) {
+        byte[] ret = new byte[monthStart[12]];
+        for (int month = 0; month < 12; month++) {
+            for (int i = monthStart[month]; i < monthStart[month + 1]; i++) {
+                ret[i] = (byte) month;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Check if the given year is a leap year
+     *
+     * @param year the year
+     * @return true for leap year
+     */
+    static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * Get the number of days since 1970-01-01 for the given date. The month
+     * should be in 1 ~ 12, the day could be any number and will be rolled
+     * into the other months.
+     *
+     * @param year the year
+     * @param month the month (1 ~ 12)
+     * @param day the day of month
+     * @return the epoch day
+     */
+    static int toEpochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     * Get the number of days since 1970-01-01 for the given day of year, the
+     * day of year could be any number and will be rolled into the other years.
+     *
+     * @param year the year
+     * @param doy the day of year
+     * @return the epoch day
+     */
+    static int toEpochDayFromDoy(int year, int doy) {
+        return toEpochDay(year, 1, 1) + doy - 1;
+    }
+
+    /**
+     * Get the year for the given epoch day
+     *
+     * @param epochDay the epoch day
+     * @return the year
+     */
+    static int yearOf(int epochDay) {
+        int z = epochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        return yoe + era * 400 + (mp >= 10 ? 1 : 0);
+    }
+
+    /**
+     * Get the year, month and day for the given epoch day
+     *
+     * @param epochDay the epoch day
+     * @return the array of year, month (1 ~ 12) and day
+     */
+    static int[] fromEpochDay(int epochDay) {
+        int year = yearOf(epochDay);
+        int doy = epochDay - toEpochDay(year, 1, 1);
+        boolean leap = isLeapYear(year);
+        int month = (leap ? DOY_MONTH_LEAP : DOY_MONTH)[doy];
+        int day = doy - (leap ? MONTH_START_LEAP : MONTH_START)[month] + 1;
+        return new int[]{year, month + 1, day};
+    }
+
+    /**
+     * Translate date string with format of "yyddd" to epoch day, the year
+     * less or equal than 15 will be treated as 20xx, otherwise as 19xx
+     *
+     * @param str date string with format of "yyddd"
+     * @param days the number of days need to be added on
+     * @return the epoch day, NO_DATE if it is not a valid date
+     */
+    static int parseYyddd(String str, int days) {
+        if (str == null || str.length() > 5 || str.length() < 4) {
+            return NO_DATE;
+        }
+        int num = parseInt(str, 0, str.length());
+        if (num == NO_NUM) {
+            return NO_DATE;
+        }
+        int year;
+        int doy;
+        if (num >= 0) {
+            year = num / 1000;
+            doy = num % 1000;
+        } else {
+            // Same as the result of splitting "-dddd"
+            year = num / 1000;
+            doy = -(num % 1000);
+        }
+        year += year <= CROSS_YEAR ? 2000 : 1900;
+        return toEpochDayFromDoy(year, doy) + days;
+    }
+
+    /**
+     * Translate date string with format of "yyyymmdd" to epoch day, the "/"
+     * in the string will be ignored
+     *
+     * @param str date string with format of "yyyymmdd"
+     * @param days the number of days need to be added on
+     * @return the epoch day, NO_DATE if it is not a valid date
+     */
+    static int parseYyyymmdd(String str, int days) {
+        if (str == null) {
+            return NO_DATE;
+        }
+        if (str.indexOf('/') >= 0) {
+            str = removeSlash(str);
+        }
+        int length = str.length();
+        if (length < 7) {
+            return NO_DATE;
+        }
+        int year = parseInt(str, 0, 4);
+        int month = parseInt(str, 4, 6);
+        int day = parseInt(str, 6, length);
+        if (year == NO_NUM || month == NO_NUM || day == NO_NUM) {
+            return NO_DATE;
+        }
+        // Roll the overflowed month into the year
+        month -= 1;
+        year += month >= 0 ? month / 12 : (month - 11) / 12;
+        month -= (month >= 0 ? month / 12 : (month - 11) / 12) * 12;
+        return toEpochDay(year, month + 1, day) + days;
+    }
+
+    /**
+     * Translate date string with format of "yyyymmdd" to epoch day, only the
+     * valid date with exact 8 digits is accepted
+     *
+     * @param str date string with format of "yyyymmdd"
+     * @return the epoch day, NO_DATE if it is not a valid date
+     */
+    static int parseStrictYyyymmdd(String str) {
+        if (str == null || str.length() != 8) {
+            return NO_DATE;
+        }
+        int year = parseDigits(str, 0, 4);
+        int month = parseDigits(str, 4, 6);
+        int day = parseDigits(str, 6, 8);
+        if (year == NO_NUM || month < 1 || month > 12 || day < 1) {
+            return NO_DATE;
+        }
+        int[] monthStart = isLeapYear(year) ? MONTH_START_LEAP : MONTH_START;
+        if (day > monthStart[month] - monthStart[month - 1]) {
+            return NO_DATE;
+        }
+        return toEpochDay(year, month, day);
+    }
+
+    /**
+     * Translate epoch day to date string with format of "yyyymmdd"
+     *
+     * @param epochDay the epoch day
+     * @return date string
+     */
+    static String formatYyyymmdd(int epochDay) {
+        int year = yearOf(epochDay);
+        int doy = epochDay - toEpochDay(year, 1, 1);
+        boolean leap = isLeapYear(year);
+        int month = (leap ? DOY_MONTH_LEAP : DOY_MONTH)[doy];
+        int day = doy - (leap ? MONTH_START_LEAP : MONTH_START)[month] + 1;
+        month++;
+        if (year < 0 || year > 9999) {
+            return String.format("%1$04d%2$02d%3$02d", year, month, day);
+        }
+        char[] buf = new char[8];
+        for (int i = 3; i >= 0; i--) {
+            buf[i] = (char) ('0' + year % 10);
+            year /= 10;
+        }
+        buf[4] = (char) ('0' + month / 10);
+        buf[5] = (char) ('0' + month % 10);
+        buf[6] = (char) ('0' + day / 10);
+        buf[7] = (char) ('0' + day % 10);
+        return new String(buf);
+    }
+
+    /**
+     * Translate epoch day to date string with format of "yyddd"
+     *
+     * @param epochDay the epoch day
+     * @return date string
+     */
+    static String formatYyddd(int epochDay) {
+        int year = yearOf(epochDay);
+        int doy = epochDay - toEpochDay(year, 1, 1) + 1;
+        int yy = year % 100;
+        if (yy < 0) {
+            return String.format("%1$02d%2$03d", yy, doy);
+        }
+        char[] buf = new char[5];
+        buf[0] = (char) ('0' + yy / 10);
+        buf[1] = (char) ('0' + yy % 10);
+        buf[2] = (char) ('0' + doy / 100);
+        buf[3] = (char) ('0' + doy / 10 % 10);
+        buf[4] = (char) ('0' + doy % 10);
+        return new String(buf);
+    }
+
+    /**
+     * Translate date string from "yyddd" to "yyyymmdd" plus days you want
+     *
+     * @param str date string with format of "yyddd"
+     * @param days the number of days need to be added on
+     * @return date string with format of "yyyymmdd", null if it is not a
+     * valid date
+     */
+    public static String yydddToYyyymmdd(String str, int days) {
+        int epochDay = parseYyddd(str, days);
+        return epochDay == NO_DATE ? null : formatYyyymmdd(epochDay);
+    }
+
+    /**
+     * Translate date string from "yyyymmdd" to "yyddd" plus days you want
+     *
+     * @param str date string with format of "yyyymmdd"
+     * @param days the number of days need to be added on
+     * @return date string with format of "yyddd", null if it is not a valid
+     * date
+     */
+    public static String yyyymmddToYyddd(String str, int days) {
+        int epochDay = parseYyyymmdd(str, days);
+        return epochDay == NO_DATE ? null : formatYyddd(epochDay);
+    }
+
+    /**
+     * Get the date which is the given days after the "yyyymmdd" date, used for
+     * the date recorded as days after planting (DAP)
+     *
+     * @param str date string with format of "yyyymmdd"
+     * @param offset the number of days after the date
+     * @return date string with format of "yyyymmdd", null if the date or the
+     * offset is invalid
+     */
+    public static String offsetDate(String str, String offset) {
+        if (offset == null) {
+            return null;
+        }
+        int days = parseInt(offset, 0, offset.length());
+        int epochDay = parseStrictYyyymmdd(str);
+        if (days == NO_NUM || epochDay == NO_DATE) {
+            return null;
+        }
+        return formatYyyymmdd(epochDay + days);
+    }
+
+    /**
+     * Parse the number of days, the decimal part will be dropped
+     *
+     * @param str the number string
+     * @return the number of days
+     * @throws NumberFormatException if it is not a number
+     */
+    public static int parseDays(String str) {
+        if (str == null) {
+            throw new NumberFormatException("null");
+        }
+        int ret = parseInt(str, 0, str.length());
+        if (ret == NO_NUM) {
+            ret = Double.valueOf(str).intValue();
+        }
+        return ret;
+    }
+
+    /**
+     * Parse the integer in the given range of string in the same way as
+     * Integer.parseInt, but only up to 9 digits are accepted
+     *
+     * @return the integer, NO_NUM if it is not a valid integer
+     */
+    private static int parseInt(String str, int from, int to) {
+        if (from >= to) {
+            return NO_NUM;
+        }
+        char c = str.charAt(from);
+        boolean negative = c == '-';
+        if (negative || c == '+') {
+            from++;
+        }
+        int ret = parseDigits(str, from, to);
+        return negative && ret != NO_NUM ? -ret : ret;
+    }
+
+    /**
+     * Parse the digits in the given range of string
+     *
+     * @return the integer, NO_NUM if there is any non-digit character
+     */
+    private static int parseDigits(String str, int from, int to) {
+        if (from >= to || to - from > 9) {
+            return NO_NUM;
+        }
+        int ret = 0;
+        for (int i = from; i < to; i++) {
+            char c = str.charAt(i);
+            if (c < '0' || c > '9') {
+                return NO_NUM;
+            }
+            ret = ret * 10 + (c - '0');
+        }
+        return ret;
+    }
+
+    private static String removeSlash(String str) {
+        StringBuilder sb = new StringBuilder(str.length());
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c != '/') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
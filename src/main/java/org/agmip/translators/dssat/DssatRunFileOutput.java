@@ -2,7 +2,6 @@ package org.agmip.translators.dssat;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -66,7 +65,7 @@ public class DssatRunFileOutput extends DssatCommonOutput implements DssatBtachF
             // Initial BufferedWriter
             arg0 = revisePath(arg0);
             outputFile = new File(arg0 + "Run" + dssatVerStr + ".bat");
-            bwR = new BufferedWriter(new FileWriter(outputFile));
+            bwR = openWriter(outputFile, false);
 
             // Output Run File
             bwR.write("C:\\dssat" + dssatVerStr + "\\dscsm0" + dssatVerStr + " b dssbatch.v" + dssatVerStr + "\r\n");
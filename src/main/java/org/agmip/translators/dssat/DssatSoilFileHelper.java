@@ -1,8 +1,9 @@
 package org.agmip.translators.dssat;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import static org.agmip.util.MapUtil.*;
 
 /**
@@ -11,8 +12,8 @@ import static org.agmip.util.MapUtil.*;
  */
 public class DssatSoilFileHelper {
 
-    private final HashSet<String> names = new HashSet();
-    private final HashMap<String, String> hashToName = new HashMap();
+    private final Set<String> names = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ConcurrentHashMap<String, String> hashToName = new ConcurrentHashMap<String, String>();
 
     /**
      * Generate the soil file name for auto-generating (extend name not
@@ -25,8 +26,9 @@ public class DssatSoilFileHelper {
 
         String hash = getObjectOr(soilData, "soil_id", "");
 
-        if (hashToName.containsKey(hash)) {
-            return hashToName.get(hash);
+        String ret = hashToName.get(hash);
+        if (ret != null) {
+            return ret;
         } else {
             String soil_id;
             if (hash.length() > 10) {
@@ -39,8 +41,9 @@ public class DssatSoilFileHelper {
                     soil_id += "_";
                 }
             }
+            // Claim the name, try the next one if it has been used
             int count;
-            while (names.contains(soil_id)) {
+            while (!names.add(soil_id)) {
                 try {
                     count = Integer.parseInt(soil_id.substring(6, soil_id.length()));
                     count++;
@@ -49,11 +52,15 @@ public class DssatSoilFileHelper {
                 }
                 soil_id = soil_id.substring(0, 6) + String.format("%04d", count);
             }
-            names.add(soil_id);
             if (hash.equals("")) {
                 hash = soil_id;
             }
-            hashToName.put(hash, soil_id);
+            ret = hashToName.putIfAbsent(hash, soil_id);
+            if (ret != null) {
+                // Another thread has created the name for the same soil
+                names.remove(soil_id);
+                return ret;
+            }
             return soil_id;
         }
     }
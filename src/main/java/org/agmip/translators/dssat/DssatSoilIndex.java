@@ -0,0 +1,416 @@
+package org.agmip.translators.dssat;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The index of the soil profiles in a soil file. Each profile block starts
+ * from its "*SOIL_ID" line and ends before the next title line, and is
+ * recorded with its offset and length, together with the "*SOILS" line which
+ * the profile belongs to. The index of a soil file on disk is counted in bytes
+ * and the recently used ones are kept in memory; it could also be saved as a
+ * sidecar file next to the soil file (like "WI.SOL.idx"), so a large soil
+ * library only needs to be scanned once. The profile is read by mapping its
+ * block into memory. The index of the content already in memory (like the
+ * entry of zip package) is counted in chars.
+ *
+ * @author Meng Zhang
+ * @version 1.0
+ */
+public class DssatSoilIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DssatSoilIndex.class);
+    public static final String SIDECAR_EXT = ".idx";
+    private static final String SIDECAR_TITLE = "*DSSAT SOIL INDEX: ";
+    private static final int MAX_CACHED_FILES = 16;
+    private static final Map<String, DssatSoilIndex> FILE_INDEXES = Collections.synchronizedMap(
+            new LinkedHashMap<String, DssatSoilIndex>(MAX_CACHED_FILES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, DssatSoilIndex> eldest) {
+                    return size() > MAX_CACHED_FILES;
+                }
+            });
+    private final LinkedHashMap<String, Block> blocks = new LinkedHashMap<String, Block>();
+    private long size;
+    private long lastModified;
+
+    private DssatSoilIndex() {
+    }
+
+    /**
+     * Get the index of the soil file, from the memory, the valid sidecar file
+     * or by scanning the soil file
+     *
+     * @param sol the soil file
+     * @return the index of the soil file
+     * @throws IOException
+     */
+    public static DssatSoilIndex load(File sol) throws IOException {
+        String key = sol.getCanonicalPath();
+        DssatSoilIndex ret = FILE_INDEXES.get(key);
+        if (ret != null && ret.size == sol.length() && ret.lastModified == sol.lastModified()) {
+            return ret;
+        }
+        ret = read(new File(sol.getPath() + SIDECAR_EXT), sol.length());
+        if (ret == null) {
+            ret = build(sol);
+        }
+        ret.lastModified = sol.lastModified();
+        FILE_INDEXES.put(key, ret);
+        return ret;
+    }
+
+    /**
+     * Build the index by scanning the soil file
+     *
+     * @param sol the soil file
+     * @return the index of the soil file
+     * @throws IOException
+     */
+    public static DssatSoilIndex build(File sol) throws IOException {
+        Builder builder = new Builder();
+        InputStream in = new FileInputStream(sol);
+        try {
+            byte[] buf = new byte[64 * 1024];
+            int len;
+            while ((len = in.read(buf)) != -1) {
+                builder.next(buf, 0, len);
+            }
+        } finally {
+            in.close();
+        }
+        DssatSoilIndex ret = builder.finish();
+        ret.lastModified = sol.lastModified();
+        FILE_INDEXES.put(sol.getCanonicalPath(), ret);
+        return ret;
+    }
+
+    /**
+     * Build the index by scanning the content of the soil file, the offsets
+     * are counted in chars
+     *
+     * @param parts the content of the soil file, in one or several parts
+     * @return the index of the content
+     */
+    public static DssatSoilIndex build(CharSequence... parts) {
+        Builder builder = new Builder();
+        for (CharSequence part : parts) {
+            for (int i = 0; i < part.length(); i++) {
+                builder.next(part.charAt(i));
+            }
+        }
+        return builder.finish();
+    }
+
+    /**
+     * Read the index from the sidecar file
+     *
+     * @param sidecar the sidecar file
+     * @param size the size of the soil file, which should match with the one
+     * recorded in the sidecar
+     * @return the index, or null if the sidecar is not available or out of
+     * date
+     */
+    static DssatSoilIndex read(File sidecar, long size) {
+        if (!sidecar.isFile()) {
+            return null;
+        }
+        DssatSoilIndex ret = new DssatSoilIndex();
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(sidecar));
+            try {
+                String line = br.readLine();
+                if (line == null || !line.startsWith(SIDECAR_TITLE)) {
+                    LOG.warn("The soil index {} is not recognized and will be rebuilt", sidecar.getName());
+                    return null;
+                } else if (Long.parseLong(line.substring(SIDECAR_TITLE.length()).trim()) != size) {
+                    LOG.warn("The soil index {} is out of date and will be rebuilt", sidecar.getName());
+                    return null;
+                }
+                ret.size = size;
+                while ((line = br.readLine()) != null) {
+                    if (line.startsWith("@") || line.trim().equals("")) {
+                        continue;
+                    }
+                    String[] items = line.trim().split("\\s+");
+                    ret.add(items[0], Long.parseLong(items[1]), Long.parseLong(items[2]), Long.parseLong(items[3]), Long.parseLong(items[4]));
+                }
+            } finally {
+                br.close();
+            }
+        } catch (Exception e) {
+            LOG.warn("The soil index {} is not readable and will be rebuilt: {}", sidecar.getName(), e.getMessage());
+            return null;
+        }
+        return ret;
+    }
+
+    /**
+     * Write the index as the content of sidecar file
+     *
+     * @param w the writer of sidecar file
+     * @throws IOException
+     */
+    public void write(Writer w) throws IOException {
+        w.write(SIDECAR_TITLE + size + "\r\n");
+        w.write("@SOIL_ID        OFFSET     LENGTH   H_OFFSET   H_LENGTH\r\n");
+        for (Map.Entry<String, Block> entry : blocks.entrySet()) {
+            Block block = entry.getValue();
+            w.write(String.format("%1$-10s %2$10d %3$10d %4$10d %5$10d\r\n",
+                    entry.getKey(), block.offset, block.length, block.headerOffset, block.headerLength));
+        }
+    }
+
+    /**
+     * Get the number of the indexed soil profiles
+     *
+     * @return the number of soil profiles
+     */
+    public int size() {
+        return blocks.size();
+    }
+
+    /**
+     * Check if the soil profile is in the index
+     *
+     * @param soilId the soil ID
+     * @return true if the soil profile is indexed
+     */
+    public boolean contains(String soilId) {
+        return blocks.containsKey(soilId);
+    }
+
+    /**
+     * Get the soil IDs in the index by the order in the soil file
+     *
+     * @param soilIds the soil IDs to look for
+     * @return the indexed soil IDs within the given ones
+     */
+    public ArrayList<String> getSoilIds(Collection<String> soilIds) {
+        ArrayList<String> ret = new ArrayList<String>();
+        for (String soilId : soilIds) {
+            if (blocks.containsKey(soilId)) {
+                ret.add(soilId);
+            }
+        }
+        Collections.sort(ret, new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                long offset1 = blocks.get(o1).offset;
+                long offset2 = blocks.get(o2).offset;
+                return offset1 < offset2 ? -1 : (offset1 == offset2 ? 0 : 1);
+            }
+        });
+        return ret;
+    }
+
+    /**
+     * Read the soil profile from the soil file by mapping its block into
+     * memory
+     *
+     * @param sol the soil file
+     * @param soilId the soil ID
+     * @return the content of the "*SOILS" line plus the profile, or null if
+     * the index does not match with the file
+     * @throws IOException
+     */
+    public char[] read(File sol, String soilId) throws IOException {
+        Block block = blocks.get(soilId);
+        if (block == null || block.offset + block.length > sol.length()) {
+            return null;
+        }
+        Charset charset = Charset.defaultCharset();
+        RandomAccessFile raf = new RandomAccessFile(sol, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            CharBuffer header = CharBuffer.allocate(0);
+            if (block.headerLength > 0) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, block.headerOffset, block.headerLength);
+                header = charset.decode(mapped);
+            }
+            CharBuffer profile = charset.decode(channel.map(FileChannel.MapMode.READ_ONLY, block.offset, block.length));
+            return concat(header, profile, soilId);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Read the soil profile from the content of soil file
+     *
+     * @param buf the content of soil file
+     * @param soilId the soil ID
+     * @return the content of the "*SOILS" line plus the profile, or null if
+     * the index does not match with the content
+     */
+    public char[] read(char[] buf, String soilId) {
+        Block block = blocks.get(soilId);
+        if (block == null || block.offset + block.length > buf.length) {
+            return null;
+        }
+        return concat(CharBuffer.wrap(buf, (int) block.headerOffset, (int) block.headerLength),
+                CharBuffer.wrap(buf, (int) block.offset, (int) block.length),
+                soilId);
+    }
+
+    /**
+     * Combine the "*SOILS" line and the profile, and check if the profile
+     * starts with its ID line
+     */
+    private static char[] concat(CharBuffer header, CharBuffer profile, String soilId) {
+        if (profile.length() <= soilId.length() || profile.charAt(0) != '*'
+                || !profile.subSequence(1, soilId.length() + 1).toString().equals(soilId)) {
+            return null;
+        }
+        char[] ret = new char[header.remaining() + profile.remaining()];
+        header.get(ret, 0, header.remaining());
+        profile.get(ret, ret.length - profile.remaining(), profile.remaining());
+        return ret;
+    }
+
+    private void add(String soilId, long offset, long length, long headerOffset, long headerLength) {
+        if (!blocks.containsKey(soilId)) {
+            blocks.put(soilId, new Block(offset, length, headerOffset, headerLength));
+        }
+    }
+
+    /**
+     * The location of one soil profile
+     */
+    private static class Block {
+
+        private final long offset;
+        private final long length;
+        private final long headerOffset;
+        private final long headerLength;
+
+        Block(long offset, long length, long headerOffset, long headerLength) {
+            this.offset = offset;
+            this.length = length;
+            this.headerOffset = headerOffset;
+            this.headerLength = headerLength;
+        }
+    }
+
+    /**
+     * The scanner of soil file content, which looks for the title lines
+     */
+    static class Builder {
+
+        private final DssatSoilIndex index = new DssatSoilIndex();
+        private long pos;
+        private boolean isLineStart = true;
+        private StringBuilder title;
+        private long titleStart;
+        private long headerOffset;
+        private long headerLength;
+        private String soilId;
+        private long blockStart;
+
+        void next(byte[] buf, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                next((char) (buf[i] & 0xFF));
+            }
+        }
+
+        void next(char c) {
+            if (isLineStart && c == '*') {
+                title = new StringBuilder();
+                titleStart = pos;
+            }
+            if (title != null && title.length() < 12 && c != '\r' && c != '\n') {
+                title.append(c);
+            }
+            pos++;
+            isLineStart = c == '\n';
+            if (isLineStart && title != null) {
+                endTitle();
+            }
+        }
+
+        private void endTitle() {
+            endBlock(titleStart);
+            String line = title.toString();
+            // Same with DssatSoilInput, the title line with "SOIL" is the head of soil file
+            if (line.toLowerCase().indexOf("soil") == 1) {
+                headerOffset = titleStart;
+                headerLength = pos - titleStart;
+            } else {
+                soilId = line.substring(1, Math.min(11, line.length())).trim();
+                blockStart = titleStart;
+            }
+            title = null;
+        }
+
+        private void endBlock(long end) {
+            if (soilId != null && !soilId.equals("")) {
+                index.add(soilId, blockStart, end - blockStart, headerOffset, headerLength);
+            }
+            soilId = null;
+        }
+
+        DssatSoilIndex finish() {
+            if (title != null) {
+                endTitle();
+            }
+            endBlock(pos);
+            index.size = pos;
+            return index;
+        }
+    }
+
+    /**
+     * The output stream of soil file which builds the index from the bytes
+     * written through it, so the written file does not need to be scanned
+     * again
+     */
+    static class IndexingStream extends FilterOutputStream {
+
+        private final Builder builder = new Builder();
+
+        IndexingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            builder.next((char) (b & 0xFF));
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            builder.next(b, off, len);
+        }
+
+        /**
+         * Get the index of the bytes written so far
+         *
+         * @return the index of the soil file
+         */
+        DssatSoilIndex getIndex() {
+            return builder.finish();
+        }
+    }
+}
@@ -2,11 +2,15 @@ package org.agmip.translators.dssat;
 
 import java.io.BufferedReader;
 import java.io.CharArrayReader;
+import java.io.File;
 import java.io.IOException;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.Set;
 import org.agmip.util.MapUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * DSSAT Soil Data I/O API Class
@@ -16,8 +20,87 @@ import org.agmip.util.MapUtil;
  */
 public class DssatSoilInput extends DssatCommonInput {
 
+    private static final Logger LOG = LoggerFactory.getLogger(DssatSoilInput.class);
     public String layerKey = "soilLayer";  // P.S. the key name might change
 
+    // The layouts of the data lines in each section
+    private static final FixedWidthLayout SITE_LAYOUT = new FixedWidthLayout()
+            .add("soil_id", 10)
+            .add("sl_source", 13)  // P.S. sl_system is always "SCS" for DSSAT
+            .add("sltx", 6)
+            .add("sldp", 6)
+            .add("soil_name", 51);
+    private static final FixedWidthLayout SITE_LOCATION_LAYOUT = new FixedWidthLayout()
+            .add("sl_loc_3", 12)
+            .add("sl_loc_1", 12)  // P.S. old key name ("scount")
+            .add("soil_lat", 10) // P.S. Definition changed 9 -> 10 (06/24)
+            .add("soil_long", 8) // P.S. Definition changed 9 -> 8  (06/24)
+            .add("classification", 51);    // P.S. "fd_name" for query using, not this time
+    private static final FixedWidthLayout SITE_PARAMETER_LAYOUT = new FixedWidthLayout()
+            .add("sscol", 6)
+            .add("salb", 6)
+            .add("slu1", 6)
+            .add("sldr", 6)
+            .add("slro", 6)
+            .add("slnf", 6)
+            .add("slpf", 6)
+            .add("smhb", 6)
+            .add("smpx", 6)
+            .add("smke", 6);
+    private static final FixedWidthLayout LAYER_LAYOUT = new FixedWidthLayout()
+            .add("sllb", 6)
+            .add("slmh", 6)
+            .add("slll", 6)
+            .add("sldul", 6)
+            .add("slsat", 6)
+            .add("slrgf", 6)
+            .add("sksat", 6)
+            .add("slbdm", 6)
+            .add("sloc", 6)
+            .add("slcly", 6)
+            .add("slsil", 6)
+            .add("slcf", 6)
+            .add("slni", 6)
+            .add("slphw", 6)
+            .add("slphb", 6)
+            .add("slcec", 6)
+            .add("sladc", 6);
+    private static final FixedWidthLayout LAYER_PART_TWO_LAYOUT = new FixedWidthLayout()
+            .add("sllb", 6)
+            .add("slpx", 6)
+            .add("slpt", 6)
+            .add("slpo", 6)
+            .add("slca", 6)
+            .add("slal", 6)
+            .add("slfe", 6)
+            .add("slmn", 6)
+            .add("slbs", 6)
+            .add("slpa", 6)
+            .add("slpb", 6)
+            .add("slke", 6)
+            .add("slmg", 6)
+            .add("slna", 6)
+            .add("slsu", 6)
+            .add("slec", 6);
+    private static final FixedWidthLayout LAYER_PART_TWO_OLD_LAYOUT = new FixedWidthLayout()
+            .add("sllb", 6)
+            .add("slpx", 6)
+            .add("slpt", 6)
+            .add("slpo", 6)
+            .add("caco3", 6)    // P.S. For old version of soil file
+            .add("slal", 6)
+            .add("slfe", 6)
+            .add("slmn", 6)
+            .add("slbs", 6)
+            .add("slpa", 6)
+            .add("slpb", 6)
+            .add("slke", 6)
+            .add("slmg", 6)
+            .add("slna", 6)
+            .add("slsu", 6)
+            .add("slec", 6)
+            .add("slca", 6);
+
     /**
      * Constructor with no parameters Set jsonKey as "soil"
      *
@@ -54,16 +137,25 @@ public class DssatSoilInput extends DssatCommonInput {
      * @throws java.io.IOException
      */
     protected ArrayList<HashMap> readSoilSites(HashMap brMap, HashMap ret) throws IOException {
+        return readSoilSites(brMap, ret, null);
+    }
+
+    /**
+     * DSSAT Soil Data input method for Controller using, only the referred
+     * soil profiles are read and the rest are skipped by the header line
+     *
+     * @param brMap The holder for BufferReader objects for all files
+     * @param ret
+     * @param soilIds the referred soil IDs, null for reading all
+     * @return result data holder object
+     * @throws java.io.IOException
+     */
+    protected ArrayList<HashMap> readSoilSites(HashMap brMap, HashMap ret, Set<String> soilIds) throws IOException {
 
         String slNotes = null;
         ArrayList<HashMap> sites = new ArrayList<HashMap>();
-        HashMap site = new HashMap();
-        ArrayList layers = new ArrayList();
-        String line;
-        BufferedReader brS;
         Object buf;
         HashMap mapS;
-        LinkedHashMap formats = new LinkedHashMap();
 
         mapS = (HashMap) brMap.get("S");
 
@@ -77,157 +169,175 @@ public class DssatSoilInput extends DssatCommonInput {
         for (Object key : mapS.keySet()) {
 
             buf = mapS.get(key);
-            if (buf instanceof char[]) {
-                brS = new BufferedReader(new CharArrayReader((char[]) buf));
-            } else {
-                brS = (BufferedReader) buf;
+
+            // Read the referred soil profiles by the index of soil file
+            if (soilIds != null && readIndexedSites(buf, sites, soilIds)) {
+                continue;
             }
 
-            while ((line = brS.readLine()) != null) {
+            BufferedReader brS = getBufferReader(buf);
+            slNotes = readSites(brS, sites, soilIds, slNotes);
+            brS.close();
+        }
 
-                // Get content type of line
-                judgeContentType(line);
+//        compressData(sites);
+//        ret.put(jsonKey, sites);
 
-                // Read SOILS Info
-                if (flg[0].equals("soil") && flg[2].equals("data")) {
+        return sites;
+    }
 
-                    slNotes = line.replaceFirst("\\*[Ss][Oo][Ii][Ll][Ss]?\\s*:?", "").trim();
+    /**
+     * Read the referred soil profiles by locating them with the index of soil
+     * file, the rest of the file is not parsed
+     *
+     * @param buf the holder of the soil file
+     * @param sites the holder for the soil sites
+     * @param soilIds the referred soil IDs
+     * @return false if the soil file is not able to be indexed
+     * @throws IOException
+     */
+    private boolean readIndexedSites(Object buf, ArrayList<HashMap> sites, Set<String> soilIds) throws IOException {
+
+        ArrayList<char[]> blocks = new ArrayList<char[]>();
+        if (buf instanceof File) {
+            File sol = (File) buf;
+            DssatSoilIndex index = DssatSoilIndex.load(sol);
+            for (String soilId : index.getSoilIds(soilIds)) {
+                char[] block = index.read(sol, soilId);
+                if (block == null) {
+                    // The index is out of date, scan the file again
+                    index = DssatSoilIndex.build(sol);
+                    block = index.read(sol, soilId);
+                }
+                if (block == null) {
+                    LOG.warn("The soil profile {} is not able to be located in {}", soilId, sol.getName());
+                    return false;
+                }
+                blocks.add(block);
+            }
+        } else if (buf instanceof char[] || buf instanceof ZipEntryBuf) {
+            char[] chars = getBuf(buf);
+            DssatSoilIndex index = DssatSoilIndex.build(CharBuffer.wrap(chars));
+            for (String soilId : index.getSoilIds(soilIds)) {
+                blocks.add(index.read(chars, soilId));
+            }
+        } else {
+            return false;
+        }
 
-                } // Read Site Info
-                else if (flg[0].equals("site")) {
+        for (char[] block : blocks) {
+            readSites(new BufferedReader(new CharArrayReader(block)), sites, soilIds, null);
+        }
+        return true;
+    }
 
-                    // header info
-                    if (flg[1].equals("") && flg[2].equals("data")) {
+    /**
+     * Read the soil sites from the content of soil file
+     *
+     * @param brS the reader of the soil file content
+     * @param sites the holder for the soil sites
+     * @param soilIds the referred soil IDs, null for reading all
+     * @param slNotes the notes from the last "*SOILS" line
+     * @return the notes from the last "*SOILS" line
+     * @throws IOException
+     */
+    private String readSites(BufferedReader brS, ArrayList<HashMap> sites, Set<String> soilIds, String slNotes) throws IOException {
+
+        HashMap site = new HashMap();
+        ArrayList layers = new ArrayList();
+        RecordMerger layerMerger = new RecordMerger(layers, "sllb");
+        String line;
+
+        boolean isSkipped = false;
+        while ((line = brS.readLine()) != null) {
+
+            // Skip the lines of the soil profile which is not referred
+            if (isSkipped && !line.startsWith("*")) {
+                continue;
+            }
+            isSkipped = false;
+
+            // Get content type of line
+            judgeContentType(line);
 
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("soil_id", 10);
-                        formats.put("sl_source", 13);  // P.S. sl_system is always "SCS" for DSSAT
-                        formats.put("sltx", 6);
-                        formats.put("sldp", 6);
-                        formats.put("soil_name", 51);
-                        // Read line and save into return holder
+            // Read SOILS Info
+            if (flg[0].equals("soil") && flg[2].equals("data")) {
+
+                slNotes = line.replaceFirst("\\*[Ss][Oo][Ii][Ll][Ss]?\\s*:?", "").trim();
+
+            } // Read Site Info
+            else if (flg[0].equals("site")) {
+
+                // header info
+                if (flg[1].equals("") && flg[2].equals("data")) {
+
+                    // Read line and save into return holder
 //                        sites.add(readLine(line.substring(1), formats));
-                        site = readLine(line.substring(1), formats);
-                        if (slNotes != null && !slNotes.equals("")) {
-                            site.put("sl_notes", slNotes);
-                        }
-                        String sltx = MapUtil.getValueOr(site, "sltx", "");
-                        if (!sltx.equals("")) {
-                            site.put("sltx", transSltx(sltx));
-                        }
-                        sites.add(site);
-                        layers = new ArrayList();
+                    site = readLine(line.substring(1), SITE_LAYOUT);
+                    if (soilIds != null && !soilIds.contains(site.get("soil_id"))) {
+                        isSkipped = true;
+                        site = new HashMap();
+                        continue;
+                    }
+                    if (slNotes != null && !slNotes.equals("")) {
+                        site.put("sl_notes", slNotes);
+                    }
+                    String sltx = MapUtil.getValueOr(site, "sltx", "");
+                    if (!sltx.equals("")) {
+                        site.put("sltx", transSltx(sltx));
+                    }
+                    sites.add(site);
+                    layers = new ArrayList();
+                    layerMerger = new RecordMerger(layers, "sllb");
 //                        ((HashMap) sites.get(sites.size() - 1)).put(layerKey, new ArrayList());
 
-                    } // Site detail info
-                    else if (flg[1].startsWith("site ") && flg[2].equals("data")) {
-
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("sl_loc_3", 12);
-                        formats.put("sl_loc_1", 12);  // P.S. old key name ("scount")
-                        formats.put("soil_lat", 10); // P.S. Definition changed 9 -> 10 (06/24)
-                        formats.put("soil_long", 8); // P.S. Definition changed 9 -> 8  (06/24)
-                        formats.put("classification", 51);    // P.S. "fd_name" for query using, not this time
-                        // Read line and save into return holder
+                } // Site detail info
+                else if (flg[1].startsWith("site ") && flg[2].equals("data")) {
+
+                    // Read line and save into return holder
 //                        ((HashMap) sites.get(sites.size() - 1)).putAll(readLine(line, formats));
-                        site.putAll(readLine(line, formats));
-
-                    } // soil info
-                    else if (flg[1].startsWith("scom ") && flg[2].equals("data")) {
-
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("sscol", 6);
-                        formats.put("salb", 6);
-                        formats.put("slu1", 6);
-                        formats.put("sldr", 6);
-                        formats.put("slro", 6);
-                        formats.put("slnf", 6);
-                        formats.put("slpf", 6);
-                        formats.put("smhb", 6);
-                        formats.put("smpx", 6);
-                        formats.put("smke", 6);
-                        // Read line and save into return holder
+                    site.putAll(readLine(line, SITE_LOCATION_LAYOUT));
+
+                } // soil info
+                else if (flg[1].startsWith("scom ") && flg[2].equals("data")) {
+
+                    // Read line and save into return holder
 //                        ((HashMap) sites.get(sites.size() - 1)).putAll(readLine(line, formats));
-                        site.putAll(readLine(line, formats));
-
-                    } // layer part one info
-                    else if (flg[1].startsWith("slb  slmh") && flg[2].equals("data")) {
-
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("sllb", 6);
-                        formats.put("slmh", 6);
-                        formats.put("slll", 6);
-                        formats.put("sldul", 6);
-                        formats.put("slsat", 6);
-                        formats.put("slrgf", 6);
-                        formats.put("sksat", 6);
-                        formats.put("slbdm", 6);
-                        formats.put("sloc", 6);
-                        formats.put("slcly", 6);
-                        formats.put("slsil", 6);
-                        formats.put("slcf", 6);
-                        formats.put("slni", 6);
-                        formats.put("slphw", 6);
-                        formats.put("slphb", 6);
-                        formats.put("slcec", 6);
-                        formats.put("sladc", 6);
-                        // Read line and save into return holder
+                    site.putAll(readLine(line, SITE_PARAMETER_LAYOUT));
+
+                } // layer part one info
+                else if (flg[1].startsWith("slb  slmh") && flg[2].equals("data")) {
+
+                    // Read line and save into return holder
 //                        addToArray((ArrayList) ((HashMap) sites.get(sites.size() - 1)).get(layerKey),
 //                                readLine(line, formats),
 //                                "sllb");
-                        addToArray(layers, readLine(line, formats), "sllb");
-                        site.put(layerKey, layers);
-
-                    } // layer part two info
-                    else if (flg[1].startsWith("slb  slpx ") && flg[2].equals("data")) {
-
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("sllb", 6);
-                        formats.put("slpx", 6);
-                        formats.put("slpt", 6);
-                        formats.put("slpo", 6);
-                        if (flg[1].contains("caco3")) {
-                            formats.put("caco3", 6);    // P.S. For old version of soil file
-                        } else {
-                            formats.put("slca", 6);
-                        }
-                        formats.put("slal", 6);
-                        formats.put("slfe", 6);
-                        formats.put("slmn", 6);
-                        formats.put("slbs", 6);
-                        formats.put("slpa", 6);
-                        formats.put("slpb", 6);
-                        formats.put("slke", 6);
-                        formats.put("slmg", 6);
-                        formats.put("slna", 6);
-                        formats.put("slsu", 6);
-                        formats.put("slec", 6);
-                        if (flg[1].contains("caco3")) {
-                            formats.put("slca", 6);
-                        }
-                        // Read line and save into return holder
+                    layerMerger.merge(readLine(line, LAYER_LAYOUT));
+                    site.put(layerKey, layers);
+
+                } // layer part two info
+                else if (flg[1].startsWith("slb  slpx ") && flg[2].equals("data")) {
+
+                    // Set variables' formats
+                    FixedWidthLayout layout;
+                    if (flg[1].contains("caco3")) {
+                        layout = LAYER_PART_TWO_OLD_LAYOUT;    // P.S. For old version of soil file
+                    } else {
+                        layout = LAYER_PART_TWO_LAYOUT;
+                    }
+                    // Read line and save into return holder
 //                        addToArray((ArrayList) ((HashMap) sites.get(sites.size() - 1)).get(layerKey),
 //                                readLine(line, formats),
 //                                "sllb");
-                        addToArray(layers, readLine(line, formats), "sllb");
+                    layerMerger.merge(readLine(line, layout));
 
-                    } else {
-                    }
                 } else {
                 }
+            } else {
             }
-            brS.close();
         }
 
-//        compressData(sites);
-//        ret.put(jsonKey, sites);
-
-        return sites;
+        return slNotes;
     }
 
     /**
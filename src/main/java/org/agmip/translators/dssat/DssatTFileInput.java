@@ -1,7 +1,6 @@
 package org.agmip.translators.dssat;
 
 import java.io.BufferedReader;
-import java.io.CharArrayReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -19,6 +18,10 @@ public class DssatTFileInput extends DssatCommonInput {
     public String obvFileKey = "timeSeries";  // P.S. the key name might change
     public String obvDataKey = "data";  // P.S. the key name might change
 
+    private static final FixedWidthLayout META_LAYOUT = new FixedWidthLayout()
+            .add("null", 10)  // P.S. Since exname in top line is not reliable, read from file name
+            .addRest("local_name");
+
     /**
      * Constructor with no parameters Set jsonKey as "observed"
      *
@@ -87,8 +90,10 @@ public class DssatTFileInput extends DssatCommonInput {
         HashMap mapT;
         LinkedHashMap formats = new LinkedHashMap();
         ArrayList titles = new ArrayList();
+        FixedWidthLayout layout = new FixedWidthLayout();
         ArrayList<HashMap> obvData;
-        ArrayList obvDataSecByTrno = new ArrayList();
+        HashMap<String, RecordMerger> obvDataMergers = new HashMap<String, RecordMerger>();
+        RecordMerger obvDataSecByTrno = new RecordMerger(new ArrayList(), new String[]{"trno_t", "date"});
         HashMap obvDataByTrno;
         DssatObservedData obvDataList = DssatObservedData.INSTANCE;    // Varibale list definition
         String pdate;
@@ -108,14 +113,11 @@ public class DssatTFileInput extends DssatCommonInput {
 //            String exname = fileName.replaceAll("\\.", "").replaceAll("T$", "");
             String exname = fileName.replaceAll("\\.\\w\\wT$", "");
             String crid = fileName.replaceAll("\\w+\\.", "").replaceAll("T$", "");
-            if (buf instanceof char[]) {
-                brT = new BufferedReader(new CharArrayReader((char[]) buf));
-            } else {
-                brT = (BufferedReader) buf;
-            }
+            brT = getBufferReader(buf);
 
             file = new HashMap();
             obvData = new ArrayList();
+            obvDataMergers.clear();
 
             while ((line = brT.readLine()) != null) {
 
@@ -128,27 +130,18 @@ public class DssatTFileInput extends DssatCommonInput {
                     // Read meta info
                     if (flg[0].equals("meta") && flg[1].equals("")) {
 
-                        // Set variables' formats
                         line = line.replaceAll(".*:", "").trim();
-                        formats.clear();
-                        formats.put("null", 10);  // P.S. Since exname in top line is not reliable, read from file name
-                        formats.put("local_name", line.length());
                         // Read line and save into return holder
-                        file.putAll(readLine(line, formats));
+                        file.putAll(readLine(line, META_LAYOUT));
                         file.put("exname", exname);
                         file.put("crid", DssatCRIDHelper.get3BitCrid(crid));
                         flg[0] = "data";
 
                     } // Read data info 
                     else {
-                        // Set variables' formats
-                        formats.clear();
-                        for (Object title : titles) {
-                            formats.put(title, 6);
-                        }
 
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);    // P.S. if missing data in TFile, no longer hold title name since the combination handling
+                        HashMap tmp = readLine(line, layout);    // P.S. if missing data in TFile, no longer hold title name since the combination handling
                         // translate date from yyddd format to yyyymmdd format
                         tmp.put("date", translateDateStr((String) tmp.get("date")));
                         pdate = getPdate(brMap, (String) tmp.get("trno_t"), fileName.replaceAll("T$", "X"));
@@ -161,30 +154,23 @@ public class DssatTFileInput extends DssatCommonInput {
                         // Check if the record's trno becomes the next treatment's trno
                         if (!trno.equals(tmp.get("trno_t"))) {
                             trno = getValueOr(tmp, "trno_t", "");
-                            obvDataByTrno = null;
 
                             // Try to get the reccord which matches with the given treatment number
-                            for (HashMap obvSub : obvData) {
-                                if (trno.equals(obvSub.get("trno_t"))) {
-                                    obvDataByTrno = obvSub;
-                                    obvDataSecByTrno = (ArrayList) obvDataByTrno.get(obvDataKey);
-                                    break;
-                                }
-                            }
+                            obvDataSecByTrno = obvDataMergers.get(trno);
 
                             // If not found, create a new record and add into array
-                            if (obvDataByTrno == null) {
+                            if (obvDataSecByTrno == null) {
                                 obvDataByTrno = new HashMap();
-                                obvDataSecByTrno = new ArrayList();
+                                obvDataSecByTrno = new RecordMerger(new ArrayList(), new String[]{"trno_t", "date"});
                                 obvDataByTrno.put("trno_t", trno);
-                                obvDataByTrno.put(obvDataKey, obvDataSecByTrno);
+                                obvDataByTrno.put(obvDataKey, obvDataSecByTrno.getArray());
                                 obvData.add(obvDataByTrno);
+                                obvDataMergers.put(trno, obvDataSecByTrno);
                             }
                         }
 
                         // Add data to the array
-                        String[] keys = {"trno_t", "date"};
-                        addToArray(obvDataSecByTrno, tmp, keys);
+                        obvDataSecByTrno.merge(tmp);
                     }
 
                 } // Read Observed title
@@ -204,6 +190,13 @@ public class DssatTFileInput extends DssatCommonInput {
                         }
                     }
 
+                    // Set variables' formats
+                    formats.clear();
+                    for (Object title : titles) {
+                        formats.put(title, 6);
+                    }
+                    layout = new FixedWidthLayout(formats);
+
                 } else {
                 }
             }
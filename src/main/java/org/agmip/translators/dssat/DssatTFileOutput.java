@@ -2,7 +2,6 @@ package org.agmip.translators.dssat;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
 import static org.agmip.util.MapUtil.*;
@@ -41,6 +40,9 @@ public class DssatTFileOutput extends DssatCommonOutput {
 
         try {
 
+            // Share the file names with the other writers of the directory if the writer is not in a job
+            useDirectorySession(arg0);
+
             // Set default value for missing data
             setDefVal();
 
@@ -80,7 +82,7 @@ public class DssatTFileOutput extends DssatCommonOutput {
             }
             arg0 = revisePath(arg0);
             outputFile = new File(arg0 + fileName);
-            bwT = new BufferedWriter(new FileWriter(outputFile));
+            bwT = openWriter(outputFile, false);
 
             // Output Observation File
             // Titel Section
@@ -136,22 +138,22 @@ public class DssatTFileOutput extends DssatCommonOutput {
                 sbData.append("@TRNO   DATE");
                 int limit = Math.min(titleOutputId.length, (i + 1) * 39);
                 for (int j = i * 39; j < limit; j++) {
-                    sbData.append(String.format("%1$6s", titleOutput.get(titleOutputId[j]).toString().toUpperCase()));
+                    appendLeftPad(sbData, titleOutput.get(titleOutputId[j]).toString().toUpperCase(), 6);
                 }
                 sbData.append("\r\n");
 
                 for (HashMap record : observeRecords) {
 
-                    sbData.append(String.format(" %1$5s", getValueOr(record, "trno", "1")));
-                    sbData.append(String.format(" %1$5d", Integer.parseInt(formatDateStr(getObjectOr(record, "date", defValI)))));
+                    appendLeftPad(sbData.append(' '), getValueOr(record, "trno", "1"), 5);
+                    appendLeftPad(sbData.append(' '), Integer.toString(Integer.parseInt(formatDateStr(getObjectOr(record, "date", defValI)))), 5);
                     for (int k = i * 39; k < limit; k++) {
 
                         if (obvDataList.isDapDateType(titleOutputId[k], titleOutput.get(titleOutputId[k]))) {
-                            sbData.append(String.format("%1$6s", formatDateStr(pdate, getObjectOr(record, titleOutput.get(titleOutputId[k]).toString(), defValI))));
+                            appendLeftPad(sbData, formatDateStr(pdate, getObjectOr(record, titleOutput.get(titleOutputId[k]).toString(), defValI)), 6);
                         } else if (obvDataList.isDateType(titleOutputId[k])) {
-                            sbData.append(String.format("%1$6s", formatDateStr(getObjectOr(record, titleOutput.get(titleOutputId[k]).toString(), defValI))));
+                            appendLeftPad(sbData, formatDateStr(getObjectOr(record, titleOutput.get(titleOutputId[k]).toString(), defValI)), 6);
                         } else {
-                            sbData.append(" ").append(formatNumStr(5, record, titleOutput.get(titleOutputId[k]), defValI));
+                            appendNumStr(sbData.append(' '), 0, 5, record, titleOutput.get(titleOutputId[k]), defValI);
                         }
 
                     }
@@ -45,6 +45,8 @@ public class DssatTranslateRunner implements Callable<File> {
             }
         } catch (IOException e) {
             LOG.error(e.getMessage());
+        } finally {
+            translator.releaseZipSlot();
         }
 
         File ret = translator.getOutputFile();
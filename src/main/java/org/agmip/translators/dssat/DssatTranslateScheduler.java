@@ -0,0 +1,277 @@
+package org.agmip.translators.dssat;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The scheduler of translation tasks for one translation job. All the jobs in
+ * the same process share one thread pool, which has the number of processors
+ * as its default size, and could be changed by the system property
+ * "dssat.translator.threads" or setPoolSize. The finished tasks are collected
+ * through a completion service, so waiting for them does not take CPU.
+ *
+ * @author Meng Zhang
+ * @version 1.0
+ */
+public class DssatTranslateScheduler {
+
+    public static final String POOL_SIZE_PROPERTY = "dssat.translator.threads";
+    private static final Logger LOG = LoggerFactory.getLogger(DssatTranslateScheduler.class);
+    private static ThreadPoolExecutor executor;
+    private final CompletionService<File> service;
+    private final HashMap<String, Future<File>> futures = new HashMap<String, Future<File>>();
+    private final IdentityHashMap<Future<File>, String> keys = new IdentityHashMap<Future<File>, String>();
+    private final HashMap<String, File> files = new HashMap<String, File>();
+    private long deadline;
+
+    /**
+     * Create a scheduler for one translation job without deadline
+     */
+    public DssatTranslateScheduler() {
+        this.service = new ExecutorCompletionService<File>(getExecutor());
+    }
+
+    /**
+     * Get the shared thread pool
+     *
+     * @return the thread pool
+     */
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            int size = Runtime.getRuntime().availableProcessors();
+            try {
+                size = Integer.parseInt(System.getProperty(POOL_SIZE_PROPERTY, size + ""));
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid thread number [{}], use {} instead", System.getProperty(POOL_SIZE_PROPERTY), size);
+            }
+            size = Math.max(size, 1);
+            executor = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "dssat-translator-" + count.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Change the number of threads in the shared thread pool
+     *
+     * @param size the number of threads
+     */
+    public static synchronized void setPoolSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The thread number should be positive");
+        }
+        ThreadPoolExecutor pool = getExecutor();
+        if (size > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(size);
+            pool.setCorePoolSize(size);
+        } else {
+            pool.setCorePoolSize(size);
+            pool.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * Get the number of threads in the shared thread pool
+     *
+     * @return the number of threads
+     */
+    public static synchronized int getPoolSize() {
+        return getExecutor().getMaximumPoolSize();
+    }
+
+    /**
+     * Run a task in the shared thread pool without tracking it in any job
+     *
+     * @param <T> the result type of task
+     * @param task the task
+     * @return the future of the task
+     */
+    static <T> Future<T> execute(Callable<T> task) {
+        return getExecutor().submit(task);
+    }
+
+    /**
+     * Set the deadline of the job, the tasks which are not finished on time
+     * will be canceled
+     *
+     * @param timeout the maximum time to wait from now, 0 for no deadline
+     * @param unit the time unit of timeout
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        if (timeout > 0) {
+            deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        } else {
+            deadline = 0;
+        }
+    }
+
+    /**
+     * Submit a translation task
+     *
+     * @param key the identifier of the output file
+     * @param runner the translation task
+     */
+    public void submit(String key, DssatTranslateRunner runner) {
+        Future<File> future = service.submit(runner);
+        futures.put(key, future);
+        keys.put(future, key);
+    }
+
+    /**
+     * Wait for the given tasks, the output files are collected for the
+     * finished tasks
+     *
+     * @param waitKeys the identifiers of the tasks
+     */
+    public void await(Collection<String> waitKeys) {
+        for (String key : waitKeys) {
+            Future<File> future = futures.get(key);
+            if (future == null) {
+                continue;
+            }
+            try {
+                long remaining = deadline - System.currentTimeMillis();
+                if (deadline > 0 && remaining <= 0) {
+                    break;
+                }
+                File f = deadline > 0 ? future.get(remaining, TimeUnit.MILLISECONDS) : future.get();
+                collect(future, f);
+            } catch (TimeoutException ex) {
+                break;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ex) {
+                collect(future, ex);
+            }
+        }
+        drainCompleted();
+        cancelIfExpired();
+    }
+
+    /**
+     * Take the finished tasks out of the completion queue, so the queue does
+     * not grow with the tasks already collected by await. The finished tasks
+     * which are not collected yet are collected here.
+     */
+    private void drainCompleted() {
+        Future<File> future;
+        while ((future = service.poll()) != null) {
+            if (!keys.containsKey(future)) {
+                continue;
+            }
+            try {
+                collect(future, future.get());
+            } catch (ExecutionException ex) {
+                collect(future, ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Wait for all the submitted tasks by the order of completion
+     */
+    public void awaitAll() {
+        try {
+            while (!keys.isEmpty()) {
+                Future<File> future;
+                if (deadline > 0) {
+                    future = service.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                    if (future == null) {
+                        break;
+                    }
+                } else {
+                    future = service.take();
+                }
+                if (!keys.containsKey(future)) {
+                    continue;
+                }
+                try {
+                    collect(future, future.get());
+                } catch (ExecutionException ex) {
+                    collect(future, ex);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        cancelIfExpired();
+    }
+
+    private void collect(Future<File> future, File f) {
+        remove(future);
+        if (f != null) {
+            files.put(f.getPath(), f);
+        }
+    }
+
+    private void collect(Future<File> future, ExecutionException ex) {
+        remove(future);
+        if (!(ex.getCause() instanceof DssatTranslateRunner.NoOutputFileException)) {
+            LOG.error(DssatCommonOutput.getStackTrace(ex));
+        }
+    }
+
+    private void remove(Future<File> future) {
+        String key = keys.remove(future);
+        if (futures.get(key) == future) {
+            futures.remove(key);
+        }
+    }
+
+    /**
+     * Cancel the rest tasks if the deadline is passed or the thread is
+     * interrupted
+     */
+    private void cancelIfExpired() {
+        if (keys.isEmpty()) {
+            return;
+        }
+        if (Thread.currentThread().isInterrupted() || deadline > 0 && System.currentTimeMillis() >= deadline) {
+            for (Map.Entry<Future<File>, String> entry : keys.entrySet()) {
+                LOG.warn("DSSAT translation for {} is canceled since it is not finished on time", entry.getValue());
+                entry.getKey().cancel(true);
+            }
+            futures.clear();
+            keys.clear();
+        }
+    }
+
+    /**
+     * Get the output files of the finished tasks
+     *
+     * @return the map of file path and file
+     */
+    public Map<String, File> getFiles() {
+        return files;
+    }
+}
@@ -1,11 +1,12 @@
 package org.agmip.translators.dssat;
 
 import java.io.BufferedReader;
-import java.io.CharArrayReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.PriorityQueue;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,9 +57,43 @@ public class DssatWeatherInput extends DssatCommonInput {
      * @throws java.io.IOException
      */
     protected ArrayList<HashMap> readDailyData(HashMap brMap, HashMap ret) throws IOException {
+        return readDailyData(brMap, ret, null);
+    }
+
+    /**
+     * DSSAT Weather Data input method for Controller using, only the files
+     * for the referred stations are read
+     *
+     * @param brMap The holder for BufferReader objects for all files
+     * @param ret
+     * @param wstIds the referred weather station IDs, null for reading all
+     * @return result data holder object
+     * @throws java.io.IOException
+     */
+    protected ArrayList<HashMap> readDailyData(HashMap brMap, HashMap ret, Set<String> wstIds) throws IOException {
+        return readDailyData(brMap, ret, wstIds, null, null);
+    }
+
+    /**
+     * DSSAT Weather Data input method for Controller using, only the files
+     * for the referred stations are read, and only the days within the date
+     * window are kept. The day out of the window is skipped by its date
+     * prefix without reading the rest of the line.
+     *
+     * @param brMap The holder for BufferReader objects for all files
+     * @param ret
+     * @param wstIds the referred weather station IDs, null for reading all
+     * @param startDate the first date of the window with format of
+     * "yyyymmdd", null for no limit
+     * @param endDate the last date of the window with format of "yyyymmdd",
+     * null for no limit
+     * @return result data holder object
+     * @throws java.io.IOException
+     */
+    protected ArrayList<HashMap> readDailyData(HashMap brMap, HashMap ret, Set<String> wstIds, String startDate, String endDate) throws IOException {
 
         ArrayList<HashMap> files = new ArrayList();
-        ArrayList<HashMap<String, String>> daily;
+        DailyWeatherSeries daily;
         ArrayList titles;
         HashMap file;
         String line;
@@ -66,8 +101,17 @@ public class DssatWeatherInput extends DssatCommonInput {
         Object buf;
         HashMap mapW;
         LinkedHashMap formats = new LinkedHashMap();
-        HashMap<String, ArrayList<HashMap<String, String>>> dailyById = new HashMap();
+        FixedWidthLayout dailyLayout;
+        HashMap<String, ArrayList<DailyWeatherSeries>> dailyById = new HashMap();
+        HashMap<String, HashMap> fileById = new HashMap();
         String fileName;
+        String firstDay;
+        int startDay = DssatDateCodec.parseStrictYyyymmdd(startDate);
+        int endDay = DssatDateCodec.parseStrictYyyymmdd(endDate);
+        boolean hasWindow = startDay != DssatDateCodec.NO_DATE || endDay != DssatDateCodec.NO_DATE;
+        if (endDay == DssatDateCodec.NO_DATE) {
+            endDay = Integer.MAX_VALUE;
+        }
 
         mapW = (HashMap) brMap.get("W");
 
@@ -91,16 +135,21 @@ public class DssatWeatherInput extends DssatCommonInput {
                 wst_id = fileName.substring(0 ,4);
                 clim_id = "0XXX";
             }
-            
+
             buf = mapW.get(key);
-            if (buf instanceof char[]) {
-                brW = new BufferedReader(new CharArrayReader((char[]) buf));
-            } else {
-                brW = (BufferedReader) buf;
+            // Skip the file of the station which is not referred, the file name may be used as the ID for old standard
+            if (wstIds != null && !wstIds.contains(wst_id) && !wstIds.contains(fileName)) {
+                if (buf instanceof BufferedReader) {
+                    ((BufferedReader) buf).close();
+                }
+                continue;
             }
+            brW = getBufferReader(buf);
             file = new HashMap();
-            daily = new ArrayList();
+            daily = new DailyWeatherSeries();
             titles = new ArrayList();
+            dailyLayout = new FixedWidthLayout().add("w_date", 5);
+            firstDay = null;
 
             while ((line = brW.readLine()) != null) {
 
@@ -169,16 +218,24 @@ public class DssatWeatherInput extends DssatCommonInput {
                     } // Weather daily data
                     else if (flg[1].startsWith("date ")) {
 
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("w_date", 5);
-                        for (Object title : titles) {
-                            formats.put(title, 6);
+                        // Skip the day out of the date window
+                        if (hasWindow) {
+                            int day = DssatDateCodec.parseYyddd(line.substring(0, Math.min(5, line.length())).trim(), 0);
+                            if (day != DssatDateCodec.NO_DATE && (day < startDay || day > endDay)) {
+                                if (firstDay == null) {
+                                    firstDay = DssatDateCodec.formatYyyymmdd(day);
+                                }
+                                continue;
+                            }
                         }
+
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, dailyLayout);
                         // translate date from yyddd format to yyyymmdd format
                         translateDateStr(tmp, "w_date");
+                        if (firstDay == null) {
+                            firstDay = tmp.get("w_date") == null ? "" : (String) tmp.get("w_date");
+                        }
                         daily.add(tmp);
 
                     } else {
@@ -203,6 +260,14 @@ public class DssatWeatherInput extends DssatCommonInput {
                                 titles.add(title.toLowerCase());
                             }
                         }
+
+                        // Set variables' formats
+                        formats.clear();
+                        formats.put("w_date", 5);
+                        for (Object title : titles) {
+                            formats.put(title, 6);
+                        }
+                        dailyLayout = new FixedWidthLayout(formats);
                     } else {
                     }
 //                } else if (flg[2].equals("comment")) {
@@ -217,18 +282,16 @@ public class DssatWeatherInput extends DssatCommonInput {
             }
 
             // Double check if the weather file name is following the old standard
-            if (!daily.isEmpty() && wst_id.length() == 4) {
-                String firstDay = daily.get(0).get("w_date");
-                if (firstDay != null && firstDay.length() > 3) {
-                    int year = 80;
-                    try {
-                        year = Integer.parseInt(firstDay.substring(2, 4));
-                    } catch (NumberFormatException e) {
-                    }
-                    if (!fileName.startsWith(wst_id + String.format("%02d", year))) {
-                        wst_id = fileName;
-                        clim_id = fileName.substring(4);
-                    }
+            // P.S. The first day in the file is used, which might be out of the date window
+            if (firstDay != null && firstDay.length() > 3 && wst_id.length() == 4) {
+                int year = 80;
+                try {
+                    year = Integer.parseInt(firstDay.substring(2, 4));
+                } catch (NumberFormatException e) {
+                }
+                if (!fileName.startsWith(wst_id + String.format("%02d", year))) {
+                    wst_id = fileName;
+                    clim_id = fileName.substring(4);
                 }
             }
             file.put("wst_name", wst_id);
@@ -236,18 +299,29 @@ public class DssatWeatherInput extends DssatCommonInput {
             file.put("clim_id", clim_id);
 
             if (!dailyById.containsKey(wst_id)) {
-                dailyById.put(wst_id, daily);
+                ArrayList<DailyWeatherSeries> dailyArr = new ArrayList<DailyWeatherSeries>();
+                dailyArr.add(daily);
+                dailyById.put(wst_id, dailyArr);
+                fileById.put(wst_id, file);
                 file.put("wst_source", "DSSAT");
-                file.put(dailyKey, daily);
                 files.add(file);
             } else {
-                ArrayList tmpArr = dailyById.get(wst_id);
-//                tmpArr.addAll(daily);
-                addDaily(tmpArr, daily);
+                dailyById.get(wst_id).add(daily);
             }
             brW.close();
         }
 
+        // Combine the daily data from the files for same station, and hand out the daily data as the list of records
+        for (String id : dailyById.keySet()) {
+            ArrayList<DailyWeatherSeries> dailyArr = dailyById.get(id);
+            if (dailyArr.size() > 1) {
+                daily = mergeDaily(dailyArr, id);
+            } else {
+                daily = dailyArr.get(0);
+            }
+            fileById.get(id).put(dailyKey, daily.toRecords());
+        }
+
         return files;
     }
 
@@ -264,80 +338,116 @@ public class DssatWeatherInput extends DssatCommonInput {
     }
 
     /**
-     * Add new daily data into array with ascending order
+     * Merge the daily data from multiple files into one series with ascending
+     * order. The series with valid and ascending dates are merged day by day,
+     * the day which already exists in the previous read file will be skipped;
+     * the rest series are appended to the end by the reading order.
      *
-     * @param arr original array
-     * @param cur new data for insert
+     * @param dailyArr the daily data from each file, by the reading order
+     * @param wst_id the weather station ID
+     * @return the merged daily data
      */
-    private void addDaily(ArrayList<HashMap<String, String>> arr, ArrayList<HashMap<String, String>> cur) {
-        if (arr.isEmpty()) {
-            arr.addAll(cur);
-        } else if (!cur.isEmpty()) {
-            int curDay;
-            int arrDay;
-            try {
-                curDay = Integer.parseInt(cur.get(cur.size() - 1).get("w_date"));
-                arrDay = Integer.parseInt(arr.get(0).get("w_date"));
-                if (curDay <= arrDay) {
-                    ArrayList tmp = new ArrayList();
-                    tmp.addAll(arr);
-                    arr.clear();
-                    arr.addAll(cur);
-                    arr.addAll(tmp);
-                    return;
-                }
-                curDay = Integer.parseInt(cur.get(0).get("w_date"));
-                arrDay = Integer.parseInt(arr.get(arr.size() - 1).get("w_date"));
-                if (curDay >= arrDay) {
-                    arr.addAll(cur);
-                    return;
-                }
-                ArrayList before = new ArrayList();
-                ArrayList after = new ArrayList();
-                for (int i = 0; i < arr.size();) {
-                    arrDay = Integer.parseInt(arr.get(i).get("w_date"));
-                    if (arrDay > curDay) {
-                        before.addAll(arr.subList(0, i));
-                        after.addAll(arr.subList(i, arr.size()));
-                        break;
-                    } else {
-                        // Get the index of the first day of next year
-                        int curYear = arrDay / 10000;
-                        int start = i;
-                        i += 365;
-                        if (curYear % 4 == 0) {
-                            i++;
-                        }
-                        if (i >=  arr.size()) {
-                            i = arr.size() - 1;
-                        }
-                        int lastDay = Integer.parseInt(arr.get(i).get("w_date"));
-                        int lastDayYear = lastDay / 10000;
-                        if (i == arr.size() - 1 && curYear == lastDayYear) {
-                            break;
-                        } else {
-                            while (i > start + 1) {
-                                lastDay = Integer.parseInt(arr.get(i - 1).get("w_date"));
-                                lastDayYear = lastDay / 10000;
-                                if (curYear == lastDayYear) {
-                                    break;
-                                }
-                                i--;
-                            }
-                        }
-                    }
-                }
-                if (after.isEmpty()) {
-                    arr.addAll(cur);
-                } else {
-                    arr.clear();
-                    arr.addAll(before);
-                    arr.addAll(cur);
-                    arr.addAll(after);
+    private DailyWeatherSeries mergeDaily(ArrayList<DailyWeatherSeries> dailyArr, String wst_id) {
+        DailyWeatherSeries ret = new DailyWeatherSeries();
+        ArrayList<DailyWeatherSeries> unsorted = new ArrayList<DailyWeatherSeries>();
+        PriorityQueue<DailyCursor> queue = new PriorityQueue<DailyCursor>();
+        for (int i = 0; i < dailyArr.size(); i++) {
+            DailyWeatherSeries daily = dailyArr.get(i);
+            if (isAscending(daily)) {
+                if (!daily.isEmpty()) {
+                    queue.add(new DailyCursor(daily, i));
                 }
-            } catch (NumberFormatException e) {
-                arr.addAll(cur);
+            } else {
+                unsorted.add(daily);
+            }
+        }
+
+        int lastDay = Integer.MIN_VALUE;
+        int overlap = 0;
+        while (!queue.isEmpty()) {
+            DailyCursor cur = queue.poll();
+            // Skip the days which are already merged
+            while (cur.hasNext() && cur.getDay() <= lastDay) {
+                cur.pos++;
+                overlap++;
+            }
+            if (!cur.hasNext()) {
+                continue;
+            } else if (!queue.isEmpty() && cur.compareTo(queue.peek()) > 0) {
+                queue.add(cur);
+                continue;
+            }
+            // Copy the days before the start of next series in one go
+            int limit = queue.isEmpty() ? Integer.MAX_VALUE : queue.peek().getDay();
+            int start = cur.pos;
+            while (cur.hasNext() && cur.getDay() < limit) {
+                cur.pos++;
+            }
+            if (cur.pos == start) {
+                cur.pos++;
+            }
+            ret.addRange(cur.daily, start, cur.pos);
+            lastDay = ret.getEpochDay(ret.size() - 1);
+            if (cur.hasNext()) {
+                queue.add(cur);
+            }
+        }
+        if (overlap > 0) {
+            LOG.warn("Found {} overlapped days in the weather files for station [{}], only the first read ones are kept.", overlap, wst_id);
+        }
+
+        for (DailyWeatherSeries daily : unsorted) {
+            ret.addAll(daily);
+        }
+        return ret;
+    }
+
+    /**
+     * Check if all the days in the series have valid date with ascending order
+     */
+    private static boolean isAscending(DailyWeatherSeries daily) {
+        int last = Integer.MIN_VALUE;
+        for (int i = 0; i < daily.size(); i++) {
+            int day = daily.getEpochDay(i);
+            if (day == Integer.MIN_VALUE || day <= last) {
+                return false;
+            }
+            last = day;
+        }
+        return true;
+    }
+
+    /**
+     * The reading position of the series during merging, ordered by the date
+     * of current day and then the reading order of file
+     */
+    private static class DailyCursor implements Comparable<DailyCursor> {
+
+        private final DailyWeatherSeries daily;
+        private final int order;
+        private int pos;
+
+        private DailyCursor(DailyWeatherSeries daily, int order) {
+            this.daily = daily;
+            this.order = order;
+        }
+
+        private boolean hasNext() {
+            return pos < daily.size();
+        }
+
+        private int getDay() {
+            return daily.getEpochDay(pos);
+        }
+
+        @Override
+        public int compareTo(DailyCursor o) {
+            int day = getDay();
+            int oDay = o.getDay();
+            if (day != oDay) {
+                return day < oDay ? -1 : 1;
             }
+            return order < o.order ? -1 : (order == o.order ? 0 : 1);
         }
     }
 }
@@ -2,11 +2,11 @@ package org.agmip.translators.dssat;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import static org.agmip.util.MapUtil.*;
 import org.slf4j.Logger;
@@ -33,8 +33,8 @@ public class DssatWeatherOutput extends DssatCommonOutput {
 
         // Initial variables
         HashMap wthFile;                  // Data holder for whole weather data
-        ArrayList wthRecords;                   // Daily data array
-        HashMap wthRecord;                // Data holder for daily data
+        List wthRecords;                        // Daily data array
+        Map wthRecord;                    // Data holder for daily data
         BufferedWriter bwW;                     // output object
         StringBuilder sbData = new StringBuilder();     // construct the data info in the output
         LinkedHashMap dailyVarHeaderMap = new LinkedHashMap();   // Define the mapping of daily data fields and header
@@ -45,10 +45,13 @@ public class DssatWeatherOutput extends DssatCommonOutput {
         dailyVarHeaderMap.put("rhumd", "RHUM");
         String dailyKey = "dailyWeather";  // P.S. the key name might change
         HeaderArrayList<String> dailyHeaders = new HeaderArrayList();
-        StringBuilder[] dailyData;
+        ArrayList<Integer> newVarRows = new ArrayList();    // The line index where each new variable is found
 
         try {
 
+            // Share the file names with the other writers of the directory if the writer is not in a job
+            useDirectorySession(arg0);
+
             // Set default value for missing data
             setDefVal();
 
@@ -60,7 +63,7 @@ public class DssatWeatherOutput extends DssatCommonOutput {
 //            decompressData(wthFiles);
 
             // Output all weather files
-            wthRecords = (ArrayList) getObjectOr(wthFile, dailyKey, new ArrayList());
+            wthRecords = (List) getObjectOr(wthFile, dailyKey, new ArrayList());
 
             // Initial BufferedWriter
             // Get File name
@@ -71,7 +74,7 @@ public class DssatWeatherOutput extends DssatCommonOutput {
             fileName += ".WTH";
             arg0 = revisePath(arg0);
             outputFile = new File(arg0 + fileName);
-            bwW = new BufferedWriter(new FileWriter(outputFile));
+            bwW = openWriter(outputFile, false);
 
             // Output Weather File
             // Titel Section
@@ -111,22 +114,19 @@ public class DssatWeatherOutput extends DssatCommonOutput {
             dailyHeaders.add("wind");
             dailyHeaders.add("pard");
 
-            // Output daily data
-            dailyData = new StringBuilder[wthRecords.size()];
+            // Find all the daily variables and the warnings before output, so
+            // the previous lines do not need the blank for the new variables
             for (int i = 0; i < wthRecords.size(); i++) {
 
-                wthRecord = (HashMap) wthRecords.get(i);
-                dailyData[i] = new StringBuilder();
+                wthRecord = (Map) wthRecords.get(i);
                 dailyHeaders.seCurItems(wthRecord.keySet());
 
                 // if date is missing, jump the record
                 if (!getObjectOr(wthRecord, "w_date", "").equals("")) {
-                    //  Format handling for daily date
-                    dailyData[i].append(String.format("%1$5s", formatDateStr(getObjectOr(wthRecord, dailyHeaders.get(0), defValD))));
-
-                    // Output the registered variables
+                    // The date is checked by itself, only take it out of the new variables
+                    dailyHeaders.markUsed(0);
                     for (int j = 1; j < dailyHeaders.size(); j++) {
-                        dailyData[i].append(String.format(" %1$5s", formatNumStr(5, wthRecord, dailyHeaders.get(j), defValR)));
+                        checkNumStr(5, wthRecord, dailyHeaders.get(j));
                     }
 
                     // Check if there is new variable not been regitered in the output list
@@ -136,31 +136,51 @@ public class DssatWeatherOutput extends DssatCommonOutput {
 
                         if (key != null) {
                             // Add title to the header line
-                            sbData.append(String.format("%1$6s", getObjectOr(dailyVarHeaderMap, key, key.toUpperCase())));
-                            // Add blank for previous lines (this might be optional)
-                            for (int j = 0; j < i; j++) {
-                                dailyData[j].append("   -99");
-                            }
-                            // Output new variable
-                            dailyData[i].append(String.format(" %1$5s", formatNumStr(5, wthRecord, key, defValR)));
+                            appendLeftPad(sbData, getObjectOr(dailyVarHeaderMap, key, key.toUpperCase()), 6);
+                            checkNumStr(5, wthRecord, key);
+                            newVarRows.add(i);
                         }
                     }
                 } else {
                     sbError.append("! Warning: A daily record has the missing date in it.\r\n");
                 }
             }
-
-            // Combine the daily data
             sbData.append("\r\n");
-            for (int i = 0; i < dailyData.length; i++) {
-                dailyData[i].append("\r\n");
-                sbData.append(dailyData[i]);
-                dailyData[i] = null;
+            bwW.write(sbError.toString());
+            bwW.write(sbData.toString());
+            sbData.setLength(0);
+            sbError = new StringBuilder();
+
+            // Output daily data, the lines are written by chunk
+            String[] dailyKeys = dailyHeaders.toArray(new String[dailyHeaders.size()]);
+            for (int i = 0; i < wthRecords.size(); i++) {
+
+                wthRecord = (Map) wthRecords.get(i);
+                // if date is missing, leave a blank line
+                if (!getObjectOr(wthRecord, "w_date", "").equals("")) {
+                    //  Format handling for daily date
+                    appendLeftPad(sbData, formatDateStr(getObjectOr(wthRecord, dailyKeys[0], defValD)), 5);
+
+                    // Output the registered variables
+                    for (int j = 1; j < dailyKeys.length; j++) {
+                        appendNumStr(sbData.append(' '), 5, 5, wthRecord, dailyKeys[j], defValR);
+                    }
+                } else {
+                    // Keep the blank for the variables registered after this line
+                    for (int j = 0; j < newVarRows.size(); j++) {
+                        if (newVarRows.get(j) > i) {
+                            sbData.append("   -99");
+                        }
+                    }
+                }
+                sbData.append("\r\n");
+                if (sbData.length() >= 4 * 1024 || i == wthRecords.size() - 1) {
+                    bwW.append(sbData);
+                    sbData.setLength(0);
+                }
             }
 
             // Output finish
-            bwW.write(sbError.toString());
-            bwW.write(sbData.toString());
             bwW.close();
             sbError = new StringBuilder();
 
@@ -1,9 +1,12 @@
 package org.agmip.translators.dssat;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.agmip.util.MapUtil.*;
 
 /**
@@ -12,9 +15,9 @@ import static org.agmip.util.MapUtil.*;
  */
 public class DssatWthFileHelper {
 
-    private final HashSet<String> names = new HashSet();
-    private final HashMap<String, String> hashToName = new HashMap();
-    private int defInsiName = 0xAAAA;
+    private final Set<String> names = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ConcurrentHashMap<String, String> hashToName = new ConcurrentHashMap<String, String>();
+    private final AtomicInteger defInsiName = new AtomicInteger(0xAAAA);
 
     /**
      * Generate the weather file name for auto-generating (extend name not
@@ -27,8 +30,9 @@ public class DssatWthFileHelper {
 
         String hash = getValueOr(wthData, "wst_id", "") + getValueOr(wthData, "clim_id", "");
 
-        if (hashToName.containsKey(hash)) {
-            return hashToName.get(hash);
+        String ret = hashToName.get(hash);
+        if (ret != null) {
+            return ret;
         } else {
             String insiName = getWthInsiCodeOr(wthData);
             String yearDur = getWthYearDuration(wthData);
@@ -42,14 +46,19 @@ public class DssatWthFileHelper {
                     wst_id += yearDur;
                 }
             }
-            while (names.contains(wst_id)) {
+            // Claim the name, try the next one if it has been used
+            while (!names.add(wst_id)) {
                 wst_id = getNextDefName() + yearDur;
             }
-            names.add(wst_id);
             if (hash.equals("")) {
                 hash = wst_id;
             }
-            hashToName.put(hash, wst_id);
+            ret = hashToName.putIfAbsent(hash, wst_id);
+            if (ret != null) {
+                // Another thread has created the name for the same weather
+                names.remove(wst_id);
+                return ret;
+            }
             return wst_id;
         }
     }
@@ -76,7 +85,7 @@ public class DssatWthFileHelper {
      * @return auto-generated institute code
      */
     private String getNextDefName() {
-        return Integer.toHexString(defInsiName++).toUpperCase();
+        return Integer.toHexString(defInsiName.getAndIncrement()).toUpperCase();
     }
 
     /**
@@ -113,7 +122,7 @@ public class DssatWthFileHelper {
      */
     public static String getWthYearDuration(Map wthData) {
         String yearDur = "";
-        ArrayList<Map> wthRecords = (ArrayList) getObjectOr(wthData, "dailyWeather", new ArrayList());
+        List<Map> wthRecords = (List) getObjectOr(wthData, "dailyWeather", new ArrayList());
         if (!wthRecords.isEmpty()) {
             // Get the year of starting date and end date
             String startYear = getValueOr((wthRecords.get(0)), "w_date", "    ").substring(2, 4).trim();
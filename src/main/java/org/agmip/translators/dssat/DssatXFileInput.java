@@ -5,8 +5,10 @@ import java.io.CharArrayReader;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import org.agmip.util.MapUtil;
 import static org.agmip.util.MapUtil.*;
 
@@ -20,6 +22,328 @@ public class DssatXFileInput extends DssatCommonInput {
 
     public String eventKey = "data";
     public String icEventKey = "soilLayer";
+    // The sections with single sub data
+    private static final List<String> SINGLE_SUB_REC_SECS = Arrays.asList("ge", "fl", "pl", "ha", "sm");
+
+    // The layouts of the data lines in each section
+    private static final FixedWidthLayout EXP_DETAILS_LAYOUT = new FixedWidthLayout()
+            .add("null_1", 14)
+            .add("null_2", 11)  // P.S. Since exname in top line is not reliable, read from file name
+            .add("local_name", 61);
+    private static final FixedWidthLayout PLOT_LAYOUT = new FixedWidthLayout()
+            .add("plta", 7)
+            .add("pltr#", 6)
+            .add("pltln", 6)
+            .add("pldr", 6)
+            .add("pltsp", 6)
+            .add("pllay", 6)
+            .add("pltha", 6)
+            .add("plth#", 6)
+            .add("plthl", 6)
+            .add("plthm", 16);
+    private static final FixedWidthLayout TREATMENT_LAYOUT = new FixedWidthLayout()
+            .add("trno", 3) // For 3-bit treatment number (2->3)
+            .add("sq", 1)   // For 3-bit treatment number (2->1)
+            .add("op", 2)
+            .add("co", 2)
+            .add("trt_name", 26)
+            .add("ge", 3)
+            .add("fl", 3)
+            .add("sa", 3)
+            .add("ic", 3)
+            .add("pl", 3)
+            .add("ir", 3)
+            .add("fe", 3)
+            .add("om", 3)
+            .add("ch", 3)
+            .add("ti", 3)
+            .add("em", 3)
+            .add("ha", 3)
+            .add("sm", 3);
+    private static final FixedWidthLayout CULTIVAR_LAYOUT = new FixedWidthLayout()
+            .add("ge", 2)
+            .add("crid", 3)
+            .add("cul_id", 7)
+            .add("cul_name", 17);
+    private static final FixedWidthLayout FIELD_LAYOUT = new FixedWidthLayout()
+            .add("fl", 2)
+            .add("id_field", 9)
+            .add("wst_id", 9)       // P.S. id do not match with the master list "wth_id"; might have another id name
+            .add("flsl", 6)
+            .add("flob", 6)
+            .add("fl_drntype", 6)
+            .add("fldrd", 6)
+            .add("fldrs", 6)
+            .add("flst", 6)
+            .add("sltx", 6)
+            .add("sldp", 6)
+            .add("soil_id", 11)
+            .addRest("fl_name");
+    private static final FixedWidthLayout FIELD_LOCATION_LAYOUT = new FixedWidthLayout()
+            .add("fl", 2)
+            .add("fl_long", 16)
+            .add("fl_lat", 16)
+            .add("flele", 10)
+            .add("farea", 18)
+            .add("", 6)             // P.S. id do not find in the master list (? it seems to be calculated by other fields)
+            .add("fllwr", 6)
+            .add("flsla", 6)
+            .add("flhst", 6)        // P.S. id do not find in the master list (field histoy code)
+            .add("fhdur", 6);        // P.S. id do not find in the master list (duration associated with field history code in years)
+    private static final FixedWidthLayout SOIL_ANALYSIS_LAYOUT = new FixedWidthLayout()
+            .add("sa", 2)
+            .add("sadat", 6)
+            .add("smhb", 6)     // P.S. changed from samhb to smhb to match the soil variable name
+            .add("smpx", 6)     // P.S. changed from sampx to smpx to match the soil variable name
+            .add("smke", 6);     // P.S. changed from samke to smke to match the soil variable name
+    private static final FixedWidthLayout SOIL_ANALYSIS_LAYER_LAYOUT = new FixedWidthLayout()
+            .add("", 2)         // P.S. ignore the data index "sa"
+            .add("sllb", 6)     // P.S. changed from sabl  to sllb to match the soil variable name
+            .add("slbdm", 6)    // P.S. changed from sabdm to slbdm to match the soil variable name
+            .add("sloc", 6)     // P.S. changed from saoc  to sloc to match the soil variable name
+            .add("slni", 6)     // P.S. changed from sani  to slni to match the soil variable name
+            .add("slphw", 6)    // P.S. changed from saphw to slphw to match the soil variable name
+            .add("slphb", 6)    // P.S. changed from saphb to slphb to match the soil variable name
+            .add("slpx", 6)     // P.S. changed from sapx  to slpx to match the soil variable name
+            .add("slke", 6)     // P.S. changed from sake  to slke to match the soil variable name
+            .add("slsc", 6);     // P.S. changed from sasc  to slsc to match the soil variable name
+    private static final FixedWidthLayout INITIAL_CONDITION_LAYOUT = new FixedWidthLayout()
+            .add("ic", 2)
+            .add("icpcr", 6)
+            .add("icdat", 6)
+            .add("icrt", 6)
+            .add("icnd", 6)
+            .add("icrz#", 6)
+            .add("icrze", 6)
+            .add("icwt", 6)
+            .add("icrag", 6)
+            .add("icrn", 6)
+            .add("icrp", 6)
+            .add("icrip", 6)
+            .add("icrdp", 6)
+            .addRest("ic_name");
+    private static final FixedWidthLayout INITIAL_CONDITION_LAYER_LAYOUT = new FixedWidthLayout()
+            .add("", 2)         // P.S. ignore the detail (event) data index "ic"
+            .add("icbl", 6)
+            .add("ich2o", 6)
+            .add("icnh4", 6)
+            .add("icno3", 6);
+    private static final FixedWidthLayout PLANTING_LAYOUT = new FixedWidthLayout()
+            .add("pl", 2)
+            .add("pdate", 6)
+            .add("edate", 6)
+            .add("plpop", 6)
+            .add("plpoe", 6)
+            .add("plma", 6)     // P.S. 2012.07.13 changed from plme to plma
+            .add("plds", 6)
+            .add("plrs", 6)
+            .add("plrd", 6)
+            .add("pldp", 6)
+            .add("plmwt", 6)
+            .add("page", 6)
+            .add("plenv", 6)
+            .add("plph", 6)
+            .add("plspl", 6)
+            .addRest("pl_name");
+    private static final FixedWidthLayout IRRIGATION_LAYOUT = new FixedWidthLayout()
+            .add("ir", 2)
+            .add("ireff", 6)
+            .add("irmdp", 6)
+            .add("irthr", 6)
+            .add("irept", 6)
+            .add("irstg", 6)
+            .add("iame", 6)
+            .add("iamt", 6)
+            .addRest("ir_name");
+    private static final FixedWidthLayout IRRIGATION_EVENT_LAYOUT = new FixedWidthLayout()
+            .add("", 2)         // P.S. ignore the data index "ir"
+            .add("idate", 6)
+            .add("irop", 6)
+            .add("irval", 6);
+    private static final FixedWidthLayout FERTILIZER_LAYOUT = new FixedWidthLayout()
+            .add("fe", 2)
+            .add("fdate", 6)
+            .add("fecd", 6)
+            .add("feacd", 6)
+            .add("fedep", 6)
+            .add("feamn", 6)
+            .add("feamp", 6)
+            .add("feamk", 6)
+            .add("feamc", 6)
+            .add("feamo", 6)
+            .add("feocd", 6)
+            .addRest("fe_name");
+    private static final FixedWidthLayout RESIDUE_LAYOUT = new FixedWidthLayout()
+            .add("om", 2)
+            .add("omdat", 6)    // P.S. id do not match with the master list "omday"
+            .add("omcd", 6)
+            .add("omamt", 6)
+            .add("omn%", 6)
+            .add("omp%", 6)
+            .add("omk%", 6)
+            .add("ominp", 6)
+            .add("omdep", 6)
+            .add("omacd", 6)
+            .addRest("om_name");
+    private static final FixedWidthLayout CHEMICAL_LAYOUT = new FixedWidthLayout()
+            .add("ch", 2)
+            .add("cdate", 6)
+            .add("chcd", 6)
+            .add("chamt", 6)
+            .add("chacd", 6)
+            .add("chdep", 6)
+            .add("ch_targets", 6)
+            .addRest("ch_name");
+    private static final FixedWidthLayout TILLAGE_LAYOUT = new FixedWidthLayout()
+            .add("ti", 2)
+            .add("tdate", 6)
+            .add("tiimp", 6)
+            .add("tidep", 6)
+            .addRest("ti_name");
+    private static final FixedWidthLayout ENVIRONMENT_LAYOUT = new FixedWidthLayout()
+            .add("em", 2);
+//            .add("emday", 6)
+//            .add("ecdyl", 2)
+//            .add("emdyl", 4)
+//            .add("ecrad", 2)
+//            .add("emrad", 4)
+//            .add("ecmax", 2)
+//            .add("emmax", 4)
+//            .add("ecmin", 2)
+//            .add("emmin", 4)
+//            .add("ecrai", 2)
+//            .add("emrai", 4)
+//            .add("ecco2", 2)
+//            .add("emco2", 4)
+//            .add("ecdew", 2)
+//            .add("emdew", 4)
+//            .add("ecwnd", 2)
+//            .add("emwnd", 4)
+//            .addRest("em_name")
+    private static final FixedWidthLayout HARVEST_LAYOUT = new FixedWidthLayout()
+            .add("ha", 2)
+            .add("hadat", 6)
+            .add("hastg", 6)
+            .add("hacom", 6)
+            .add("hasiz", 6)
+            .add("hap%", 6)
+            .add("hab%", 6)
+            .addRest("ha_name");
+    private static final FixedWidthLayout SM_GENERAL_LAYOUT = new FixedWidthLayout()
+            .add("sm", 2)
+//            .addRest("sm_general")
+            .add("null", 12)
+            .add("nyers", 6)
+            .add("nreps", 6)
+            .add("start", 6)
+            .add("sdyer", 3)
+            .add("sdday", 3)
+            .add("rseed", 6)
+            .add("sname", 26)
+            .addRest("model");
+    private static final FixedWidthLayout SM_OPTIONS_LAYOUT = new FixedWidthLayout()
+            .add("sm", 2)
+//            .addRest("sm_options")
+            .add("null", 12)
+            .add("water", 6)
+            .add("nitro", 6)
+            .add("symbi", 6)
+            .add("phosp", 6)
+            .add("potas", 6)
+            .add("dises", 6)
+            .add("chem", 6)
+            .add("till", 6)
+            .add("co2", 6);
+    private static final FixedWidthLayout SM_METHODS_LAYOUT = new FixedWidthLayout()
+            .add("sm", 2)
+//            .addRest("sm_methods")
+            .add("null", 12)
+            .add("wther", 6)
+            .add("incon", 6)
+            .add("light", 6)
+            .add("evapo", 6)
+            .add("infil", 6)
+            .add("photo", 6)
+            .add("hydro", 6)
+            .add("nswit", 6)
+            .add("mesom", 6)
+            .add("mesev", 6)
+            .add("mesol", 6);
+    private static final FixedWidthLayout SM_MANAGEMENT_LAYOUT = new FixedWidthLayout()
+            .add("sm", 2)
+//            .addRest("sm_management")
+            .add("null", 12)
+            .add("plant", 6)
+            .add("irrig", 6)
+            .add("ferti", 6)
+            .add("resid", 6)
+            .add("harvs", 6);
+    private static final FixedWidthLayout SM_OUTPUTS_LAYOUT = new FixedWidthLayout()
+            .add("sm", 2)
+//            .addRest("sm_outputs")
+            .add("null", 12)
+            .add("fname", 6)
+            .add("ovvew", 6)
+            .add("sumry", 6)
+            .add("fropt", 6)
+            .add("grout", 6)
+            .add("caout", 6)
+            .add("waout", 6)
+            .add("niout", 6)
+            .add("miout", 6)
+            .add("diout", 6)
+            .add("vbose", 6)
+            .add("chout", 6)
+            .add("opout", 6);
+    private static final FixedWidthLayout SM_PLANTING_LAYOUT = new FixedWidthLayout()
+            .add("sm", 2)
+//            .addRest("sm_planting")
+            .add("null", 12)
+            .add("pfyer", 3)
+            .add("pfday", 3)
+            .add("plyer", 3)
+            .add("plday", 3)
+            .add("ph2ol", 6)
+            .add("ph2ou", 6)
+            .add("ph2od", 6)
+            .add("pstmx", 6)
+            .add("pstmn", 6);
+    private static final FixedWidthLayout SM_IRRIGATION_LAYOUT = new FixedWidthLayout()
+            .add("sm", 2)
+//            .addRest("sm_irrigation")
+            .add("null", 12)
+            .add("imdep", 6)
+            .add("ithrl", 6)
+            .add("ithru", 6)
+            .add("iroff", 6)
+            .add("imeth", 6)
+            .add("iramt", 6)
+            .add("ireff", 6);
+    private static final FixedWidthLayout SM_NITROGEN_LAYOUT = new FixedWidthLayout()
+            .add("sm", 2)
+//            .addRest("sm_nitrogen")
+            .add("null", 12)
+            .add("nmdep", 6)
+            .add("nmthr", 6)
+            .add("namnt", 6)
+            .add("ncode", 6)
+            .add("naoff", 6);
+    private static final FixedWidthLayout SM_RESIDUES_LAYOUT = new FixedWidthLayout()
+            .add("sm", 2)
+//            .addRest("sm_residues")
+            .add("null", 12)
+            .add("ripcn", 6)
+            .add("rtime", 6)
+            .add("ridep", 6);
+    private static final FixedWidthLayout SM_HARVEST_LAYOUT = new FixedWidthLayout()
+            .add("sm", 2)
+//            .addRest("sm_harvests")
+            .add("null", 12)
+            .add("hfrst", 6)    // P.S. Keep the original value
+            .add("hlyer", 3)
+            .add("hlday", 3)
+            .add("hpcnp", 6)
+            .add("hpcnr", 6);
 
     /**
      * Constructor with no parameters Set jsonKey as "experiment"
@@ -53,7 +377,8 @@ public class DssatXFileInput extends DssatCommonInput {
 
             // Set soil_analysis block to soil block
             copyItem(expData, expData, "soil", "soil_analysis", true);
-            HashMap soilTmp = getObjectOr(expData, "soil", new HashMap());
+            // The soil analysis level is shared by treatments, copy it before updating
+            HashMap soilTmp = CopyList(getObjectOr(expData, "soil", new HashMap()));
             if (!soilTmp.isEmpty()) {
                 expData.put("soil_id", expData.get("soil_id") + "_" + (i + 1));
             }
@@ -98,7 +423,6 @@ public class DssatXFileInput extends DssatCommonInput {
         HashMap mapW;
         String wid;
         String fileName;
-        LinkedHashMap formats = new LinkedHashMap();
         ArrayList<HashMap> trArr = new ArrayList<HashMap>();
         HashMap trData = new HashMap();
         ArrayList<HashMap> evtArr = new ArrayList<HashMap>();
@@ -119,11 +443,7 @@ public class DssatXFileInput extends DssatCommonInput {
 
         for (Object keyX : mapX.keySet()) {
             buf = mapX.get(keyX);
-            if (buf instanceof char[]) {
-                br = new BufferedReader(new CharArrayReader((char[]) buf));
-            } else {
-                br = (BufferedReader) buf;
-            }
+            br = getBufferReader(buf);
 
 //        fileName = (String) brMap.get("Z");
             fileName = (String) keyX;
@@ -137,6 +457,7 @@ public class DssatXFileInput extends DssatCommonInput {
             HashMap sqData;
             ArrayList<HashMap> cuArr = new ArrayList<HashMap>();
             ArrayList<HashMap> flArr = new ArrayList<HashMap>();
+            RecordMerger flMerger = new RecordMerger(flArr, "fl");
             ArrayList<HashMap> saArr = new ArrayList<HashMap>();
             ArrayList<HashMap> sadArr = new ArrayList<HashMap>();
             ArrayList<HashMap> icArr = new ArrayList<HashMap>();
@@ -151,6 +472,7 @@ public class DssatXFileInput extends DssatCommonInput {
             ArrayList<HashMap> emArr = new ArrayList<HashMap>();
             ArrayList<HashMap> haArr = new ArrayList<HashMap>();
             ArrayList<HashMap> smArr = new ArrayList<HashMap>();
+            RecordMerger smMerger = new RecordMerger(smArr, "sm");
 
             while ((line = br.readLine()) != null) {
 
@@ -160,13 +482,8 @@ public class DssatXFileInput extends DssatCommonInput {
                 // Read Exp title info
                 if (flg[0].startsWith("exp.details:") && flg[2].equals("")) {
 
-                    // Set variables' formats
-                    formats.clear();
-                    formats.put("null_1", 14);
-                    formats.put("null_2", 11);  // P.S. Since exname in top line is not reliable, read from file name
-                    formats.put("local_name", 61);
                     // Read line and save into return holder
-                    meta.putAll(readLine(line, formats));
+                    meta.putAll(readLine(line, EXP_DETAILS_LAYOUT));
                     meta.put("exname", exname);
                     meta.put("in", getObjectOr(meta, "exname", "  ").substring(0, 2).trim());
                 } // Read General Section
@@ -222,20 +539,8 @@ public class DssatXFileInput extends DssatCommonInput {
                     } // Plot Info
                     else if (flg[1].startsWith("parea") && flg[2].equals("data")) {
 
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("plta", 7);
-                        formats.put("pltr#", 6);
-                        formats.put("pltln", 6);
-                        formats.put("pldr", 6);
-                        formats.put("pltsp", 6);
-                        formats.put("pllay", 6);
-                        formats.put("pltha", 6);
-                        formats.put("plth#", 6);
-                        formats.put("plthl", 6);
-                        formats.put("plthm", 16);
                         // Read line and save into return holder
-                        meta.putAll(readLine(line, formats));
+                        meta.putAll(readLine(line, PLOT_LAYOUT));
 
                     } // Notes field
                     else if (flg[1].equals("notes") && flg[2].equals("data")) {
@@ -254,28 +559,8 @@ public class DssatXFileInput extends DssatCommonInput {
 
                     // Read TREATMENTS data / Rotation data
                     if (flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("trno", 3); // For 3-bit treatment number (2->3)
-                        formats.put("sq", 1);   // For 3-bit treatment number (2->1)
-                        formats.put("op", 2);
-                        formats.put("co", 2);
-                        formats.put("trt_name", 26);
-                        formats.put("ge", 3);
-                        formats.put("fl", 3);
-                        formats.put("sa", 3);
-                        formats.put("ic", 3);
-                        formats.put("pl", 3);
-                        formats.put("ir", 3);
-                        formats.put("fe", 3);
-                        formats.put("om", 3);
-                        formats.put("ch", 3);
-                        formats.put("ti", 3);
-                        formats.put("em", 3);
-                        formats.put("ha", 3);
-                        formats.put("sm", 3);
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, TREATMENT_LAYOUT);
                         if (tmp.get("trt_name") == null) {
                             tmp.put("trt_name", meta.get("exname"));
                         }
@@ -288,14 +573,8 @@ public class DssatXFileInput extends DssatCommonInput {
 
                     // Read CULTIVARS data
                     if (flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("ge", 2);
-                        formats.put("crid", 3);
-                        formats.put("cul_id", 7);
-                        formats.put("cul_name", 17);
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, CULTIVAR_LAYOUT);
                         Object cul_id = tmp.get("cul_id");
                         if (cul_id != null) {
                             tmp.put("dssat_cul_id", cul_id);
@@ -314,28 +593,13 @@ public class DssatXFileInput extends DssatCommonInput {
                     // Read field info 1st line
                     if (flg[1].startsWith("l id_") && flg[2].equals("data")) {
 
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("fl", 2);
-                        formats.put("id_field", 9);
-                        formats.put("wst_id", 9);       // P.S. id do not match with the master list "wth_id"; might have another id name
-                        formats.put("flsl", 6);
-                        formats.put("flob", 6);
-                        formats.put("fl_drntype", 6);
-                        formats.put("fldrd", 6);
-                        formats.put("fldrs", 6);
-                        formats.put("flst", 6);
-                        formats.put("sltx", 6);
-                        formats.put("sldp", 6);
-                        formats.put("soil_id", 11);
-                        formats.put("fl_name", line.length());
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, FIELD_LAYOUT);
                         String sltx = MapUtil.getValueOr(tmp, "sltx", "");
                         if (!sltx.equals("")) {
                             tmp.put("sltx", transSltx(sltx));
                         }
-                        addToArray(flArr, tmp, "fl");
+                        flMerger.merge(tmp);
                         // Read weather station id
                         wid = (String) tmp.get("wst_id");
                         if (wid != null) {
@@ -349,20 +613,8 @@ public class DssatXFileInput extends DssatCommonInput {
                     }// // Read field info 2nd line
                     else if (flg[1].startsWith("l ...") && flg[2].equals("data")) {
 
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("fl", 2);
-                        formats.put("fl_long", 16);
-                        formats.put("fl_lat", 16);
-                        formats.put("flele", 10);
-                        formats.put("farea", 18);
-                        formats.put("", 6);             // P.S. id do not find in the master list (? it seems to be calculated by other fields)
-                        formats.put("fllwr", 6);
-                        formats.put("flsla", 6);
-                        formats.put("flhst", 6);        // P.S. id do not find in the master list (field histoy code)
-                        formats.put("fhdur", 6);        // P.S. id do not find in the master list (duration associated with field history code in years)
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, FIELD_LOCATION_LAYOUT);
 
                         // Read lat and long
                         String strLat = (String) tmp.get("fl_lat");
@@ -374,7 +626,7 @@ public class DssatXFileInput extends DssatCommonInput {
                             // check if weather is validable
                             for (Object key : mapW.keySet()) {
                                 if (((String) key).contains(wid)) {
-                                    bufW = (char[]) mapW.get(key);
+                                    bufW = getBuf(mapW.get(key));
                                     break;
                                 }
                             }
@@ -408,7 +660,7 @@ public class DssatXFileInput extends DssatCommonInput {
                         if (strLong != null) {
                             tmp.put("fl_long", strLong);
                         }
-                        addToArray(flArr, tmp, "fl");
+                        flMerger.merge(tmp);
                     }
 
                 } // Read SOIL ANALYSIS Section
@@ -416,15 +668,8 @@ public class DssatXFileInput extends DssatCommonInput {
 
                     // Read SOIL ANALYSIS global data
                     if (flg[1].startsWith("a sadat") && flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("sa", 2);
-                        formats.put("sadat", 6);
-                        formats.put("smhb", 6);     // P.S. changed from samhb to smhb to match the soil variable name
-                        formats.put("smpx", 6);     // P.S. changed from sampx to smpx to match the soil variable name
-                        formats.put("smke", 6);     // P.S. changed from samke to smke to match the soil variable name
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, SOIL_ANALYSIS_LAYOUT);
                         translateDateStr(tmp, "sadat");
                         saArr.add(tmp);
                         sadArr = new ArrayList<HashMap>();
@@ -432,20 +677,8 @@ public class DssatXFileInput extends DssatCommonInput {
 
                     } // Read SOIL ANALYSIS layer data
                     else if (flg[1].startsWith("a  sabl") && flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("", 2);         // P.S. ignore the data index "sa"
-                        formats.put("sllb", 6);     // P.S. changed from sabl  to sllb to match the soil variable name
-                        formats.put("slbdm", 6);    // P.S. changed from sabdm to slbdm to match the soil variable name
-                        formats.put("sloc", 6);     // P.S. changed from saoc  to sloc to match the soil variable name
-                        formats.put("slni", 6);     // P.S. changed from sani  to slni to match the soil variable name
-                        formats.put("slphw", 6);    // P.S. changed from saphw to slphw to match the soil variable name
-                        formats.put("slphb", 6);    // P.S. changed from saphb to slphb to match the soil variable name
-                        formats.put("slpx", 6);     // P.S. changed from sapx  to slpx to match the soil variable name
-                        formats.put("slke", 6);     // P.S. changed from sake  to slke to match the soil variable name
-                        formats.put("slsc", 6);     // P.S. changed from sasc  to slsc to match the soil variable name
                         // Read line and save into return holder
-                        sadArr.add(readLine(line, formats));
+                        sadArr.add(readLine(line, SOIL_ANALYSIS_LAYER_LAYOUT));
                     } else {
                     }
 
@@ -454,24 +687,8 @@ public class DssatXFileInput extends DssatCommonInput {
 
                     // Read INITIAL CONDITIONS global data
                     if (flg[1].startsWith("c   pcr") && flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("ic", 2);
-                        formats.put("icpcr", 6);
-                        formats.put("icdat", 6);
-                        formats.put("icrt", 6);
-                        formats.put("icnd", 6);
-                        formats.put("icrz#", 6);
-                        formats.put("icrze", 6);
-                        formats.put("icwt", 6);
-                        formats.put("icrag", 6);
-                        formats.put("icrn", 6);
-                        formats.put("icrp", 6);
-                        formats.put("icrip", 6);
-                        formats.put("icrdp", 6);
-                        formats.put("ic_name", line.length());
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, INITIAL_CONDITION_LAYOUT);
                         translateDateStr(tmp, "icdat");
                         Object icpcr = tmp.get("icpcr");
                         if (icpcr != null) {
@@ -483,15 +700,8 @@ public class DssatXFileInput extends DssatCommonInput {
 
                     } else // INITIAL CONDITIONS layer data
                     if (flg[1].startsWith("c  icbl") && flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("", 2);         // P.S. ignore the detail (event) data index "ic"
-                        formats.put("icbl", 6);
-                        formats.put("ich2o", 6);
-                        formats.put("icnh4", 6);
-                        formats.put("icno3", 6);
                         // Read line and save into return holder
-                        icdArr.add(readLine(line, formats));
+                        icdArr.add(readLine(line, INITIAL_CONDITION_LAYER_LAYOUT));
 
                     } else {
                     }
@@ -501,26 +711,8 @@ public class DssatXFileInput extends DssatCommonInput {
 
                     // Read PLANTING data
                     if (flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("pl", 2);
-                        formats.put("pdate", 6);
-                        formats.put("edate", 6);
-                        formats.put("plpop", 6);
-                        formats.put("plpoe", 6);
-                        formats.put("plma", 6);     // P.S. 2012.07.13 changed from plme to plma
-                        formats.put("plds", 6);
-                        formats.put("plrs", 6);
-                        formats.put("plrd", 6);
-                        formats.put("pldp", 6);
-                        formats.put("plmwt", 6);
-                        formats.put("page", 6);
-                        formats.put("plenv", 6);
-                        formats.put("plph", 6);
-                        formats.put("plspl", 6);
-                        formats.put("pl_name", line.length());
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, PLANTING_LAYOUT);
                         translateDateStr(tmp, "pdate");
                         translateDateStr(tmp, "edate");
                         // cm -> mm
@@ -542,19 +734,8 @@ public class DssatXFileInput extends DssatCommonInput {
 
                     // Read IRRIGATION global data
                     if ((flg[1].startsWith("i  efir") || flg4 % 2 == 1) && flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("ir", 2);
-                        formats.put("ireff", 6);
-                        formats.put("irmdp", 6);
-                        formats.put("irthr", 6);
-                        formats.put("irept", 6);
-                        formats.put("irstg", 6);
-                        formats.put("iame", 6);
-                        formats.put("iamt", 6);
-                        formats.put("ir_name", line.length());
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, IRRIGATION_LAYOUT);
                         ireff = (String) tmp.get("ireff");
                         if (ireff != null) {
                             tmp.remove("ireff");
@@ -565,14 +746,8 @@ public class DssatXFileInput extends DssatCommonInput {
 
                     } // Read IRRIGATION appliction data
                     else if (flg[1].startsWith("i idate") && flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("", 2);         // P.S. ignore the data index "ir"
-                        formats.put("idate", 6);
-                        formats.put("irop", 6);
-                        formats.put("irval", 6);
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, IRRIGATION_EVENT_LAYOUT);
                         //                    tmp.put("idate", translateDateStr((String) tmp.getOr("idate"))); // P.S. DOY handling
                         tmp.put("ireff", ireff);
                         irdArr.add(tmp);
@@ -585,22 +760,8 @@ public class DssatXFileInput extends DssatCommonInput {
 
                     // Read FERTILIZERS data
                     if (flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("fe", 2);
-                        formats.put("fdate", 6);
-                        formats.put("fecd", 6);
-                        formats.put("feacd", 6);
-                        formats.put("fedep", 6);
-                        formats.put("feamn", 6);
-                        formats.put("feamp", 6);
-                        formats.put("feamk", 6);
-                        formats.put("feamc", 6);
-                        formats.put("feamo", 6);
-                        formats.put("feocd", 6);
-                        formats.put("fe_name", line.length());
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, FERTILIZER_LAYOUT);
                         //                    translateDateStr(tmp, "fdate"); // P.S. DOY handling
                         feArr.add(tmp);
                     } else {
@@ -611,21 +772,8 @@ public class DssatXFileInput extends DssatCommonInput {
 
                     // Read ORGANIC MATERIALS data
                     if (flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("om", 2);
-                        formats.put("omdat", 6);    // P.S. id do not match with the master list "omday"
-                        formats.put("omcd", 6);
-                        formats.put("omamt", 6);
-                        formats.put("omn%", 6);
-                        formats.put("omp%", 6);
-                        formats.put("omk%", 6);
-                        formats.put("ominp", 6);
-                        formats.put("omdep", 6);
-                        formats.put("omacd", 6);
-                        formats.put("om_name", line.length());
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, RESIDUE_LAYOUT);
                         //                    translateDateStr(tmp, "omdat"); // P.S. DOY handling
                         omArr.add(tmp);
                     } else {
@@ -636,18 +784,8 @@ public class DssatXFileInput extends DssatCommonInput {
 
                     // Read CHEMICAL APPLICATIONS data
                     if (flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("ch", 2);
-                        formats.put("cdate", 6);
-                        formats.put("chcd", 6);
-                        formats.put("chamt", 6);
-                        formats.put("chacd", 6);
-                        formats.put("chdep", 6);
-                        formats.put("ch_targets", 6);
-                        formats.put("ch_name", line.length());
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, CHEMICAL_LAYOUT);
                         translateDateStr(tmp, "cdate");
                         chArr.add(tmp);
                     } else {
@@ -658,15 +796,8 @@ public class DssatXFileInput extends DssatCommonInput {
 
                     // Read TILLAGE data
                     if (flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("ti", 2);
-                        formats.put("tdate", 6);
-                        formats.put("tiimp", 6);
-                        formats.put("tidep", 6);
-                        formats.put("ti_name", line.length());
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, TILLAGE_LAYOUT);
                         translateDateStr(tmp, "tdate");
                         tiArr.add(tmp);
                     } else {
@@ -677,29 +808,8 @@ public class DssatXFileInput extends DssatCommonInput {
 
                     // Read ENVIRONMENT MODIFICATIONS data
                     if (flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("em", 2);
-                        //                    formats.put("emday", 6);
-                        //                    formats.put("ecdyl", 2);
-                        //                    formats.put("emdyl", 4);
-                        //                    formats.put("ecrad", 2);
-                        //                    formats.put("emrad", 4);
-                        //                    formats.put("ecmax", 2);
-                        //                    formats.put("emmax", 4);
-                        //                    formats.put("ecmin", 2);
-                        //                    formats.put("emmin", 4);
-                        //                    formats.put("ecrai", 2);
-                        //                    formats.put("emrai", 4);
-                        //                    formats.put("ecco2", 2);
-                        //                    formats.put("emco2", 4);
-                        //                    formats.put("ecdew", 2);
-                        //                    formats.put("emdew", 4);
-                        //                    formats.put("ecwnd", 2);
-                        //                    formats.put("emwnd", 4);
-                        //                    formats.put("em_name", line.length());
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, ENVIRONMENT_LAYOUT);
                         //                    translateDateStr(tmp, "emday");
                         tmp.put("em_data", line.substring(2));
                         emArr.add(tmp);
@@ -711,18 +821,8 @@ public class DssatXFileInput extends DssatCommonInput {
 
                     // Read HARVEST data
                     if (flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("ha", 2);
-                        formats.put("hadat", 6);
-                        formats.put("hastg", 6);
-                        formats.put("hacom", 6);
-                        formats.put("hasiz", 6);
-                        formats.put("hap%", 6);
-                        formats.put("hab%", 6);
-                        formats.put("ha_name", line.length());
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, HARVEST_LAYOUT);
                         translateDateStr(tmp, "hadat");
                         haArr.add(tmp);
                     } else {
@@ -733,228 +833,103 @@ public class DssatXFileInput extends DssatCommonInput {
 
                     // Read general info
                     if (flg[1].startsWith("n general") && flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("sm", 2);
-//                        formats.put("sm_general", line.length());
-                        formats.put("null", 12);
-                        formats.put("nyers", 6);
-                        formats.put("nreps", 6);
-                        formats.put("start", 6);
-                        formats.put("sdyer", 3);
-                        formats.put("sdday", 3);
-                        formats.put("rseed", 6);
-                        formats.put("sname", 26);
-                        formats.put("model", line.length());
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, SM_GENERAL_LAYOUT);
                         HashMap smData = new HashMap();
                         Object sm = tmp.remove("sm");
                         smData.put("sm", sm);
                         smData.put("general", tmp);
-                        addToArray(smArr, smData, "sm");
+                        smMerger.merge(smData);
 
                     } // Read options info
                     else if (flg[1].startsWith("n options") && flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("sm", 2);
-//                        formats.put("sm_options", line.length());
-                        formats.put("null", 12);
-                        formats.put("water", 6);
-                        formats.put("nitro", 6);
-                        formats.put("symbi", 6);
-                        formats.put("phosp", 6);
-                        formats.put("potas", 6);
-                        formats.put("dises", 6);
-                        formats.put("chem", 6);
-                        formats.put("till", 6);
-                        formats.put("co2", 6);
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, SM_OPTIONS_LAYOUT);
                         HashMap smData = new HashMap();
                         Object sm = tmp.remove("sm");
                         smData.put("sm", sm);
                         smData.put("options", tmp);
-                        addToArray(smArr, smData, "sm");
+                        smMerger.merge(smData);
 
                     } // Read methods info
                     else if (flg[1].startsWith("n methods") && flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("sm", 2);
-//                        formats.put("sm_methods", line.length());
-                        formats.put("null", 12);
-                        formats.put("wther", 6);
-                        formats.put("incon", 6);
-                        formats.put("light", 6);
-                        formats.put("evapo", 6);
-                        formats.put("infil", 6);
-                        formats.put("photo", 6);
-                        formats.put("hydro", 6);
-                        formats.put("nswit", 6);
-                        formats.put("mesom", 6);
-                        formats.put("mesev", 6);
-                        formats.put("mesol", 6);
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, SM_METHODS_LAYOUT);
                         HashMap smData = new HashMap();
                         Object sm = tmp.remove("sm");
                         smData.put("sm", sm);
                         smData.put("methods", tmp);
-                        addToArray(smArr, smData, "sm");
+                        smMerger.merge(smData);
 
                     } // Read management info
                     else if (flg[1].startsWith("n management") && flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("sm", 2);
-//                        formats.put("sm_management", line.length());
-                        formats.put("null", 12);
-                        formats.put("plant", 6);
-                        formats.put("irrig", 6);
-                        formats.put("ferti", 6);
-                        formats.put("resid", 6);
-                        formats.put("harvs", 6);
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, SM_MANAGEMENT_LAYOUT);
                         HashMap smData = new HashMap();
                         Object sm = tmp.remove("sm");
                         smData.put("sm", sm);
                         smData.put("management", tmp);
-                        addToArray(smArr, smData, "sm");
+                        smMerger.merge(smData);
 
                     } // Read outputs info
                     else if (flg[1].startsWith("n outputs") && flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("sm", 2);
-//                        formats.put("sm_outputs", line.length());
-                        formats.put("null", 12);
-                        formats.put("fname", 6);
-                        formats.put("ovvew", 6);
-                        formats.put("sumry", 6);
-                        formats.put("fropt", 6);
-                        formats.put("grout", 6);
-                        formats.put("caout", 6);
-                        formats.put("waout", 6);
-                        formats.put("niout", 6);
-                        formats.put("miout", 6);
-                        formats.put("diout", 6);
-                        formats.put("vbose", 6);
-                        formats.put("chout", 6);
-                        formats.put("opout", 6);
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, SM_OUTPUTS_LAYOUT);
                         HashMap smData = new HashMap();
                         Object sm = tmp.remove("sm");
                         smData.put("sm", sm);
                         smData.put("outputs", tmp);
-                        addToArray(smArr, smData, "sm");
+                        smMerger.merge(smData);
 
                     } // Read planting info
                     else if (flg[1].startsWith("n planting") && flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("sm", 2);
-//                        formats.put("sm_planting", line.length());
-                        formats.put("null", 12);
-                        formats.put("pfyer", 3);
-                        formats.put("pfday", 3);
-                        formats.put("plyer", 3);
-                        formats.put("plday", 3);
-                        formats.put("ph2ol", 6);
-                        formats.put("ph2ou", 6);
-                        formats.put("ph2od", 6);
-                        formats.put("pstmx", 6);
-                        formats.put("pstmn", 6);
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, SM_PLANTING_LAYOUT);
                         HashMap smData = new HashMap();
                         Object sm = tmp.remove("sm");
                         smData.put("sm", sm);
                         smData.put("planting", tmp);
-                        addToArray(smArr, smData, "sm");
+                        smMerger.merge(smData);
 
                     } // Read irrigation info
                     else if (flg[1].startsWith("n irrigation") && flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("sm", 2);
-//                        formats.put("sm_irrigation", line.length());
-                        formats.put("null", 12);
-                        formats.put("imdep", 6);
-                        formats.put("ithrl", 6);
-                        formats.put("ithru", 6);
-                        formats.put("iroff", 6);
-                        formats.put("imeth", 6);
-                        formats.put("iramt", 6);
-                        formats.put("ireff", 6);
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, SM_IRRIGATION_LAYOUT);
                         HashMap smData = new HashMap();
                         Object sm = tmp.remove("sm");
                         smData.put("sm", sm);
                         smData.put("irrigation", tmp);
-                        addToArray(smArr, smData, "sm");
+                        smMerger.merge(smData);
 
                     } // Read nitrogen info
                     else if (flg[1].startsWith("n nitrogen") && flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("sm", 2);
-//                        formats.put("sm_nitrogen", line.length());
-                        formats.put("null", 12);
-                        formats.put("nmdep", 6);
-                        formats.put("nmthr", 6);
-                        formats.put("namnt", 6);
-                        formats.put("ncode", 6);
-                        formats.put("naoff", 6);
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, SM_NITROGEN_LAYOUT);
                         HashMap smData = new HashMap();
                         Object sm = tmp.remove("sm");
                         smData.put("sm", sm);
                         smData.put("nitrogen", tmp);
-                        addToArray(smArr, smData, "sm");
+                        smMerger.merge(smData);
 
                     } // Read residues info
                     else if (flg[1].startsWith("n residues") && flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("sm", 2);
-//                        formats.put("sm_residues", line.length());
-                        formats.put("null", 12);
-                        formats.put("ripcn", 6);
-                        formats.put("rtime", 6);
-                        formats.put("ridep", 6);
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, SM_RESIDUES_LAYOUT);
                         HashMap smData = new HashMap();
                         Object sm = tmp.remove("sm");
                         smData.put("sm", sm);
                         smData.put("residues", tmp);
-                        addToArray(smArr, smData, "sm");
+                        smMerger.merge(smData);
 
                     } // Read harvest info
                     else if (flg[1].startsWith("n harvest") && flg[2].equals("data")) {
-                        // Set variables' formats
-                        formats.clear();
-                        formats.put("sm", 2);
-//                        formats.put("sm_harvests", line.length());
-                        formats.put("null", 12);
-                        formats.put("hfrst", 6);    // P.S. Keep the original value
-                        formats.put("hlyer", 3);
-                        formats.put("hlday", 3);
-                        formats.put("hpcnp", 6);
-                        formats.put("hpcnr", 6);
                         // Read line and save into return holder
-                        HashMap tmp = readLine(line, formats);
+                        HashMap tmp = readLine(line, SM_HARVEST_LAYOUT);
                         HashMap smData = new HashMap();
                         Object sm = tmp.remove("sm");
                         smData.put("sm", sm);
                         smData.put("harvests", tmp);
-                        addToArray(smArr, smData, "sm");
+                        smMerger.merge(smData);
 
                     } else {
                     }
@@ -968,6 +943,21 @@ public class DssatXFileInput extends DssatCommonInput {
                 brw.close();
             }
 
+            // Resolve the factor levels once for all the treatments
+            HashMap<String, Object> cuLevels = getLevelTable(cuArr, "ge");
+            HashMap<String, Object> flLevels = getLevelTable(flArr, "fl");
+            HashMap<String, Object> saLevels = getLevelTable(saArr, "sa");
+            HashMap<String, Object> icLevels = getLevelTable(icArr, "ic");
+            HashMap<String, Object> plLevels = getLevelTable(plArr, "pl");
+            HashMap<String, Object> irLevels = getLevelTable(irArr, "ir");
+            HashMap<String, Object> feLevels = getLevelTable(feArr, "fe");
+            HashMap<String, Object> omLevels = getLevelTable(omArr, "om");
+            HashMap<String, Object> chLevels = getLevelTable(chArr, "ch");
+            HashMap<String, Object> tiLevels = getLevelTable(tiArr, "ti");
+            HashMap<String, Object> emLevels = getLevelTable(emArr, "em");
+            HashMap<String, Object> haLevels = getLevelTable(haArr, "ha");
+            HashMap<String, Object> smLevels = getLevelTable(smArr, "sm");
+
             // Combine all the sections data into the related treatment block
             String trno = null;
             HashMap dssatSq;
@@ -1007,19 +997,19 @@ public class DssatXFileInput extends DssatCommonInput {
                 HashMap crData = new HashMap();
                 if (!getObjectOr(sqData, "ge", "0").equals("0")) {
                     // Get related cultivar data
-                    crData = (HashMap) getSectionDataObj(cuArr, "ge", sqData.get("ge").toString());
+                    crData = (HashMap) getSectionDataObj(cuLevels, "ge", sqData.get("ge").toString());
                 }
 
                 // field
                 if (!getObjectOr(sqData, "fl", "0").equals("0")) {
                     // Move field info into meta data block
-                    trMetaData.putAll((HashMap) getSectionDataObj(flArr, "fl", sqData.get("fl").toString()));
+                    copyLevelItems(trMetaData, (HashMap) getSectionDataObj(flLevels, "fl", sqData.get("fl").toString()));
                     trMetaData.remove("fl");
                 }
 
                 // initial_condition
                 if (!getObjectOr(sqData, "ic", "0").equals("0")) {
-                    HashMap icTmpArr = (HashMap) getSectionDataObj(icArr, "ic", sqData.get("ic").toString());
+                    HashMap icTmpArr = (HashMap) getSectionDataObj(icLevels, "ic", sqData.get("ic").toString());
                     if (!icTmpArr.isEmpty()) {
                         trData.put("initial_conditions", icTmpArr);
                     }
@@ -1030,11 +1020,11 @@ public class DssatXFileInput extends DssatCommonInput {
                 boolean isFallow = false;
                 if (!getObjectOr(sqData, "pl", "0").equals("0")) {
                     // add event data into array
-                    addEvent(evtArr, (HashMap) getSectionDataObj(plArr, "pl", sqData.get("pl").toString()), "pdate", "planting", seqid);
+                    addEvent(evtArr, (HashMap) getSectionDataObj(plLevels, "pl", sqData.get("pl").toString()), "pdate", "planting", seqid);
 
                     // add cultivar data into planting event
                     if (crData != null) {
-                        evtArr.get(evtArr.size() - 1).putAll(crData);
+                        copyLevelItems(evtArr.get(evtArr.size() - 1), crData);
                     }
                     // Get planting date for DOY value handling
                     pdate = getValueOr(evtArr.get(evtArr.size() - 1), "date", "");
@@ -1049,7 +1039,7 @@ public class DssatXFileInput extends DssatCommonInput {
                 HashMap<String, String> smManagement = new HashMap();
                 if (!getObjectOr(sqData, "sm", "0").equals("0")) {
                     String sm = (String) sqData.get("sm");
-                    HashMap smData = (HashMap) getSectionDataObj(smArr, "sm", sm);
+                    HashMap smData = (HashMap) getSectionDataObj(smLevels, "sm", sm);
                     // Set SDAT
                     HashMap smGeneral = getObjectOr(smData, "general", new HashMap());
                     String sdyer = getValueOr(smGeneral, "sdyer", "");
@@ -1079,43 +1069,33 @@ public class DssatXFileInput extends DssatCommonInput {
                 // irrigation
                 if (!getObjectOr(sqData, "ir", "0").equals("0")) {
                     // Date adjust based on realted treatment info (handling for DOY type value)
-                    HashMap irTmp = (HashMap) getSectionDataObj(irArr, "ir", sqData.get("ir").toString());
-                    ArrayList<HashMap> irTmpSubs = getObjectOr(irTmp, "data", new ArrayList());
-                    for (HashMap irTmpSub : irTmpSubs) {
-                        translateDateStrForDOY(irTmpSub, "idate", pdate, smManagement.get("irrig"));
-                    }
-
+                    HashMap irTmp = (HashMap) getSectionDataObj(irLevels, "ir", sqData.get("ir").toString());
                     // add event data into array
-                    addEvent(evtArr, irTmp, "idate", "irrigation", seqid);
+                    addEvent(evtArr, irTmp, "idate", "irrigation", seqid, pdate, smManagement.get("irrig"));
                 }
 
                 // fertilizer
                 if (!getObjectOr(sqData, "fe", "0").equals("0")) {
 
-                    ArrayList<HashMap> feTmps = (ArrayList) getSectionDataObj(feArr, "fe", sqData.get("fe").toString());
+                    ArrayList<HashMap> feTmps = (ArrayList) getSectionDataObj(feLevels, "fe", sqData.get("fe").toString());
                     for (HashMap feTmp : feTmps) {
-                        // Date adjust based on realted treatment info (handling for DOY type value)
-                        translateDateStrForDOY(feTmp, "fdate", pdate, smManagement.get("ferti"));
-
-                        // add event data into array
-                        addEvent(evtArr, feTmp, "fdate", "fertilizer", seqid);
+                        // add event data into array, with date adjust based on realted treatment info (handling for DOY type value)
+                        addEvent(evtArr, feTmp, "fdate", "fertilizer", seqid, pdate, smManagement.get("ferti"));
                     }
                 }
 
                 // organic_matter
                 if (!getObjectOr(sqData, "om", "0").equals("0")) {
-                    ArrayList<HashMap> omTmps = (ArrayList) getSectionDataObj(omArr, "om", sqData.get("om").toString());
+                    ArrayList<HashMap> omTmps = (ArrayList) getSectionDataObj(omLevels, "om", sqData.get("om").toString());
                     for (HashMap omTmp : omTmps) {
-                        // Date adjust based on realted treatment info (handling for DOY type value)
-                        translateDateStrForDOY(omTmp, "omdat", pdate, smManagement.get("resid"));
-                        // add event data into array
-                        addEvent(evtArr, omTmp, "omdat", "organic_matter", seqid); // P.S. change event name to organic-materials; Back to organic_matter again
+                        // add event data into array, with date adjust based on realted treatment info (handling for DOY type value)
+                        addEvent(evtArr, omTmp, "omdat", "organic_matter", seqid, pdate, smManagement.get("resid")); // P.S. change event name to organic-materials; Back to organic_matter again
                     }
                 }
 
                 // chemical
                 if (!getObjectOr(sqData, "ch", "0").equals("0")) {
-                    ArrayList<HashMap> chTmps = (ArrayList) getSectionDataObj(chArr, "ch", sqData.get("ch").toString());
+                    ArrayList<HashMap> chTmps = (ArrayList) getSectionDataObj(chLevels, "ch", sqData.get("ch").toString());
                     for (HashMap chTmp : chTmps) {
                         // add event data into array
                         addEvent(evtArr, chTmp, "cdate", "chemical", seqid);
@@ -1124,7 +1104,7 @@ public class DssatXFileInput extends DssatCommonInput {
 
                 // tillage
                 if (!getObjectOr(sqData, "ti", "0").equals("0")) {
-                    ArrayList<HashMap> tiTmps = (ArrayList) getSectionDataObj(tiArr, "ti", sqData.get("ti").toString());
+                    ArrayList<HashMap> tiTmps = (ArrayList) getSectionDataObj(tiLevels, "ti", sqData.get("ti").toString());
                     for (HashMap tiTmp : tiTmps) {
                         // add event data into array
                         addEvent(evtArr, tiTmp, "tdate", "tillage", seqid);
@@ -1134,7 +1114,7 @@ public class DssatXFileInput extends DssatCommonInput {
                 // emvironment  // P.S. keep for furture using
                 if (!getObjectOr(sqData, "em", "0").equals("0")) {
                     String em = (String) sqData.get("em");
-                    ArrayList<HashMap> emDataArr = (ArrayList) getSectionDataObj(emArr, "em", em);
+                    ArrayList<HashMap> emDataArr = (ArrayList) getSectionDataObj(emLevels, "em", em);
 //                ArrayList arr = new ArrayList();
 //                for (int j = 0; j < emDataArr.size(); j++) {
 //                    arr.add(emDataArr.get(j).get("em_data"));
@@ -1160,14 +1140,14 @@ public class DssatXFileInput extends DssatCommonInput {
                 // harvest
                 if (!getObjectOr(sqData, "ha", "0").equals("0")) {
                     // add event data into array
-                    HashMap haData = (HashMap) getSectionDataObj(haArr, "ha", sqData.get("ha").toString());
+                    HashMap haData = (HashMap) getSectionDataObj(haLevels, "ha", sqData.get("ha").toString());
                     addEvent(evtArr, haData, "hadat", "harvest", seqid);
                     copyItem(trMetaData, haData, "endat", "hadat", false);
                 }
 
                 // soil_analysis
                 if (!getObjectOr(sqData, "sa", "0").equals("0")) {
-                    HashMap saTmp = (HashMap) getSectionDataObj(saArr, "sa", sqData.get("sa").toString());
+                    HashMap saTmp = (HashMap) getSectionDataObj(saLevels, "sa", sqData.get("sa").toString());
 //                ArrayList<HashMap> saSubArr = getObjectOr(saTmp, icEventKey, new ArrayList());
 
                     // temporally put soil_analysis block into treatment meta data
@@ -1228,55 +1208,73 @@ public class DssatXFileInput extends DssatCommonInput {
     }
 
     /**
-     * Get the section data by given index value and key
+     * Build the table of factor levels for the section, each level is resolved
+     * once and shared by all the treatments referring to it
      *
      * @param secArr Section data array
      * @param key index variable name
-     * @param value index variable value
+     * @return the map of resolved level by index variable value
      */
-    private Object getSectionDataObj(ArrayList secArr, Object key, String value) {
-
-        ArrayList ret = new ArrayList();
-        // Define the section with single sub data
-        ArrayList singleSubRecSecList = new ArrayList();
-        singleSubRecSecList.add("ge");
-        singleSubRecSecList.add("fl");
-        singleSubRecSecList.add("pl");
-        singleSubRecSecList.add("ha");
-        singleSubRecSecList.add("sm");
-        // Get First data node
-        if (secArr.isEmpty() || value == null) {
-            if (key.equals("icbl") || key.equals("ir") || key.equals("ic") || key.equals("sa") || singleSubRecSecList.contains(key)) {
-                return new HashMap();
-            } else {
-                return ret;
-            }
-        }
+    private HashMap<String, Object> getLevelTable(ArrayList secArr, String key) {
 
-        if (key.equals("icbl")) {
-            return getSectionDataWithNocopy(secArr, key, value);
-        } else {
-            HashMap fstNode = (HashMap) secArr.get(0);
-            // If it contains multiple sub array of data, or it does not have multiple sub records
-            if (fstNode.containsKey(eventKey) || fstNode.containsKey(icEventKey) || singleSubRecSecList.contains(key)) {
-                for (Object secData : secArr) {
-                    if (value.equals(((HashMap) secData).get(key))) {
-                        return CopyList((HashMap) secData);
-                    }
+        HashMap<String, Object> ret = new HashMap<String, Object>();
+        if (secArr.isEmpty()) {
+            return ret;
+        }
+        HashMap fstNode = (HashMap) secArr.get(0);
+        // If it contains multiple sub array of data, or it does not have multiple sub records
+        boolean isSingleRec = fstNode.containsKey(eventKey) || fstNode.containsKey(icEventKey) || SINGLE_SUB_REC_SECS.contains(key);
+        for (Object secData : secArr) {
+            Object level = ((HashMap) secData).get(key);
+            if (level == null) {
+                continue;
+            }
+            if (isSingleRec) {
+                if (!ret.containsKey(level.toString())) {
+                    ret.put(level.toString(), secData);
                 }
-
             } // If it is simple array
             else {
-                HashMap node;
-                for (Object secData : secArr) {
-                    node = (HashMap) secData;
-                    if (value.equals(node.get(key))) {
-                        ret.add(CopyList(node));
-                    }
+                ArrayList levelArr = (ArrayList) ret.get(level.toString());
+                if (levelArr == null) {
+                    levelArr = new ArrayList();
+                    ret.put(level.toString(), levelArr);
                 }
+                levelArr.add(secData);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Get the section data by given index value and key. The factor levels are
+     * shared by the treatments and should be read only, except the ones put
+     * into the treatment blocks directly (initial condition, simulation control
+     * and environment modification), which are copied.
+     *
+     * @param levels the level table built by getLevelTable
+     * @param key index variable name
+     * @param value index variable value
+     */
+    private Object getSectionDataObj(HashMap<String, Object> levels, String key, String value) {
+
+        Object ret = value == null ? null : levels.get(value);
+        if (ret == null) {
+            if (key.equals("ir") || key.equals("ic") || key.equals("sa") || SINGLE_SUB_REC_SECS.contains(key)) {
+                return new HashMap();
+            } else {
+                return new ArrayList();
             }
         }
 
+        if (key.equals("ic") || key.equals("sm") || key.equals("em")) {
+            if (ret instanceof HashMap) {
+                return CopyList((HashMap) ret);
+            } else {
+                return CopyList((ArrayList) ret);
+            }
+        }
         return ret;
     }
 
@@ -1284,41 +1282,105 @@ public class DssatXFileInput extends DssatCommonInput {
      * Add event data into event array from input data holder (map)
      *
      * @param events event array
-     * @param mCopy input map
+     * @param m input map
      * @param dateId the key name of event date variable
      * @param eventName the event name
      * @param seqId the sequence id for DSSAT
      */
     private void addEvent(ArrayList events, HashMap m, String dateId, String eventName, int seqId) {
+        addEvent(events, m, dateId, eventName, seqId, null, null);
+    }
+
+    /**
+     * Add event data into event array from input data holder (map), the input
+     * map is the shared factor level and is kept unchanged
+     *
+     * @param events event array
+     * @param m input map
+     * @param dateId the key name of event date variable
+     * @param eventName the event name
+     * @param seqId the sequence id for DSSAT
+     * @param pdate the related planting date for DOY type date, null for no
+     * translation
+     * @param smMgnFlg the simulation control flag
+     */
+    private void addEvent(ArrayList events, HashMap m, String dateId, String eventName, int seqId, String pdate, String smMgnFlg) {
 
         HashMap<String, String> ret = new HashMap<String, String>();
-        HashMap mCopy = CopyList(m);
-        if (mCopy.containsKey(dateId)) {
-            ret.put("date", mCopy.remove(dateId).toString());
+        boolean hasSubs = m.get(eventKey) instanceof ArrayList;
+        String date = getEventDate(m, dateId, hasSubs ? null : pdate, smMgnFlg);
+        if (date != null) {
+            ret.put("date", date);
         }
         ret.put("event", eventName);
-        if (mCopy.containsKey(eventKey)) {
-            ArrayList<HashMap> subArr = (ArrayList) mCopy.remove(eventKey);
+        if (hasSubs) {
+            ArrayList<HashMap> subArr = (ArrayList) m.get(eventKey);
 
-            if (subArr == null || subArr.isEmpty()) {
-                ret.putAll(mCopy);
+            if (subArr.isEmpty()) {
+                copyLevelItems(ret, m, dateId, eventKey);
                 events.add(ret);
             }
 
             for (HashMap tmp : subArr) {
-                ret.put("date", tmp.remove(dateId).toString());
-                ret.putAll(mCopy);
-                ret.putAll(tmp);
+                ret.put("date", getEventDate(tmp, dateId, pdate, smMgnFlg));
+                copyLevelItems(ret, m, dateId, eventKey);
+                copyLevelItems(ret, tmp, dateId);
                 ret.put("seqid", seqId + "");
                 events.add(CopyList(ret));
             }
         } else {
-            ret.putAll(mCopy);
+            copyLevelItems(ret, m, dateId, eventKey);
             ret.put("seqid", seqId + "");
             events.add(ret);
         }
     }
 
+    /**
+     * Get the event date from the factor level, with DOY type value
+     * translated when the planting date is given
+     *
+     * @param m input map
+     * @param dateId the key name of event date variable
+     * @param pdate the related planting date, null for no translation
+     * @param smMgnFlg the simulation control flag
+     * @return the date string, or null if not available
+     */
+    private String getEventDate(HashMap m, String dateId, String pdate, String smMgnFlg) {
+        Object date = m.get(dateId);
+        if (pdate != null) {
+            date = translateDateStrForDOY((String) date, dateId, pdate, smMgnFlg);
+        }
+        if (date instanceof String) {
+            return (String) date;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Copy the items of shared factor level into the target map, the nested
+     * blocks are copied so that the level is kept unchanged
+     *
+     * @param to the target map
+     * @param from the factor level
+     * @param excludedKeys the keys which are not copied
+     */
+    private void copyLevelItems(HashMap to, HashMap from, String... excludedKeys) {
+        for (Object key : from.keySet()) {
+            if (Arrays.asList(excludedKeys).contains(key)) {
+                continue;
+            }
+            Object val = from.get(key);
+            if (val instanceof String) {
+                to.put(key, val);
+            } else if (val instanceof HashMap) {
+                to.put(key, CopyList((HashMap) val));
+            } else if (val instanceof ArrayList) {
+                to.put(key, CopyList((ArrayList) val));
+            }
+        }
+    }
+
     /**
      * Setup the meta data block for the treatment
      *
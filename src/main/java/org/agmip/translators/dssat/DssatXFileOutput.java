@@ -2,7 +2,6 @@ package org.agmip.translators.dssat;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
@@ -49,7 +48,6 @@ public class DssatXFileOutput extends DssatCommonOutput {
         StringBuilder eventPart2 = new StringBuilder();                   // output string for second part of event data
         HashMap sqData;
         ArrayList<HashMap> evtArr;            // Arraylist for section data holder
-        HashMap evtData;
 //        int trmnNum;                            // total numbers of treatment in the data holder
         int cuNum;                              // total numbers of cultivars in the data holder
         int flNum;                              // total numbers of fields in the data holder
@@ -78,6 +76,20 @@ public class DssatXFileOutput extends DssatCommonOutput {
         ArrayList<ArrayList<HashMap>> meArr = new ArrayList();     // array for enveronment modification record
         ArrayList<ArrayList<HashMap>> mhArr = new ArrayList();   // array for harvest record
         ArrayList<HashMap> smArr = new ArrayList();     // array for simulation control record
+        // index of the records by content for each array above
+        HashMap<Object, Integer> cuIdx = new HashMap();
+        HashMap<Object, Integer> flIdx = new HashMap();
+        HashMap<Object, Integer> saIdx = new HashMap();
+        HashMap<Object, Integer> icIdx = new HashMap();
+        HashMap<Object, Integer> mpIdx = new HashMap();
+        HashMap<Object, Integer> miIdx = new HashMap();
+        HashMap<Object, Integer> mfIdx = new HashMap();
+        HashMap<Object, Integer> mrIdx = new HashMap();
+        HashMap<Object, Integer> mcIdx = new HashMap();
+        HashMap<Object, Integer> mtIdx = new HashMap();
+        HashMap<Object, Integer> meIdx = new HashMap();
+        HashMap<Object, Integer> mhIdx = new HashMap();
+        HashMap<Object, Integer> smIdx = new HashMap();
 //        String exName;
         boolean isFallow = false;
 
@@ -87,6 +99,9 @@ public class DssatXFileOutput extends DssatCommonOutput {
             if (expData == null || expData.isEmpty()) {
                 return;
             }
+
+            // Share the file names with the other writers of the directory if the writer is not in a job
+            useDirectorySession(arg0);
 //            decompressData((HashMap) result);
             setDefVal();
 
@@ -94,7 +109,7 @@ public class DssatXFileOutput extends DssatCommonOutput {
             String fileName = getFileName(result, "X");
             arg0 = revisePath(arg0);
             outputFile = new File(arg0 + fileName);
-            bwX = new BufferedWriter(new FileWriter(outputFile));
+            bwX = openWriter(outputFile, false);
 
             // Output XFile
             // EXP.DETAILS Section
@@ -182,6 +197,9 @@ public class DssatXFileOutput extends DssatCommonOutput {
                 sqArr.add(new HashMap());
             }
 
+            // Group the events by sequence number and event type
+            HashMap<String, HashMap<String, ArrayList<HashMap>>> evtIndex = getEventIndex(evtArr);
+
             // Set sequence related block info
             for (int i = 0; i < sqArr.size(); i++) {
                 sqData = sqArr.get(i);
@@ -284,10 +302,10 @@ public class DssatXFileOutput extends DssatCommonOutput {
                 if (soilId.length() > 10 && soilId.matches("\\w+_\\d+") || soilId.length() < 8) {
                     flData.put("soil_id", getSoilID(flData));
                 }
-                flNum = setSecDataArr(flData, flArr);
+                flNum = setSecDataArr(flData, flArr, flIdx);
 
                 // Set initial condition info
-                icNum = setSecDataArr(getObjectOr(rootData, "initial_conditions", new HashMap()), icArr);
+                icNum = setSecDataArr(getObjectOr(rootData, "initial_conditions", new HashMap()), icArr, icIdx);
 
                 // Set environment modification info
                 for (HashMap meOrgArr1 : meOrgArr) {
@@ -331,7 +349,7 @@ public class DssatXFileOutput extends DssatCommonOutput {
                     }
                     copyItem(saData, soilData, "sadat");
                     saData.put("soilLayer", saSubArr);
-                    saNum = setSecDataArr(saData, saArr);
+                    saNum = setSecDataArr(saData, saArr, saIdx);
                 } else {
                     saNum = 0;
                 }
@@ -352,70 +370,56 @@ public class DssatXFileOutput extends DssatCommonOutput {
                 copyItem(smData, rootData, "sdat");
                 copyItem(smData, getObjectOr(wthData, "weather", new HashMap()), "co2y");
 
-                // Loop all event data
-                for (HashMap evtArr1 : evtArr) {
-                    evtData = new HashMap();
-                    evtData.putAll(evtArr1);
-                    // Check if it has same sequence number
-                    if (getValueOr(evtData, "seqid", defValBlank).equals(seqId)) {
-                        evtData.remove("seqid");
-
-                        // Planting event
-                        if (getValueOr(evtData, "event", defValBlank).equals("planting")) {
-                            // Set cultivals info
-                            copyItem(cuData, evtData, "cul_name");
-                            copyItem(cuData, evtData, "crid");
-                            copyItem(cuData, evtData, "cul_id");
-                            copyItem(cuData, evtData, "dssat_cul_id");
-                            copyItem(cuData, evtData, "rm");
-                            copyItem(cuData, evtData, "cul_notes");
-                            translateTo2BitCrid(cuData);
-                            // Set planting info
-                            // To make comparision only on the planting information (without crop data), use HashMap to rebuild pure planting map
-                            copyItem(mpData, evtData, "date");
-                            copyItem(mpData, evtData, "edate");
-                            copyItem(mpData, evtData, "plpop");
-                            copyItem(mpData, evtData, "plpoe");
-                            copyItem(mpData, evtData, "plma");
-                            copyItem(mpData, evtData, "plds");
-                            copyItem(mpData, evtData, "plrs");
-                            copyItem(mpData, evtData, "plrd");
-                            copyItem(mpData, evtData, "pldp");
-                            copyItem(mpData, evtData, "plmwt");
-                            copyItem(mpData, evtData, "page");
-                            copyItem(mpData, evtData, "plenv");
-                            copyItem(mpData, evtData, "plph");
-                            copyItem(mpData, evtData, "plspl");
-                            copyItem(mpData, evtData, "pl_name");
-                        } // irrigation event
-                        else if (getValueOr(evtData, "event", "").equals("irrigation")) {
-                            miSubArr.add(evtData);
-                        } // fertilizer event
-                        else if (getValueOr(evtData, "event", "").equals("fertilizer")) {
-                            mfSubArr.add(evtData);
-                        } // organic_matter event
-                        else if (getValueOr(evtData, "event", "").equals("organic_matter")) {   // P.S. change event name to organic-materials; Back to organic_matter again.
-                            mrSubArr.add(evtData);
-                        } // chemical event
-                        else if (getValueOr(evtData, "event", "").equals("chemical")) {
-                            mcSubArr.add(evtData);
-                        } // tillage event
-                        else if (getValueOr(evtData, "event", "").equals("tillage")) {
-                            mtSubArr.add(evtData);
-//                        } // environment_modification event
-//                        else if (getValueOr(evtData, "event", "").equals("environment_modification")) {
-//                            meSubArr.add(evtData);
-                        } // harvest event
-                        else if (getValueOr(evtData, "event", "").equals("harvest")) {
-                            mhSubArr.add(evtData);
-                            if (!getValueOr(evtData, "date", "").trim().equals("")) {
-                                smData.put("hadat_valid", "Y");
-                            }
-//                            copyItem(smData, evtData, "hadat", "date", false);
-                        } else {
-                        }
-                    } else {
+                // Get the events with same sequence number
+                HashMap<String, ArrayList<HashMap>> seqEvts = getObjectOr(evtIndex, seqId, new HashMap());
+
+                // Planting event
+                for (HashMap evtData : getObjectOr(seqEvts, "planting", new ArrayList<HashMap>())) {
+                    // Set cultivals info
+                    copyItem(cuData, evtData, "cul_name");
+                    copyItem(cuData, evtData, "crid");
+                    copyItem(cuData, evtData, "cul_id");
+                    copyItem(cuData, evtData, "dssat_cul_id");
+                    copyItem(cuData, evtData, "rm");
+                    copyItem(cuData, evtData, "cul_notes");
+                    translateTo2BitCrid(cuData);
+                    // Set planting info
+                    // To make comparision only on the planting information (without crop data), use HashMap to rebuild pure planting map
+                    copyItem(mpData, evtData, "date");
+                    copyItem(mpData, evtData, "edate");
+                    copyItem(mpData, evtData, "plpop");
+                    copyItem(mpData, evtData, "plpoe");
+                    copyItem(mpData, evtData, "plma");
+                    copyItem(mpData, evtData, "plds");
+                    copyItem(mpData, evtData, "plrs");
+                    copyItem(mpData, evtData, "plrd");
+                    copyItem(mpData, evtData, "pldp");
+                    copyItem(mpData, evtData, "plmwt");
+                    copyItem(mpData, evtData, "page");
+                    copyItem(mpData, evtData, "plenv");
+                    copyItem(mpData, evtData, "plph");
+                    copyItem(mpData, evtData, "plspl");
+                    copyItem(mpData, evtData, "pl_name");
+                }
+                // irrigation event
+                miSubArr.addAll(getObjectOr(seqEvts, "irrigation", new ArrayList<HashMap>()));
+                // fertilizer event
+                mfSubArr.addAll(getObjectOr(seqEvts, "fertilizer", new ArrayList<HashMap>()));
+                // organic_matter event
+                mrSubArr.addAll(getObjectOr(seqEvts, "organic_matter", new ArrayList<HashMap>()));   // P.S. change event name to organic-materials; Back to organic_matter again.
+                // chemical event
+                mcSubArr.addAll(getObjectOr(seqEvts, "chemical", new ArrayList<HashMap>()));
+                // tillage event
+                mtSubArr.addAll(getObjectOr(seqEvts, "tillage", new ArrayList<HashMap>()));
+//                // environment_modification event
+//                meSubArr.addAll(getObjectOr(seqEvts, "environment_modification", new ArrayList<HashMap>()));
+                // harvest event
+                mhSubArr.addAll(getObjectOr(seqEvts, "harvest", new ArrayList<HashMap>()));
+                for (HashMap evtData : mhSubArr) {
+                    if (!getValueOr(evtData, "date", "").trim().equals("")) {
+                        smData.put("hadat_valid", "Y");
                     }
+//                    copyItem(smData, evtData, "hadat", "date", false);
                 }
 
                 // Cancel for assume default value handling
@@ -442,16 +446,16 @@ public class DssatXFileOutput extends DssatCommonOutput {
                     }
                 }
 
-                cuNum = setSecDataArr(cuData, cuArr);
-                mpNum = setSecDataArr(mpData, mpArr);
-                miNum = setSecDataArr(miSubArr, miArr);
-                mfNum = setSecDataArr(mfSubArr, mfArr);
-                mrNum = setSecDataArr(mrSubArr, mrArr);
-                mcNum = setSecDataArr(mcSubArr, mcArr);
-                mtNum = setSecDataArr(mtSubArr, mtArr);
-                meNum = setSecDataArr(meSubArr, meArr);
-                mhNum = setSecDataArr(mhSubArr, mhArr);
-                smNum = setSecDataArr(smData, smArr);
+                cuNum = setSecDataArr(cuData, cuArr, cuIdx);
+                mpNum = setSecDataArr(mpData, mpArr, mpIdx);
+                miNum = setSecDataArr(miSubArr, miArr, miIdx);
+                mfNum = setSecDataArr(mfSubArr, mfArr, mfIdx);
+                mrNum = setSecDataArr(mrSubArr, mrArr, mrIdx);
+                mcNum = setSecDataArr(mcSubArr, mcArr, mcIdx);
+                mtNum = setSecDataArr(mtSubArr, mtArr, mtIdx);
+                meNum = setSecDataArr(meSubArr, meArr, meIdx);
+                mhNum = setSecDataArr(mhSubArr, mhArr, mhIdx);
+                smNum = setSecDataArr(smData, smArr, smIdx);
                 if (smNum == 0) {
                     smNum = 1;
                 }
@@ -1265,18 +1269,13 @@ public class DssatXFileOutput extends DssatCommonOutput {
      *
      * @param m sub data
      * @param arr array of sub data
+     * @param index the index of record position by content for the array
      * @return current index value of the sub data
      */
-    private int setSecDataArr(HashMap m, ArrayList arr) {
+    private int setSecDataArr(HashMap m, ArrayList arr, HashMap<Object, Integer> index) {
 
         if (!m.isEmpty()) {
-            for (int j = 0; j < arr.size(); j++) {
-                if (arr.get(j).equals(m)) {
-                    return j + 1;
-                }
-            }
-            arr.add(m);
-            return arr.size();
+            return getLevelNum(m, arr, index);
         } else {
             return 0;
         }
@@ -1287,23 +1286,67 @@ public class DssatXFileOutput extends DssatCommonOutput {
      *
      * @param inArr sub array of data
      * @param outArr array of sub data
+     * @param index the index of record position by content for the array
      * @return current index value of the sub data
      */
-    private int setSecDataArr(ArrayList inArr, ArrayList outArr) {
+    private int setSecDataArr(ArrayList inArr, ArrayList outArr, HashMap<Object, Integer> index) {
 
         if (!inArr.isEmpty()) {
-            for (int j = 0; j < outArr.size(); j++) {
-                if (outArr.get(j).equals(inArr)) {
-                    return j + 1;
-                }
-            }
-            outArr.add(inArr);
-            return outArr.size();
+            return getLevelNum(inArr, outArr, index);
         } else {
             return 0;
         }
     }
 
+    /**
+     * Look up the record in the array through the content index, the record
+     * is added as a new level if not found. The records should not be changed
+     * after added, since the index relies on their hash code.
+     */
+    private int getLevelNum(Object level, ArrayList arr, HashMap<Object, Integer> index) {
+
+        Integer ret = index.get(level);
+        if (ret == null) {
+            arr.add(level);
+            ret = arr.size();
+            index.put(level, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Group the events by sequence number and event type, the events are
+     * copied without the sequence number
+     *
+     * @param evtArr the event array
+     * @return the map of event arrays by sequence number and event type
+     */
+    private HashMap<String, HashMap<String, ArrayList<HashMap>>> getEventIndex(ArrayList<HashMap> evtArr) {
+
+        HashMap<String, HashMap<String, ArrayList<HashMap>>> ret = new HashMap<String, HashMap<String, ArrayList<HashMap>>>();
+        for (HashMap evtArr1 : evtArr) {
+            HashMap evtData = new HashMap();
+            evtData.putAll(evtArr1);
+            String seqId = getValueOr(evtData, "seqid", defValBlank);
+            evtData.remove("seqid");
+            String event = getValueOr(evtData, "event", defValBlank);
+
+            HashMap<String, ArrayList<HashMap>> seqEvts = ret.get(seqId);
+            if (seqEvts == null) {
+                seqEvts = new HashMap<String, ArrayList<HashMap>>();
+                ret.put(seqId, seqEvts);
+            }
+            ArrayList<HashMap> evts = seqEvts.get(event);
+            if (evts == null) {
+                evts = new ArrayList<HashMap>();
+                seqEvts.put(event, evts);
+            }
+            evts.add(evtData);
+        }
+
+        return ret;
+    }
+
     /**
      * To check if there is plot info data existed in the experiment
      *
@@ -0,0 +1,258 @@
+package org.agmip.translators.dssat;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.agmip.translators.dssat.DssatZipWriter.DeflatedEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The zip output of a translation job without temporary files. Each writer
+ * reserves a slot in the zip when it is submitted, renders its file into an
+ * entry buffer, and the buffer is deflated in the shared thread pool as soon
+ * as the writer is closed. The finished entries at the head of the slots are
+ * written into the stream while the job goes on, so the zip follows the order
+ * of submitting and does not depend on the order of completion. The entries
+ * opened in append mode (like the cultivar file shared by experiments) and
+ * the entries without slot are written by the order of name when the sink is
+ * closed.
+ *
+ * @author Meng Zhang
+ * @version 1.0
+ */
+class DssatZipSink implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DssatZipSink.class);
+    private final DssatZipWriter writer;
+    private final LinkedHashSet<EntrySlot> reserved = new LinkedHashSet<EntrySlot>();
+    private final HashSet<String> names = new HashSet<String>();
+    private final TreeMap<String, Future<DeflatedEntry>> entries = new TreeMap<String, Future<DeflatedEntry>>();
+    private final LinkedHashMap<String, ByteArrayOutputStream> appended = new LinkedHashMap<String, ByteArrayOutputStream>();
+    private volatile IOException error;
+    private boolean closed;
+
+    /**
+     * Create a sink on the given stream
+     *
+     * @param os the output stream for the zip
+     */
+    public DssatZipSink(OutputStream os) {
+        this.writer = new DssatZipWriter(os);
+    }
+
+    /**
+     * Reserve the slot for the entry of next writer, the finished entries in
+     * the previous slots are written into the stream. The slots are kept in
+     * the order of reserving, so the writers should be submitted from one
+     * thread to have a stable order in the zip.
+     *
+     * @return the slot for the entry
+     */
+    public synchronized EntrySlot reserve() {
+        EntrySlot slot = new EntrySlot();
+        if (closed) {
+            slot.fill(null);
+            return slot;
+        }
+        reserved.add(slot);
+        // Only the finished entries are written, so the lock is not held for waiting
+        if (error == null) {
+            try {
+                writer.add(slot);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Release the slot which is not used by the writer
+     *
+     * @param slot the slot for the entry
+     */
+    public synchronized void release(EntrySlot slot) {
+        if (slot != null && reserved.remove(slot)) {
+            slot.fill(null);
+        }
+    }
+
+    /**
+     * Open the writer for an entry, the entry is deflated when the writer is
+     * closed
+     *
+     * @param name the entry name
+     * @param append true if the content should be appended to the entry with
+     * same name
+     * @return the writer of the entry
+     */
+    public BufferedWriter openEntry(String name, boolean append) {
+        return openEntry(null, name, append);
+    }
+
+    /**
+     * Open the writer for an entry in the reserved slot, the entry is
+     * deflated when the writer is closed
+     *
+     * @param slot the reserved slot, null for writing the entry at the end
+     * @param name the entry name
+     * @param append true if the content should be appended to the entry with
+     * same name
+     * @return the writer of the entry
+     */
+    public BufferedWriter openEntry(EntrySlot slot, String name, boolean append) {
+        return new BufferedWriter(new OutputStreamWriter(new EntryBuffer(this, slot, name, append)));
+    }
+
+    private synchronized void complete(EntryBuffer entry) {
+        if (closed) {
+            LOG.warn("Entry {} is finished after zipping", entry.name);
+        } else if (entry.append) {
+            ByteArrayOutputStream content = appended.get(entry.name);
+            if (content == null) {
+                appended.put(entry.name, entry);
+            } else {
+                byte[] data = entry.toByteArray();
+                content.write(data, 0, data.length);
+            }
+        } else if (!names.add(entry.name)) {
+            LOG.warn("Duplicated entry {} is skipped", entry.name);
+        } else if (entry.slot != null && reserved.remove(entry.slot)) {
+            entry.slot.fill(DssatZipWriter.deflate(entry.name, entry));
+        } else {
+            entries.put(entry.name, DssatZipWriter.deflate(entry.name, entry));
+        }
+    }
+
+    /**
+     * Wait for the compressed entries and write them into the zip stream. The
+     * writers closed after this are ignored.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // The slots of the canceled writers are left empty
+            for (EntrySlot slot : reserved) {
+                slot.fill(null);
+            }
+            reserved.clear();
+            for (Map.Entry<String, ByteArrayOutputStream> entry : appended.entrySet()) {
+                if (names.add(entry.getKey())) {
+                    entries.put(entry.getKey(), DssatZipWriter.deflate(entry.getKey(), entry.getValue()));
+                } else {
+                    LOG.warn("Duplicated entry {} is skipped", entry.getKey());
+                }
+            }
+            appended.clear();
+        }
+        try {
+            if (error != null) {
+                throw error;
+            }
+            for (Future<DeflatedEntry> entry : entries.values()) {
+                writer.add(entry);
+            }
+        } finally {
+            entries.clear();
+            writer.close();
+        }
+    }
+
+    /**
+     * The place of one entry in the zip, which is filled with the compressed
+     * entry, or with nothing if the writer does not output
+     */
+    static class EntrySlot implements Future<DeflatedEntry> {
+
+        private final CountDownLatch filled = new CountDownLatch(1);
+        private volatile Future<DeflatedEntry> entry;
+
+        private void fill(Future<DeflatedEntry> entry) {
+            this.entry = entry;
+            filled.countDown();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            Future<DeflatedEntry> e = entry;
+            return e != null && e.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            Future<DeflatedEntry> e = entry;
+            return e != null && e.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            Future<DeflatedEntry> e = entry;
+            return filled.getCount() == 0 && (e == null || e.isDone());
+        }
+
+        @Override
+        public DeflatedEntry get() throws InterruptedException, ExecutionException {
+            filled.await();
+            Future<DeflatedEntry> e = entry;
+            return e == null ? null : e.get();
+        }
+
+        @Override
+        public DeflatedEntry get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            if (!filled.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            Future<DeflatedEntry> e = entry;
+            return e == null ? null : e.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * The content of one entry, which is handed to the sink when closed
+     */
+    private static class EntryBuffer extends ByteArrayOutputStream {
+
+        private final DssatZipSink sink;
+        private final EntrySlot slot;
+        private final String name;
+        private final boolean append;
+        private boolean closed;
+
+        EntryBuffer(DssatZipSink sink, EntrySlot slot, String name, boolean append) {
+            super(8 * 1024);
+            this.sink = sink;
+            this.slot = slot;
+            this.name = name;
+            this.append = append;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                sink.complete(this);
+            }
+        }
+    }
+}
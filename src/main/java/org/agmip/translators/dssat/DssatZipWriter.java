@@ -0,0 +1,292 @@
+package org.agmip.translators.dssat;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * The zip writer which deflates the entries concurrently. Each entry is
+ * compressed independently in the shared thread pool of translator, and the
+ * compressed entries are written into the stream by the order of adding, with
+ * the sizes and CRC known before the local header, so the result is same as a
+ * sequential zip. Zip64 is not supported, so each entry and the whole zip
+ * should be less than 4GB.
+ *
+ * @author Meng Zhang
+ * @version 1.0
+ */
+class DssatZipWriter implements Closeable {
+
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+    private final OutputStream out;
+    private final LinkedList<Future<DeflatedEntry>> pending = new LinkedList<Future<DeflatedEntry>>();
+    private final ArrayList<DeflatedEntry> entries = new ArrayList<DeflatedEntry>();
+    private final int dosTime;
+    private long written;
+
+    /**
+     * Create a writer on the given stream
+     *
+     * @param os the output stream for the zip
+     */
+    public DssatZipWriter(OutputStream os) {
+        this.out = new BufferedOutputStream(os, 64 * 1024);
+        this.dosTime = toDosTime(Calendar.getInstance());
+    }
+
+    /**
+     * Start to compress the content in the shared thread pool
+     *
+     * @param name the entry name
+     * @param content the uncompressed content
+     * @return the future of compressed entry
+     */
+    public static Future<DeflatedEntry> deflate(final String name, final ByteArrayOutputStream content) {
+        return DssatTranslateScheduler.execute(new Callable<DeflatedEntry>() {
+            @Override
+            public DeflatedEntry call() throws Exception {
+                DeflatedEntry entry = new DeflatedEntry(name);
+                content.writeTo(entry.open());
+                return entry.finish();
+            }
+        });
+    }
+
+    /**
+     * Start to compress the file in the shared thread pool
+     *
+     * @param name the entry name
+     * @param file the file to compress
+     * @return the future of compressed entry
+     */
+    public static Future<DeflatedEntry> deflate(final String name, final File file) {
+        return DssatTranslateScheduler.execute(new Callable<DeflatedEntry>() {
+            @Override
+            public DeflatedEntry call() throws Exception {
+                DeflatedEntry entry = new DeflatedEntry(name);
+                OutputStream os = entry.open();
+                InputStream in = new FileInputStream(file);
+                try {
+                    byte[] buf = new byte[64 * 1024];
+                    int count;
+                    while ((count = in.read(buf)) != -1) {
+                        os.write(buf, 0, count);
+                    }
+                } finally {
+                    in.close();
+                }
+                return entry.finish();
+            }
+        });
+    }
+
+    /**
+     * Add the entry after the ones added before, the finished entries at the
+     * head of the queue are written immediately
+     *
+     * @param entry the future of compressed entry, which could give null when
+     * there is no entry to write
+     * @throws IOException
+     */
+    public void add(Future<DeflatedEntry> entry) throws IOException {
+        pending.add(entry);
+        flush();
+    }
+
+    /**
+     * Write the finished entries at the head of the queue into the stream
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        boolean isWritten = false;
+        while (!pending.isEmpty() && pending.getFirst().isDone()) {
+            write(pending.removeFirst());
+            isWritten = true;
+        }
+        // Hand the written entries to the stream, so the receiver gets them early
+        if (isWritten) {
+            out.flush();
+        }
+    }
+
+    private void write(Future<DeflatedEntry> future) throws IOException {
+        DeflatedEntry entry;
+        try {
+            entry = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Zipping is interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(DssatCommonOutput.getStackTrace(e.getCause()));
+        }
+        if (entry == null) {
+            return;
+        }
+        if (entry.size > MAX_SIZE || entry.compressed.size() > MAX_SIZE || written > MAX_SIZE) {
+            throw new IOException("The entry " + entry.name + " is too large for zip");
+        }
+        entry.offset = written;
+        writeInt(0x04034b50);
+        writeShort(20);
+        writeShort(entry.flag);
+        writeShort(Deflater.DEFLATED);
+        writeInt(dosTime);
+        writeInt((int) entry.crc);
+        writeInt((int) entry.compressed.size());
+        writeInt((int) entry.size);
+        writeShort(entry.nameBytes.length);
+        writeShort(0);
+        writeBytes(entry.nameBytes);
+        entry.compressed.writeTo(out);
+        written += entry.compressed.size();
+        entry.compressed = null;
+        entries.add(entry);
+    }
+
+    /**
+     * Wait for the rest entries, then write the central directory and close
+     * the stream
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            while (!pending.isEmpty()) {
+                write(pending.removeFirst());
+            }
+            long start = written;
+            for (DeflatedEntry entry : entries) {
+                writeInt(0x02014b50);
+                writeShort(20);
+                writeShort(20);
+                writeShort(entry.flag);
+                writeShort(Deflater.DEFLATED);
+                writeInt(dosTime);
+                writeInt((int) entry.crc);
+                writeInt((int) entry.compressedSize);
+                writeInt((int) entry.size);
+                writeShort(entry.nameBytes.length);
+                writeShort(0);
+                writeShort(0);
+                writeShort(0);
+                writeShort(0);
+                writeInt(0);
+                writeInt((int) entry.offset);
+                writeBytes(entry.nameBytes);
+            }
+            long size = written - start;
+            if (entries.size() > 0xFFFF || written > MAX_SIZE) {
+                throw new IOException("Too many entries for zip");
+            }
+            writeInt(0x06054b50);
+            writeShort(0);
+            writeShort(0);
+            writeShort(entries.size());
+            writeShort(entries.size());
+            writeInt((int) size);
+            writeInt((int) start);
+            writeShort(0);
+        } finally {
+            for (Future<DeflatedEntry> future : pending) {
+                future.cancel(true);
+            }
+            out.close();
+        }
+    }
+
+    private void writeShort(int v) throws IOException {
+        out.write(v & 0xFF);
+        out.write((v >>> 8) & 0xFF);
+        written += 2;
+    }
+
+    private void writeInt(int v) throws IOException {
+        writeShort(v & 0xFFFF);
+        writeShort((v >>> 16) & 0xFFFF);
+    }
+
+    private void writeBytes(byte[] b) throws IOException {
+        out.write(b);
+        written += b.length;
+    }
+
+    /**
+     * Get the time in MS-DOS format
+     */
+    private static int toDosTime(Calendar cal) {
+        int year = cal.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25
+                | (cal.get(Calendar.MONTH) + 1) << 21
+                | cal.get(Calendar.DAY_OF_MONTH) << 16
+                | cal.get(Calendar.HOUR_OF_DAY) << 11
+                | cal.get(Calendar.MINUTE) << 5
+                | cal.get(Calendar.SECOND) >> 1;
+    }
+
+    /**
+     * The compressed content of one entry
+     */
+    static class DeflatedEntry {
+
+        private final String name;
+        private final byte[] nameBytes;
+        private final int flag;
+        private final CRC32 crc32 = new CRC32();
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private ByteArrayOutputStream compressed = new ByteArrayOutputStream(8 * 1024);
+        private DeflaterOutputStream dos;
+        private long crc;
+        private long size;
+        private long compressedSize;
+        private long offset;
+
+        DeflatedEntry(String name) throws IOException {
+            this.name = name;
+            this.nameBytes = name.getBytes("UTF-8");
+            // Mark the name as UTF-8 if it is not plain ASCII
+            this.flag = nameBytes.length == name.length() ? 0 : 0x0800;
+        }
+
+        private OutputStream open() {
+            dos = new DeflaterOutputStream(compressed, deflater, 64 * 1024) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    crc32.update(b, off, len);
+                    size += len;
+                    super.write(b, off, len);
+                }
+            };
+            return dos;
+        }
+
+        private DeflatedEntry finish() throws IOException {
+            dos.finish();
+            deflater.end();
+            crc = crc32.getValue();
+            compressedSize = compressed.size();
+            return this;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.agmip.translators.dssat;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The compiled layout of a fixed width data line, which holds the key, offset
+ * and length of each field. The layout is built once for a section and reused
+ * for all the data lines in it.
+ *
+ * @author Meng Zhang
+ * @version 1.0
+ */
+class FixedWidthLayout {
+
+    private final ArrayList<String> keyList = new ArrayList<String>();
+    private final ArrayList<Integer> lengthList = new ArrayList<Integer>();
+    private String[] keys;
+    private int[] offsets;
+    private int[] ends;
+
+    /**
+     * Create an empty layout, the fields are added by the order of reading
+     */
+    public FixedWidthLayout() {
+    }
+
+    /**
+     * Create a layout from the definition of length for each data field
+     *
+     * @param formats The definition of length for each data field (String
+     * itemName : Integer length)
+     */
+    public FixedWidthLayout(LinkedHashMap<String, Integer> formats) {
+        for (String key : formats.keySet()) {
+            add(key, formats.get(key));
+        }
+    }
+
+    /**
+     * Add a field with given length to the end of the layout; the field with
+     * blank key or key started with "null" will be skipped when decoding
+     *
+     * @param key the variable name of the field
+     * @param length the number of characters of the field
+     * @return the layout itself
+     */
+    public FixedWidthLayout add(String key, int length) {
+        if (keys != null) {
+            throw new IllegalStateException("The layout is already compiled");
+        }
+        keyList.add(key);
+        lengthList.add(length);
+        return this;
+    }
+
+    /**
+     * Add a field which will take all the rest characters of the line
+     *
+     * @param key the variable name of the field
+     * @return the layout itself
+     */
+    public FixedWidthLayout addRest(String key) {
+        return add(key, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Compile the added fields into the offset arrays
+     */
+    private synchronized void compile() {
+        if (keys != null) {
+            return;
+        }
+        int size = keyList.size();
+        String[] tmpKeys = new String[size];
+        int[] tmpOffsets = new int[size];
+        int[] tmpEnds = new int[size];
+        long offset = 0;
+        for (int i = 0; i < size; i++) {
+            String key = keyList.get(i);
+            if (key == null || key.equals("") || key.startsWith("null")) {
+                key = null;
+            }
+            tmpKeys[i] = key;
+            tmpOffsets[i] = (int) Math.min(offset, Integer.MAX_VALUE);
+            offset += lengthList.get(i);
+            tmpEnds[i] = (int) Math.min(offset, Integer.MAX_VALUE);
+        }
+        offsets = tmpOffsets;
+        ends = tmpEnds;
+        keys = tmpKeys;
+    }
+
+    /**
+     * Divide the data in the line into the given record holder
+     *
+     * @param line The string of line read from data file
+     * @param record The holder of the divided data
+     * @param invalidValue The text will replace the original reading when its
+     * value is invalid, null means not to be stored
+     */
+    public void decode(String line, Map record, String invalidValue) {
+
+        if (keys == null) {
+            compile();
+        }
+        int lineLen = line.length();
+        for (int i = 0; i < keys.length; i++) {
+            int start = offsets[i];
+            if (start >= lineLen) {
+                // The rest fields are all blank
+                if (invalidValue != null) {
+                    for (int j = i; j < keys.length; j++) {
+                        if (keys[j] != null) {
+                            record.put(keys[j], invalidValue);
+                        }
+                    }
+                }
+                break;
+            }
+            if (keys[i] == null) {
+                continue;
+            }
+            int end = Math.min(ends[i], lineLen);
+            // Trim the blank characters
+            while (start < end && line.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && line.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            if (isValid(line, start, end)) {
+                record.put(keys[i], line.substring(start, end));
+            } else if (invalidValue != null) {
+                record.put(keys[i], invalidValue);   // P.S. "" means missing or invalid value
+            }
+        }
+    }
+
+    /**
+     * Check if the given part of line is a valid value, same as the rule of
+     * DssatCommonInput.checkValidValue (blank, "-99" and "-99.0" are invalid)
+     */
+    private static boolean isValid(String line, int start, int end) {
+        int len = end - start;
+        if (len == 0) {
+            return false;
+        } else if (len == 3) {
+            return !line.startsWith("-99", start);
+        } else if (len == 5) {
+            return !line.startsWith("-99.0", start);
+        } else {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package org.agmip.translators.dssat;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * The pull style JSON reader, which reads the JSON stream token by token, so
+ * the caller could walk through a large array and read one element at a time.
+ * The object is read as LinkedHashMap, the array as ArrayList, and the number
+ * is kept as its original text, same as the other values in ACE data.
+ *
+ * @author Meng Zhang
+ * @version 1.0
+ */
+class JsonStreamReader implements Closeable {
+
+    private final Reader in;
+    private int next = -2;
+    private final StringBuilder sb = new StringBuilder();
+
+    /**
+     * Create a reader on the given stream, the text is decoded with UTF-8
+     *
+     * @param is the input stream
+     * @throws IOException
+     */
+    public JsonStreamReader(InputStream is) throws IOException {
+        this.in = new BufferedReader(new InputStreamReader(is, "UTF-8"), 64 * 1024);
+    }
+
+    /**
+     * Consume the beginning of an object
+     *
+     * @throws IOException
+     */
+    public void beginObject() throws IOException {
+        expect('{');
+    }
+
+    /**
+     * Read the name of next entry in current object
+     *
+     * @return the name, or null if the object is ended
+     * @throws IOException
+     */
+    public String nextName() throws IOException {
+        int c = skipSeparator();
+        if (c == '}') {
+            read();
+            return null;
+        }
+        String ret = readString();
+        expect(':');
+        return ret;
+    }
+
+    /**
+     * Consume the beginning of an array
+     *
+     * @throws IOException
+     */
+    public void beginArray() throws IOException {
+        expect('[');
+    }
+
+    /**
+     * Check if there is more element in current array
+     *
+     * @return false if the array is ended
+     * @throws IOException
+     */
+    public boolean hasNext() throws IOException {
+        int c = skipSeparator();
+        if (c == ']') {
+            read();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the first character of next value
+     *
+     * @return the character, -1 for the end of stream
+     * @throws IOException
+     */
+    public int peek() throws IOException {
+        return skipWhitespace();
+    }
+
+    /**
+     * Read the next value with all its content
+     *
+     * @return the value
+     * @throws IOException
+     */
+    public Object readValue() throws IOException {
+        int c = skipWhitespace();
+        switch (c) {
+            case '{':
+                LinkedHashMap<String, Object> m = new LinkedHashMap<String, Object>();
+                beginObject();
+                String name;
+                while ((name = nextName()) != null) {
+                    m.put(name, readValue());
+                }
+                return m;
+            case '[':
+                ArrayList<Object> arr = new ArrayList<Object>();
+                beginArray();
+                while (hasNext()) {
+                    arr.add(readValue());
+                }
+                return arr;
+            case '"':
+                return readString();
+            default:
+                String literal = readLiteral();
+                if (literal.equals("null")) {
+                    return null;
+                } else if (literal.equals("true")) {
+                    return Boolean.TRUE;
+                } else if (literal.equals("false")) {
+                    return Boolean.FALSE;
+                }
+                return literal;
+        }
+    }
+
+    /**
+     * Skip the next value without keeping its content
+     *
+     * @throws IOException
+     */
+    public void skipValue() throws IOException {
+        int c = skipWhitespace();
+        switch (c) {
+            case '{':
+                beginObject();
+                while (nextName() != null) {
+                    skipValue();
+                }
+                break;
+            case '[':
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                break;
+            case '"':
+                read();
+                while ((c = read()) != '"') {
+                    if (c == '\\') {
+                        read();
+                    } else if (c < 0) {
+                        throw error("Unterminated string");
+                    }
+                }
+                break;
+            default:
+                readLiteral();
+        }
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        sb.setLength(0);
+        int c;
+        while ((c = read()) != '"') {
+            if (c < 0) {
+                throw error("Unterminated string");
+            } else if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'u':
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(read(), 16);
+                            if (digit < 0) {
+                                throw error("Invalid unicode escape");
+                            }
+                            code = code * 16 + digit;
+                        }
+                        sb.append((char) code);
+                        break;
+                    default:
+                        if (c < 0) {
+                            throw error("Unterminated string");
+                        }
+                        sb.append((char) c);
+                }
+            } else {
+                sb.append((char) c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private String readLiteral() throws IOException {
+        sb.setLength(0);
+        int c;
+        while ((c = peekChar()) >= 0 && c != ',' && c != '}' && c != ']' && c != ':' && !Character.isWhitespace(c)) {
+            sb.append((char) read());
+        }
+        if (sb.length() == 0) {
+            throw error("Unexpected character [" + (c < 0 ? "EOF" : (char) c) + "]");
+        }
+        return sb.toString();
+    }
+
+    private int skipSeparator() throws IOException {
+        int c = skipWhitespace();
+        if (c == ',') {
+            read();
+            c = skipWhitespace();
+        }
+        if (c < 0) {
+            throw error("Unexpected end of stream");
+        }
+        return c;
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c;
+        while ((c = peekChar()) >= 0 && Character.isWhitespace(c)) {
+            read();
+        }
+        return c;
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = skipWhitespace();
+        if (c != expected) {
+            throw error("Expect [" + expected + "] but find [" + (c < 0 ? "EOF" : (char) c) + "]");
+        }
+        read();
+    }
+
+    private int peekChar() throws IOException {
+        if (next == -2) {
+            next = in.read();
+        }
+        return next;
+    }
+
+    private int read() throws IOException {
+        int c = peekChar();
+        next = -2;
+        return c;
+    }
+
+    private IOException error(String msg) {
+        return new IOException("Invalid JSON: " + msg);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
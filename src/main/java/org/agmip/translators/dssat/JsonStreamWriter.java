@@ -0,0 +1,149 @@
+package org.agmip.translators.dssat;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The streaming JSON writer, which walks the data holder and writes each
+ * value into the output stream directly, so the JSON text of the whole result
+ * is never held in memory. The output is compact JSON with the same key order
+ * as the maps.
+ *
+ * @author Meng Zhang
+ * @version 1.0
+ */
+class JsonStreamWriter implements Closeable {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private final Writer out;
+
+    /**
+     * Create a writer on the given stream, the text is encoded with UTF-8
+     *
+     * @param os the output stream
+     * @throws IOException
+     */
+    public JsonStreamWriter(OutputStream os) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"), 64 * 1024);
+    }
+
+    /**
+     * Write the value as JSON; Map is written as object, Iterable and array
+     * as array, Number and Boolean as it is, and the others as string
+     *
+     * @param value the data holder
+     * @throws IOException
+     */
+    public void write(Object value) throws IOException {
+        if (value == null) {
+            out.write("null");
+        } else if (value instanceof Map) {
+            writeObject((Map) value);
+        } else if (value instanceof Iterable) {
+            writeArray(((Iterable) value).iterator());
+        } else if (value instanceof Object[]) {
+            writeArray(Arrays.asList((Object[]) value).iterator());
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.write(value.toString());
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    private void writeObject(Map<?, ?> m) throws IOException {
+        out.write('{');
+        boolean first = true;
+        for (Map.Entry entry : m.entrySet()) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            writeString(String.valueOf(entry.getKey()));
+            out.write(':');
+            write(entry.getValue());
+        }
+        out.write('}');
+    }
+
+    private void writeArray(Iterator it) throws IOException {
+        out.write('[');
+        boolean first = true;
+        while (it.hasNext()) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            write(it.next());
+        }
+        out.write(']');
+    }
+
+    private void writeString(String str) throws IOException {
+        out.write('"');
+        int start = 0;
+        int length = str.length();
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            out.write(str, start, i - start);
+            start = i + 1;
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                case '\b':
+                    out.write("\\b");
+                    break;
+                case '\f':
+                    out.write("\\f");
+                    break;
+                default:
+                    out.write("\\u00");
+                    out.write(HEX[c >> 4]);
+                    out.write(HEX[c & 0xF]);
+            }
+        }
+        out.write(str, start, length - start);
+        out.write('"');
+    }
+
+    /**
+     * Flush the buffered text into the stream
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Flush and close the underlying stream
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,132 @@
+package org.agmip.translators.dssat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The holder of the file names allocated in one translation job, which is
+ * shared by all the writers of the job. The names are claimed through
+ * concurrent maps, so the writers running in different threads never get the
+ * same name for different data, and the same data always gets the name
+ * allocated at the first time. The standalone writers which are not in a
+ * translation job share one session for each output directory.
+ *
+ * @author Meng Zhang
+ * @version 1.0
+ */
+public class NamingSession {
+
+    private static final ConcurrentHashMap<String, NamingSession> DIRECTORY_SESSIONS = new ConcurrentHashMap<String, NamingSession>();
+
+    private final ConcurrentHashMap<String, String> exToFileMap = new ConcurrentHashMap<String, String>();
+    private final Set<String> fileNameSet = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final DssatWthFileHelper wthHelper = new DssatWthFileHelper();
+    private final DssatSoilFileHelper soilHelper = new DssatSoilFileHelper();
+
+    /**
+     * Get the session shared by the standalone writers of the output directory
+     *
+     * @param path the output directory
+     * @return the session of the directory
+     */
+    public static NamingSession getDirectorySession(String path) {
+        File dir = new File(path.trim().equals("") ? "." : path.trim());
+        String key;
+        try {
+            key = dir.getCanonicalPath();
+        } catch (IOException e) {
+            key = dir.getAbsolutePath();
+        }
+        NamingSession ret = DIRECTORY_SESSIONS.get(key);
+        if (ret == null) {
+            NamingSession session = new NamingSession();
+            ret = DIRECTORY_SESSIONS.putIfAbsent(key, session);
+            if (ret == null) {
+                ret = session;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Get the experiment file name for the given experiment and crop (extend
+     * name is the crop code)
+     *
+     * @param exname the experiment name
+     * @param crid the 2-bit crop code
+     * @return the file name, like "UFGA8201.MZ"
+     */
+    public String getExFileName(String exname, String crid) {
+        String key = exname + "_" + crid;
+        String ret = exToFileMap.get(key);
+        if (ret != null) {
+            return ret;
+        }
+
+        ret = exname;
+        if (ret.equals("")) {
+            ret = "TEMP0001";
+        } else {
+            try {
+                if (ret.endsWith(crid)) {
+                    ret = ret.substring(0, ret.length() - crid.length());
+                }
+                // If the exname is too long
+                if (ret.length() > 8) {
+                    ret = ret.substring(0, 8);
+                }
+                // If the exname do not follow the Dssat rule
+                if (!ret.matches("[\\w ]{1,6}\\d{2}$")) {
+                    if (ret.length() > 6) {
+                        ret = ret.substring(0, 6);
+                    }
+                    ret += "01";
+                }
+            } catch (Exception e) {
+                ret = "TEMP0001";
+            }
+        }
+
+        // Claim a non-repeated file name
+        int count;
+        while (!fileNameSet.add(ret + "." + crid)) {
+            try {
+                count = Integer.parseInt(ret.substring(ret.length() - 2, ret.length()));
+                count++;
+            } catch (Exception e) {
+                count = 1;
+            }
+            ret = ret.replaceAll("\\w{2}$", String.format("%02d", count));
+        }
+
+        String fileName = ret + "." + crid;
+        ret = exToFileMap.putIfAbsent(key, fileName);
+        if (ret != null) {
+            // Another thread has created the name for the same experiment
+            fileNameSet.remove(fileName);
+            return ret;
+        }
+        return fileName;
+    }
+
+    /**
+     * Get the weather file name helper of this job
+     *
+     * @return the weather file name helper
+     */
+    public DssatWthFileHelper getWthHelper() {
+        return wthHelper;
+    }
+
+    /**
+     * Get the soil id helper of this job
+     *
+     * @return the soil id helper
+     */
+    public DssatSoilFileHelper getSoilHelper() {
+        return soilHelper;
+    }
+}
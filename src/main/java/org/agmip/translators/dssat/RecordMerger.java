@@ -0,0 +1,91 @@
+package org.agmip.translators.dssat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The holder which merges the records into an array by having same key
+ * value(s). The records are kept in the order of first appearance, and the
+ * matched record is found by hash index instead of scanning the whole array.
+ *
+ * @author Meng Zhang
+ * @version 1.0
+ */
+class RecordMerger {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RecordMerger.class);
+    private final ArrayList arr;
+    private final Object key;
+    private final HashMap<Object, Map> index = new HashMap<Object, Map>();
+
+    /**
+     * Create the merger for the target array, the records already in the
+     * array will be indexed at first
+     *
+     * @param arr the target array
+     * @param key the primary key item's name, or the array of names for the
+     * composite key
+     */
+    public RecordMerger(ArrayList arr, Object key) {
+        this.arr = arr;
+        this.key = key;
+        for (Object elem : arr) {
+            Object id = getId((Map) elem);
+            if (id != null && !index.containsKey(id)) {
+                index.put(id, (Map) elem);
+            }
+        }
+    }
+
+    /**
+     * Get the target array
+     *
+     * @return the target array
+     */
+    public ArrayList getArray() {
+        return arr;
+    }
+
+    /**
+     * Add the new item into array, or merge it into the first record which has
+     * same key value(s)
+     *
+     * @param item the input item which will be added into array
+     */
+    public void merge(Map item) {
+        Object id = getId(item);
+        LOG.debug("Key: {} Item: {}", id, item);
+        Map elem = id == null ? null : index.get(id);
+        if (elem != null) {
+            elem.putAll(item);
+        } else {
+            arr.add(item);
+            if (id != null) {
+                index.put(id, item);
+            }
+        }
+    }
+
+    /**
+     * Get the key value(s) of the record, null means the record could not be
+     * matched with any other one
+     */
+    private Object getId(Map record) {
+        if (!key.getClass().isArray()) {
+            return record.get(key);
+        }
+        Object[] keys = (Object[]) key;
+        Object[] ids = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            ids[i] = record.get(keys[i]);
+            if (ids[i] == null) {
+                return null;
+            }
+        }
+        return Arrays.asList(ids);
+    }
+}
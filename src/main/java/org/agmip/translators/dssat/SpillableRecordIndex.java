@@ -0,0 +1,201 @@
+package org.agmip.translators.dssat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The index of soil or weather records by their id. The records are kept in
+ * memory until the number of their values (counted as the maps, lists and
+ * strings in them) reaches the limit, then the rest records are serialized
+ * into a temporary file and read back when they are requested. The first
+ * record wins when there are records with same id.
+ *
+ * @author Meng Zhang
+ * @version 1.0
+ */
+class SpillableRecordIndex implements Closeable {
+
+    private final String idKey;
+    private final long valueLimit;
+    private long valueCount;
+    private final LinkedHashMap<String, HashMap> records = new LinkedHashMap<String, HashMap>();
+    private final LinkedHashMap<String, long[]> spilled = new LinkedHashMap<String, long[]>();
+    private final HashMap<String, Integer> order = new HashMap<String, Integer>();
+    private File spillFile;
+    private RandomAccessFile spillData;
+
+    /**
+     * Create an index
+     *
+     * @param idKey the key name of record id, like "soil_id" or "wst_id"
+     * @param valueLimit the maximum number of values kept in memory
+     */
+    public SpillableRecordIndex(String idKey, long valueLimit) {
+        this.idKey = idKey;
+        this.valueLimit = valueLimit;
+    }
+
+    /**
+     * Add the record into the index
+     *
+     * @param record the soil or weather record
+     * @throws IOException
+     */
+    public void add(HashMap record) throws IOException {
+        Object id = record.get(idKey);
+        if (id == null) {
+            return;
+        }
+        String key = id.toString();
+        if (contains(key)) {
+            return;
+        }
+        order.put(key, order.size());
+        long size = countValues(record);
+        if (valueCount + size <= valueLimit) {
+            valueCount += size;
+            records.put(key, record);
+        } else {
+            spill(key, record);
+        }
+    }
+
+    /**
+     * Check if there is record for the given id
+     *
+     * @param id the record id
+     * @return true if the record exists
+     */
+    public boolean contains(String id) {
+        return order.containsKey(id);
+    }
+
+    /**
+     * Get the record with the given id, same as getSectionDataWithNocopy, the
+     * weather id with year and duration also matches its 4-bit INSI
+     *
+     * @param id the record id
+     * @return the record, or null if not found
+     * @throws IOException
+     */
+    public HashMap get(String id) throws IOException {
+        if (id == null) {
+            return null;
+        }
+        if (idKey.equals("wst_id") && DssatCommonInput.isWstIdWithYear(id)) {
+            Integer pos = order.get(id);
+            Integer aliasPos = order.get(id.substring(0, 4));
+            if (aliasPos != null && (pos == null || aliasPos < pos)) {
+                id = id.substring(0, 4);
+            }
+        }
+        HashMap ret = records.get(id);
+        if (ret == null) {
+            long[] pos = spilled.get(id);
+            if (pos != null) {
+                ret = load(pos);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Get all the record ids by the order of adding
+     *
+     * @return the list of ids
+     */
+    public Collection<String> getIds() {
+        String[] ret = new String[order.size()];
+        for (Map.Entry<String, Integer> entry : order.entrySet()) {
+            ret[entry.getValue()] = entry.getKey();
+        }
+        return Arrays.asList(ret);
+    }
+
+    /**
+     * Check if the index is empty
+     *
+     * @return true if there is no record
+     */
+    public boolean isEmpty() {
+        return order.isEmpty();
+    }
+
+    private void spill(String key, HashMap record) throws IOException {
+        if (spillData == null) {
+            spillFile = File.createTempFile("dssat_" + idKey, ".tmp");
+            spillFile.deleteOnExit();
+            spillData = new RandomAccessFile(spillFile, "rw");
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos);
+        oos.writeObject(record);
+        oos.close();
+        long offset = spillData.length();
+        spillData.seek(offset);
+        spillData.write(bos.toByteArray());
+        spilled.put(key, new long[]{offset, bos.size()});
+    }
+
+    private HashMap load(long[] pos) throws IOException {
+        byte[] buf = new byte[(int) pos[1]];
+        spillData.seek(pos[0]);
+        spillData.readFully(buf);
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(buf));
+        try {
+            return (HashMap) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            ois.close();
+        }
+    }
+
+    /**
+     * Count the values in the record, including the ones in its sub maps and
+     * lists
+     */
+    private static long countValues(Object value) {
+        if (value instanceof Map) {
+            long ret = 1;
+            for (Object o : ((Map) value).values()) {
+                ret += countValues(o);
+            }
+            return ret;
+        } else if (value instanceof List) {
+            long ret = 1;
+            for (Object o : (List) value) {
+                ret += countValues(o);
+            }
+            return ret;
+        } else {
+            return 1;
+        }
+    }
+
+    /**
+     * Release the temporary file
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (spillData != null) {
+            spillData.close();
+            spillData = null;
+            spillFile.delete();
+        }
+    }
+}
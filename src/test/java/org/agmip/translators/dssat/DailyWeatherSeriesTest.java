@@ -0,0 +1,106 @@
+package org.agmip.translators.dssat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import static org.agmip.util.MapUtil.getObjectOr;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Meng Zhang
+ */
+public class DailyWeatherSeriesTest {
+
+    DailyWeatherSeries series;
+    ArrayList<Map<String, String>> daily;
+
+    @Before
+    public void setUp() throws Exception {
+        series = new DailyWeatherSeries();
+        HashMap result = new DssatWeatherInput().readFile(this.getClass().getResource("/UFGA8201_MZX.zip").getPath());
+        ArrayList<HashMap> wthArr = getObjectOr(result, "weathers", new ArrayList());
+        daily = (ArrayList) getObjectOr(wthArr.get(0), "dailyWeather", new ArrayList());
+    }
+
+    @Test
+    public void testDecimalRoundTrip() {
+        series.addAll(daily);
+        assertEquals(daily, series);
+        assertEquals(daily, series.toRecords());
+
+        HashMap<String, String> record = new HashMap<String, String>();
+        record.put("w_date", "19820101");
+        record.put("srad", "-0.5");
+        record.put("tmax", "30.10");
+        record.put("rain", "0");
+        series.add(record);
+        assertEquals("-0.5", series.getValue(series.size() - 1, "srad"));
+        assertEquals("30.10", series.getValue(series.size() - 1, "tmax"));
+        assertEquals("0", series.getValue(series.size() - 1, "rain"));
+    }
+
+    @Test
+    public void testRawText() {
+        HashMap<String, String> record = new HashMap<String, String>();
+        record.put("w_date", "1982-01-01");
+        record.put("srad", "1.2E3");
+        record.put("tmax", "1234567.5");
+        record.put("rain", ".5");
+        record.put("tdew", "023");
+        series.add(record);
+
+        // The text which could not be rebuilt from number is kept as it is
+        assertEquals(record, series.get(0));
+        assertEquals(DssatDateCodec.NO_DATE, series.getEpochDay(0));
+    }
+
+    @Test
+    public void testInsertAndMerge() {
+        series.addAll(daily.subList(2, 5));
+        DailyWeatherSeries other = new DailyWeatherSeries();
+        other.addAll(daily.subList(0, 2));
+
+        // Insert the days of another series in front
+        series.addAll(0, other);
+        assertEquals(daily.subList(0, 5), series);
+
+        // Append a range of another series
+        other.clear();
+        other.addAll(daily);
+        series.addRange(other, 5, 10);
+        assertEquals(daily.subList(0, 10), series);
+        assertEquals(9, series.getEpochDay(9) - series.getEpochDay(0));
+
+        // Update through the map view
+        Map<String, String> record = series.get(1);
+        record.put("tmax", "30.1");
+        record.remove("srad");
+        assertEquals("30.1", series.getValue(1, "tmax"));
+        assertNull(series.getValue(1, "srad"));
+
+        series.remove(0);
+        assertEquals(daily.subList(2, 10), series.subList(1, 9));
+    }
+
+    @Test
+    public void testMissingValues() {
+        HashMap<String, String> record = new HashMap<String, String>();
+        record.put("w_date", "19820101");
+        record.put("srad", "12.3");
+        series.add(record);
+        record = new HashMap<String, String>();
+        record.put("rain", "5");
+        series.add(record);
+
+        assertFalse(series.get(0).containsKey("rain"));
+        assertNull(series.getValue(0, "rain"));
+        assertFalse(series.get(1).containsKey("w_date"));
+        assertFalse(series.get(1).containsKey("srad"));
+        assertEquals(DssatDateCodec.NO_DATE, series.getEpochDay(1));
+        assertEquals(2, series.toRecords().size());
+        assertEquals(1, series.toRecords().get(1).size());
+    }
+}
@@ -0,0 +1,76 @@
+package org.agmip.translators.dssat;
+
+import java.util.Calendar;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Meng Zhang
+ */
+public class DssatDateCodecTest {
+
+    private static String calendarYydddToYyyymmdd(String str, int days) {
+        Calendar cal = Calendar.getInstance();
+        str = String.format("%05d", Integer.parseInt(str));
+        int year = Integer.parseInt(str.substring(0, 2));
+        year += year <= 15 ? 2000 : 1900;
+        cal.set(Calendar.YEAR, year);
+        cal.set(Calendar.DAY_OF_YEAR, Integer.parseInt(str.substring(2)));
+        cal.add(Calendar.DATE, days);
+        return String.format("%1$04d%2$02d%3$02d", cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DAY_OF_MONTH));
+    }
+
+    private static String calendarYyyymmddToYyddd(String str, int days) {
+        Calendar cal = Calendar.getInstance();
+        cal.set(Integer.parseInt(str.substring(0, 4)), Integer.parseInt(str.substring(4, 6)) - 1, Integer.parseInt(str.substring(6)));
+        cal.add(Calendar.DATE, days);
+        return String.format("%1$02d%2$03d", cal.get(Calendar.YEAR) % 100, cal.get(Calendar.DAY_OF_YEAR));
+    }
+
+    @Test
+    public void testYydddToYyyymmdd() throws Exception {
+        for (int yy = 0; yy < 100; yy++) {
+            for (int doy = 0; doy <= 400; doy++) {
+                String str = String.format("%1$02d%2$03d", yy, doy);
+                assertEquals(str, calendarYydddToYyyymmdd(str, 0), DssatDateCodec.yydddToYyyymmdd(str, 0));
+                assertEquals(str, calendarYydddToYyyymmdd(str, -45), DssatDateCodec.yydddToYyyymmdd(str, -45));
+            }
+        }
+        assertEquals("20010103", DssatDateCodec.yydddToYyyymmdd("1003", 0));
+        assertNull(DssatDateCodec.yydddToYyyymmdd("999", 0));
+        assertNull(DssatDateCodec.yydddToYyyymmdd("820O1", 0));
+        assertNull(DssatDateCodec.yydddToYyyymmdd(null, 0));
+    }
+
+    @Test
+    public void testYyyymmddToYyddd() throws Exception {
+        int start = DssatDateCodec.toEpochDay(1900, 1, 1);
+        int end = DssatDateCodec.toEpochDay(2100, 12, 31);
+        for (int day = start; day <= end; day += 3) {
+            String str = DssatDateCodec.formatYyyymmdd(day);
+            assertEquals(str, day, DssatDateCodec.parseStrictYyyymmdd(str));
+            assertEquals(str, calendarYyyymmddToYyddd(str, 0), DssatDateCodec.yyyymmddToYyddd(str, 0));
+            assertEquals(str, calendarYyyymmddToYyddd(str, 100), DssatDateCodec.yyyymmddToYyddd(str, 100));
+        }
+        // Overflowed month and day are rolled as Calendar does
+        assertEquals(calendarYyyymmddToYyddd("19821301", 0), DssatDateCodec.yyyymmddToYyddd("19821301", 0));
+        assertEquals(calendarYyyymmddToYyddd("19820230", 0), DssatDateCodec.yyyymmddToYyddd("19820230", 0));
+        assertEquals(calendarYyyymmddToYyddd("19820100", 0), DssatDateCodec.yyyymmddToYyddd("19820100", 0));
+        assertEquals("82032", DssatDateCodec.yyyymmddToYyddd("1982/02/01", 0));
+        assertNull(DssatDateCodec.yyyymmddToYyddd("-99", 0));
+        assertNull(DssatDateCodec.yyyymmddToYyddd("1982O201", 0));
+    }
+
+    @Test
+    public void testOffsetDate() throws Exception {
+        assertEquals("19820310", DssatDateCodec.offsetDate("19820301", "9"));
+        assertEquals("19811230", DssatDateCodec.offsetDate("19820101", "-2"));
+        assertEquals("19840301", DssatDateCodec.offsetDate("19840228", "2"));
+        assertNull(DssatDateCodec.offsetDate("19820231", "1"));
+        assertNull(DssatDateCodec.offsetDate("19820301", "1.5"));
+        assertNull(DssatDateCodec.offsetDate("", "1"));
+        assertNull(DssatDateCodec.offsetDate("19820301", null));
+        assertEquals(3, DssatDateCodec.parseDays("3.7"));
+    }
+}
@@ -0,0 +1,94 @@
+package org.agmip.translators.dssat;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import static org.agmip.util.MapUtil.getObjectOr;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Meng Zhang
+ */
+public class DssatSoilIndexTest {
+
+    private static final String HEADER = "*SOILS: Test soils\r\n";
+    private static final String PROFILE1 = "*IB00000001  SCS         SIL     210 DEFAULT - DEEP SILT LOAM\r\n"
+            + "@  SLB  SLMH  SLLL  SDUL  SSAT\r\n"
+            + "     5   -99 0.096 0.230 0.250\r\n\r\n";
+    private static final String PROFILE2 = "*IB00000002  SCS         SIL     150 DEFAULT - SILT LOAM\r\n"
+            + "@  SLB  SLMH  SLLL  SDUL  SSAT\r\n"
+            + "    15   -99 0.100 0.240 0.260\r\n";
+    private static final String CONTENT = "!Comment line\r\n" + HEADER + "\r\n" + PROFILE1 + PROFILE2;
+
+    @Test
+    public void test() throws Exception {
+        File sol = File.createTempFile("dssat_soil", ".SOL");
+        File sidecar = new File(sol.getPath() + DssatSoilIndex.SIDECAR_EXT);
+        sol.deleteOnExit();
+        sidecar.deleteOnExit();
+        FileWriter fw = new FileWriter(sol);
+        fw.write(CONTENT);
+        fw.close();
+
+        // Index the file and read the profile with its header line
+        DssatSoilIndex index = DssatSoilIndex.build(sol);
+        assertEquals(2, index.size());
+        assertTrue(index.contains("IB00000002"));
+        assertFalse(index.contains("IB00000003"));
+        assertEquals(Arrays.asList("IB00000001", "IB00000002"), index.getSoilIds(Arrays.asList("IB00000003", "IB00000002", "IB00000001")));
+        assertEquals(HEADER + PROFILE1, new String(index.read(sol, "IB00000001")));
+        assertEquals(HEADER + PROFILE2, new String(index.read(sol, "IB00000002")));
+
+        // The index of the content in memory is the same
+        DssatSoilIndex memIndex = DssatSoilIndex.build("!Comment line\r\n" + HEADER, "\r\n" + PROFILE1 + PROFILE2);
+        assertEquals(HEADER + PROFILE2, new String(memIndex.read(CONTENT.toCharArray(), "IB00000002")));
+
+        // Save the sidecar and load the index from it
+        fw = new FileWriter(sidecar);
+        index.write(fw);
+        fw.close();
+        DssatSoilIndex loaded = DssatSoilIndex.read(sidecar, sol.length());
+        assertNotNull(loaded);
+        assertEquals(HEADER + PROFILE2, new String(loaded.read(sol, "IB00000002")));
+
+        // The sidecar is not used when the soil file is changed
+        assertNull(DssatSoilIndex.read(sidecar, sol.length() + 1));
+        fw = new FileWriter(sol);
+        fw.write("\r\n" + CONTENT);
+        fw.close();
+        assertNull(loaded.read(sol, "IB00000002"));
+        assertEquals(HEADER + PROFILE2, new String(DssatSoilIndex.load(sol).read(sol, "IB00000002")));
+    }
+
+    @Test
+    public void testWrittenSidecar() throws Exception {
+        HashMap result = new DssatSoilInput().readFile(this.getClass().getResource("/UFGA8202_MZX.zip").getPath());
+        HashMap expData = new HashMap();
+        expData.put("soil", getObjectOr(result, "soils", new ArrayList<HashMap>()).get(0));
+        DssatSoilOutput output = new DssatSoilOutput();
+        output.setIndexOutput(true);
+        output.writeFile("output", expData);
+        File sol = output.getOutputFile();
+        File sidecar = new File(sol.getPath() + DssatSoilIndex.SIDECAR_EXT);
+
+        // The index built while writing is same with the one from scanning the file
+        StringWriter expected = new StringWriter();
+        DssatSoilIndex.build(sol).write(expected);
+        StringWriter written = new StringWriter();
+        FileReader fr = new FileReader(sidecar);
+        int c;
+        while ((c = fr.read()) != -1) {
+            written.write(c);
+        }
+        fr.close();
+        assertEquals(expected.toString(), written.toString());
+        assertTrue(sol.delete());
+        assertTrue(sidecar.delete());
+    }
+}
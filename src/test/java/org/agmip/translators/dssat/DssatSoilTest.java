@@ -1,6 +1,8 @@
 package org.agmip.translators.dssat;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -57,4 +59,38 @@ public class DssatSoilTest {
             assertTrue(file != null);
         }
     }
+
+    @Test
+    public void testAppendSite() throws IOException, Exception {
+        HashMap result = obDssatSoilInput.readFile(resource.getPath());
+        ArrayList<HashMap> soilArr = getObjectOr(result, "soils", new ArrayList());
+        HashMap expData = new HashMap();
+        expData.put("soil", soilArr.get(0));
+
+        // The site added one by one is same with the one written at once
+        obDssatSoilOutput.writeFile("output", expData);
+        File file = obDssatSoilOutput.getOutputFile();
+        DssatSoilOutput appender = new DssatSoilOutput();
+        appender.appendSite("output" + File.separator + "append", expData);
+        appender.finishSites();
+        File appended = appender.getOutputFile();
+        assertEquals("IB.SOL", appended.getName());
+        assertEquals(readContent(file), readContent(appended));
+        assertTrue(file.delete());
+        assertTrue(appended.delete());
+        assertTrue(appended.getParentFile().delete());
+    }
+
+    private String readContent(File file) throws IOException {
+        BufferedReader br = new BufferedReader(new FileReader(file));
+        StringBuilder sb = new StringBuilder();
+        // Skip the line with the creating time
+        br.readLine();
+        String line;
+        while ((line = br.readLine()) != null) {
+            sb.append(line).append("\n");
+        }
+        br.close();
+        return sb.toString();
+    }
 }
@@ -69,4 +69,19 @@ public class DssatWeatherTest {
             assertTrue(file != null);
         }
     }
+
+    @Test
+    public void testDateWindow() throws Exception {
+        HashMap brMap = DssatCommonInput.getBufferReader(this.getClass().getResource("/UFGA8201_MZX.zip").getPath());
+        ArrayList<HashMap> wthArr = obDssatWeatherInput.readDailyData(brMap, new HashMap(), null, "19820301", "19820331");
+        DssatCommonInput.closeBufferReader(brMap);
+
+        // Only the days in the window are kept, the station ID is still from the whole file
+        assertEquals(1, wthArr.size());
+        assertEquals("UFGA", wthArr.get(0).get("wst_id"));
+        ArrayList<HashMap> daily = (ArrayList<HashMap>) wthArr.get(0).get(obDssatWeatherInput.dailyKey);
+        assertEquals(31, daily.size());
+        assertEquals("19820301", daily.get(0).get("w_date"));
+        assertEquals("19820331", daily.get(30).get("w_date"));
+    }
 }
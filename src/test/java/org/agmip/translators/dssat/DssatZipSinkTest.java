@@ -0,0 +1,122 @@
+package org.agmip.translators.dssat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Meng Zhang
+ */
+public class DssatZipSinkTest {
+
+    private static LinkedHashMap<String, String> readZip(byte[] zip) throws Exception {
+        LinkedHashMap<String, String> ret = new LinkedHashMap<String, String>();
+        ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip));
+        ZipEntry entry;
+        byte[] buf = new byte[1024];
+        while ((entry = in.getNextEntry()) != null) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            int count;
+            while ((count = in.read(buf)) != -1) {
+                content.write(buf, 0, count);
+            }
+            ret.put(entry.getName(), content.toString());
+        }
+        in.close();
+        return ret;
+    }
+
+    @Test
+    public void testEntries() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DssatZipSink sink = new DssatZipSink(out);
+
+        Writer x = sink.openEntry("UFGA8201.MZX", false);
+        Writer cul1 = sink.openEntry("UFGA8201_MZX.CUL", true);
+        Writer cul2 = sink.openEntry("UFGA8201_MZX.CUL", true);
+        x.write("*EXP.DETAILS: UFGA8201MZ\r\n");
+        cul1.write("IB0001\r\n");
+        cul2.write("IB0002\r\n");
+        cul1.close();
+        cul2.close();
+        x.close();
+        // Closing twice does not add the entry again
+        x.close();
+        sink.openEntry("UFGA8201.MZX", false).close();
+        sink.close();
+
+        LinkedHashMap<String, String> entries = readZip(out.toByteArray());
+        assertEquals(2, entries.size());
+        assertEquals("*EXP.DETAILS: UFGA8201MZ\r\n", entries.get("UFGA8201.MZX"));
+        assertEquals("IB0001\r\nIB0002\r\n", entries.get("UFGA8201_MZX.CUL"));
+    }
+
+    @Test
+    public void testConcurrentEntries() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final DssatZipSink sink = new DssatZipSink(out);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final int idx = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 50; j++) {
+                            Writer w = sink.openEntry("FILE" + idx + "_" + j + ".WTH", false);
+                            w.write("WEATHER " + idx + " " + j);
+                            w.close();
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        sink.close();
+
+        LinkedHashMap<String, String> entries = readZip(out.toByteArray());
+        assertEquals(400, entries.size());
+        assertEquals("WEATHER 3 7", entries.get("FILE3_7.WTH"));
+    }
+
+    @Test
+    public void testSlots() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DssatZipSink sink = new DssatZipSink(out);
+        DssatZipSink.EntrySlot slot1 = sink.reserve();
+        DssatZipSink.EntrySlot slot2 = sink.reserve();
+        DssatZipSink.EntrySlot slot3 = sink.reserve();
+
+        // The entries follow the order of slots instead of the order of completion
+        Writer w = sink.openEntry(slot3, "AAAA.WTH", false);
+        w.write("WEATHER");
+        w.close();
+        sink.release(slot2);
+        w = sink.openEntry(slot1, "ZZZZ.SOL", false);
+        w.write("SOIL");
+        w.close();
+        slot1.get();
+        slot3.get();
+
+        // The finished entries at the head are written before closing
+        sink.reserve();
+        assertTrue(out.size() > 0);
+        sink.close();
+
+        LinkedHashMap<String, String> entries = readZip(out.toByteArray());
+        assertEquals(2, entries.size());
+        assertEquals("[ZZZZ.SOL, AAAA.WTH]", entries.keySet().toString());
+        assertEquals("SOIL", entries.get("ZZZZ.SOL"));
+    }
+}
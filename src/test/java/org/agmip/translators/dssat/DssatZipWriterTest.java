@@ -0,0 +1,76 @@
+package org.agmip.translators.dssat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Meng Zhang
+ */
+public class DssatZipWriterTest {
+
+    private static byte[] readEntry(ZipFile zip, ZipEntry entry) throws Exception {
+        ByteArrayOutputStream ret = new ByteArrayOutputStream();
+        InputStream in = zip.getInputStream(entry);
+        byte[] buf = new byte[1024];
+        int count;
+        while ((count = in.read(buf)) != -1) {
+            ret.write(buf, 0, count);
+        }
+        in.close();
+        return ret.toByteArray();
+    }
+
+    @Test
+    public void testZip() throws Exception {
+        File zipFile = File.createTempFile("dssat_zip", ".zip");
+        File wthFile = File.createTempFile("dssat_wth", ".WTH");
+        zipFile.deleteOnExit();
+        wthFile.deleteOnExit();
+
+        // Prepare the contents with different sizes
+        Random random = new Random(1);
+        ByteArrayOutputStream[] contents = new ByteArrayOutputStream[20];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = new ByteArrayOutputStream();
+            int lines = i == 0 ? 0 : random.nextInt(20000);
+            for (int j = 0; j < lines; j++) {
+                contents[i].write(("  82" + j + "  20.1  30.2" + random.nextInt(100) + "\r\n").getBytes());
+            }
+        }
+        FileOutputStream fos = new FileOutputStream(wthFile);
+        contents[19].writeTo(fos);
+        fos.close();
+
+        DssatZipWriter writer = new DssatZipWriter(new FileOutputStream(zipFile));
+        for (int i = 0; i < contents.length - 1; i++) {
+            writer.add(DssatZipWriter.deflate("FILE" + (100 + i) + ".TXT", contents[i]));
+        }
+        writer.add(DssatZipWriter.deflate("UFGA8201.WTH", wthFile));
+        writer.close();
+
+        ZipFile zip = new ZipFile(zipFile);
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        for (int i = 0; i < contents.length; i++) {
+            ZipEntry entry = entries.nextElement();
+            assertEquals(i == contents.length - 1 ? "UFGA8201.WTH" : "FILE" + (100 + i) + ".TXT", entry.getName());
+            byte[] expected = contents[i].toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(expected);
+            assertEquals(crc.getValue(), entry.getCrc());
+            assertEquals(expected.length, entry.getSize());
+            assertArrayEquals(expected, readEntry(zip, entry));
+        }
+        assertFalse(entries.hasMoreElements());
+        zip.close();
+    }
+}
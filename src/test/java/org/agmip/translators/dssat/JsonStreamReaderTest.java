@@ -0,0 +1,57 @@
+package org.agmip.translators.dssat;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import org.agmip.util.JSONAdapter;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Meng Zhang
+ */
+public class JsonStreamReaderTest {
+
+    @Test
+    public void test() throws Exception {
+        URL resource = this.getClass().getResource("/Machakos_1Exp-1Yr.json");
+        BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(resource.getPath()), "UTF-8"));
+        StringBuilder sb = new StringBuilder();
+        String line;
+        while ((line = br.readLine()) != null) {
+            sb.append(line).append("\n");
+        }
+        br.close();
+        HashMap expected = JSONAdapter.fromJSON(sb.toString());
+
+        // Read the whole file
+        JsonStreamReader reader = new JsonStreamReader(new FileInputStream(resource.getPath()));
+        Map result = (Map) reader.readValue();
+        reader.close();
+        assertEquals(expected.get("soils"), result.get("soils"));
+        assertEquals(expected.get("weathers"), result.get("weathers"));
+
+        // Read the soils one by one
+        reader = new JsonStreamReader(new FileInputStream(resource.getPath()));
+        reader.beginObject();
+        String name;
+        ArrayList soils = new ArrayList();
+        while ((name = reader.nextName()) != null) {
+            if (name.equals("soils")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    soils.add(reader.readValue());
+                }
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.close();
+        assertEquals(expected.get("soils"), soils);
+    }
+}
@@ -0,0 +1,43 @@
+package org.agmip.translators.dssat;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import org.agmip.util.JSONAdapter;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Meng Zhang
+ */
+public class JsonStreamWriterTest {
+
+    @Test
+    public void test() throws Exception {
+        LinkedHashMap<String, Object> data = new LinkedHashMap<String, Object>();
+        ArrayList<HashMap<String, String>> daily = new ArrayList<HashMap<String, String>>();
+        HashMap<String, String> record = new HashMap<String, String>();
+        record.put("w_date", "19820101");
+        record.put("srad", "12.3");
+        daily.add(record);
+        LinkedHashMap<String, Object> weather = new LinkedHashMap<String, Object>();
+        weather.put("wst_id", "UFGA");
+        weather.put("wst_notes", "Gainesville \"UF\"\\ FL\r\n\t\u0001");
+        weather.put("dailyWeather", daily);
+        ArrayList<Object> weathers = new ArrayList<Object>();
+        weathers.add(weather);
+        data.put("weathers", weathers);
+        data.put("soils", new ArrayList());
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        JsonStreamWriter writer = new JsonStreamWriter(os);
+        writer.write(data);
+        writer.close();
+        String json = os.toString("UTF-8");
+
+        assertTrue(json.startsWith("{\"weathers\":[{\"wst_id\":\"UFGA\",\"wst_notes\":\"Gainesville \\\"UF\\\"\\\\ FL\\r\\n\\t\\u0001\","));
+        assertEquals(JSONAdapter.fromJSON(JSONAdapter.toJSON(data)), JSONAdapter.fromJSON(json));
+    }
+}
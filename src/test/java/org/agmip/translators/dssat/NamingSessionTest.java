@@ -0,0 +1,97 @@
+package org.agmip.translators.dssat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Meng Zhang
+ */
+public class NamingSessionTest {
+
+    @Test
+    public void testExFileName() throws Exception {
+        NamingSession naming = new NamingSession();
+        assertEquals("UFGA8201.MZ", naming.getExFileName("UFGA8201MZ", "MZ"));
+        assertEquals("UFGA8202.MZ", naming.getExFileName("UFGA8201MZ_2", "MZ"));
+        assertEquals("UFGA8201.MZ", naming.getExFileName("UFGA8201MZ", "MZ"));
+        assertEquals("UFGA8201.SB", naming.getExFileName("UFGA8201MZ", "SB"));
+        assertEquals("TEMP0001.MZ", naming.getExFileName("", "MZ"));
+
+        // The names are not shared between sessions
+        assertEquals("UFGA8201.MZ", new NamingSession().getExFileName("UFGA8201MZ_2", "MZ"));
+    }
+
+    @Test
+    public void testDirectorySession() throws Exception {
+        String dir = "output" + File.separator + "naming";
+        assertSame(NamingSession.getDirectorySession(dir), NamingSession.getDirectorySession(dir + File.separator));
+        assertNotSame(NamingSession.getDirectorySession(dir), NamingSession.getDirectorySession("output"));
+
+        // The standalone writers of the same directory do not reuse the name of each other
+        DssatXFileOutput writer1 = new DssatXFileOutput();
+        DssatXFileOutput writer2 = new DssatXFileOutput();
+        writer1.useDirectorySession(dir);
+        writer2.useDirectorySession(dir);
+        HashMap exp = new HashMap();
+        exp.put("exname", "NSDR8201MZ");
+        assertSame(writer1.naming, writer2.naming);
+        assertEquals("NSDR8201.MZX", writer1.getFileName(exp, "X"));
+        assertEquals("NSDR8202.MZ", writer2.naming.getExFileName("NSDR8201", "MZ"));
+
+        // The writer in a job uses the session of the job
+        writer2.setNamingSession(new NamingSession());
+        writer2.useDirectorySession(dir);
+        assertNotSame(writer1.naming, writer2.naming);
+        assertEquals("NSDR8201.MZX", writer2.getFileName(exp, "X"));
+    }
+
+    @Test
+    public void testSoilAndWeatherName() throws Exception {
+        NamingSession naming = new NamingSession();
+        HashMap soil = new HashMap();
+        soil.put("soil_id", "IBMZ");
+        assertEquals("IBMZ______", naming.getSoilHelper().getSoilID(soil));
+        assertEquals("IBMZ______", naming.getSoilHelper().getSoilID(soil));
+        HashMap wth = new HashMap();
+        wth.put("wst_id", "UFGA");
+        assertEquals("UFGA", naming.getWthHelper().createWthFileName(wth));
+        assertEquals("UFGA", naming.getWthHelper().createWthFileName(wth));
+    }
+
+    @Test
+    public void testConcurrentAllocation() throws Exception {
+        final NamingSession naming = new NamingSession();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (int i = 0; i < 400; i++) {
+            final String exname = "EXP" + (i % 5) + "0001_" + (i % 50);
+            futures.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return exname + "=" + naming.getExFileName(exname, "MZ");
+                }
+            }));
+        }
+        HashMap<String, String> names = new HashMap<String, String>();
+        for (Future<String> future : futures) {
+            String[] pair = future.get().split("=");
+            String old = names.put(pair[0], pair[1]);
+            if (old != null) {
+                assertEquals(old, pair[1]);
+            }
+        }
+        executor.shutdown();
+        assertEquals(50, names.size());
+        assertEquals(50, new HashSet<String>(names.values()).size());
+    }
+}
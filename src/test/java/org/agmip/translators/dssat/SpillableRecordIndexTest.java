@@ -0,0 +1,54 @@
+package org.agmip.translators.dssat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import static org.agmip.util.MapUtil.getObjectOr;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Meng Zhang
+ */
+public class SpillableRecordIndexTest {
+
+    HashMap weather;
+
+    @Before
+    public void setUp() throws Exception {
+        HashMap result = new DssatWeatherInput().readFile(this.getClass().getResource("/UFGA8201_MZX.zip").getPath());
+        ArrayList<HashMap> wthArr = getObjectOr(result, "weathers", new ArrayList());
+        weather = wthArr.get(0);
+    }
+
+    @Test
+    public void test() throws Exception {
+        HashMap wth1 = new HashMap(weather);
+        wth1.remove("dailyWeather");
+        HashMap wth2 = new HashMap(weather);
+        wth2.put("wst_id", "UFGA8201");
+        HashMap wth3 = new HashMap(weather);
+
+        SpillableRecordIndex index = new SpillableRecordIndex("wst_id", 100);
+        index.add(wth1);
+        index.add(wth2);
+        index.add(wth3);
+
+        // The second one is spilled, and the first record wins
+        assertEquals("UFGA", wth1.get("wst_id"));
+        assertEquals(2, index.getIds().size());
+        assertEquals(wth1, index.get("UFGA"));
+        assertEquals(wth1, index.get("UFGA8201"));
+        assertNull(index.get("AAAA"));
+        index.close();
+
+        // The weather id with year matches its INSI which comes first
+        index = new SpillableRecordIndex("wst_id", 0);
+        index.add(wth2);
+        index.add(wth1);
+        assertEquals(wth2, index.get("UFGA8201"));
+        assertEquals(wth1, index.get("UFGA8301"));
+        index.close();
+    }
+}